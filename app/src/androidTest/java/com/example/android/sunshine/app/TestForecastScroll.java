@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Bundle;
+import android.preference.PreferenceManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.ViewConfiguration;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.LatencySamples;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Scroll and bind performance harness for the forecast list.
+ *
+ * Puts a couple of years of synthetic forecast for a location of its own into the
+ * WeatherProvider, makes it the preferred location, and flings the list from end to end and
+ * back.  Frame intervals are taken from the Choreographer while the list moves, and bind times
+ * from the ForecastAdapter, split into today's row and the other days.  The percentiles are
+ * logged and reported as instrumentation status, e.g.
+ * "adb shell am instrument -w -r -e class com.example.android.sunshine.app.TestForecastScroll
+ * com.example.android.sunshine.app.test/android.test.InstrumentationTestRunner".
+ */
+public class TestForecastScroll extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String LOG_TAG = TestForecastScroll.class.getSimpleName();
+
+    // No weather service knows it, so a sync during the run can't replace the rows
+    private static final String HARNESS_LOCATION = "sunshine-scroll-harness";
+    private static final int DAYS = 730;
+    private static final int FLINGS = 8;
+    private static final long FRAME_BUDGET_NANOS = 16666667L;
+    private static final long TIMEOUT_MILLIS = 15 * 1000;
+    // A few conditions, so rows bind different artwork
+    private static final int[] WEATHER_IDS = {800, 801, 803, 500, 211, 600, 741};
+
+    private String mSavedLocation;
+    private long mLocationId;
+
+    public TestForecastScroll() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Context context = getInstrumentation().getTargetContext();
+        mSavedLocation = Utility.getPreferredLocation(context);
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.pref_location_key), HARNESS_LOCATION)
+                .commit();
+        insertForecast(context);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        Context context = getInstrumentation().getTargetContext();
+        context.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                WeatherEntry.COLUMN_LOC_KEY + " = ?", new String[]{Long.toString(mLocationId)});
+        context.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(mLocationId)});
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putString(context.getString(R.string.pref_location_key), mSavedLocation)
+                .commit();
+    }
+
+    public void testFlingFrameAndBindTimes() throws Exception {
+        final RecyclerView recyclerView =
+                (RecyclerView) getActivity().findViewById(R.id.recyclerview_forecast);
+        final ForecastAdapter adapter = (ForecastAdapter) recyclerView.getAdapter();
+        PollingCheck.check("Error: The synthetic forecast didn't load", TIMEOUT_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return adapter.getItemCount() == DAYS;
+                    }
+                });
+
+        final LatencySamples frames = new LatencySamples("frame");
+        final LatencySamples todayBinds = new LatencySamples("bind_today");
+        final LatencySamples dayBinds = new LatencySamples("bind_future_day");
+        final LatencySamples placeholderBinds = new LatencySamples("bind_placeholder");
+        final FrameRecorder frameRecorder = new FrameRecorder(frames);
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                adapter.setBindObserver(new ForecastAdapter.BindObserver() {
+                    @Override
+                    public void onBindFinished(int viewType, boolean loaded,
+                                               long durationNanos) {
+                        if (!loaded) {
+                            placeholderBinds.add(durationNanos);
+                        } else if (viewType == ForecastAdapter.VIEW_TYPE_TODAY) {
+                            todayBinds.add(durationNanos);
+                        } else {
+                            dayBinds.add(durationNanos);
+                        }
+                    }
+                });
+            }
+        });
+
+        final int velocity = ViewConfiguration.get(getActivity()).getScaledMaximumFlingVelocity();
+        try {
+            // Down to the end of the list, then back up to today
+            for (int direction : new int[]{1, -1}) {
+                for (int i = 0; i < FLINGS; i++) {
+                    fling(recyclerView, frameRecorder, direction * velocity);
+                }
+            }
+        } finally {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    adapter.setBindObserver(null);
+                }
+            });
+        }
+
+        Bundle results = new Bundle();
+        for (LatencySamples samples : new LatencySamples[]{frames, todayBinds, dayBinds,
+                placeholderBinds}) {
+            Log.i(LOG_TAG, samples.summarize());
+            results.putString(samples.getName(), samples.summarize());
+        }
+        String janky = "frames over " + FRAME_BUDGET_NANOS / 1000 + "us: "
+                + frames.countAbove(FRAME_BUDGET_NANOS) + " of " + frames.getCount();
+        Log.i(LOG_TAG, janky);
+        results.putString("janky_frames", janky);
+        getInstrumentation().sendStatus(0, results);
+
+        assertTrue("Error: No frames were drawn while flinging", frames.getCount() > 0);
+        assertTrue("Error: No future day was bound", dayBinds.getCount() > 0);
+        if (adapter.getItemViewType(0) == ForecastAdapter.VIEW_TYPE_TODAY) {
+            assertTrue("Error: Today's row wasn't bound", todayBinds.getCount() > 0);
+        }
+    }
+
+    // Flings the list and waits until it has come to rest, recording frames meanwhile
+    private void fling(final RecyclerView recyclerView, final FrameRecorder frameRecorder,
+                       final int velocity) throws Exception {
+        final boolean[] moving = new boolean[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frameRecorder.start();
+                moving[0] = recyclerView.fling(0, velocity);
+            }
+        });
+        if (moving[0]) {
+            PollingCheck.check("Error: The list didn't stop after a fling", TIMEOUT_MILLIS,
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return recyclerView.getScrollState()
+                                    == RecyclerView.SCROLL_STATE_IDLE;
+                        }
+                    });
+        }
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frameRecorder.stop();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+    }
+
+    private void insertForecast(Context context) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, HARNESS_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "Scroll Harness");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        mLocationId = ContentUris.parseId(
+                context.getContentResolver().insert(LocationEntry.CONTENT_URI, location));
+
+        long now = System.currentTimeMillis();
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+            day.put(WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(now + i * 24L * 60 * 60 * 1000));
+            day.put(WeatherEntry.COLUMN_DEGREES, (i * 45) % 360);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 40 + i % 50);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1000 + i % 30);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 10 + i % 20);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, i % 10);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Synthetic");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 2 + i % 15);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, WEATHER_IDS[i % WEATHER_IDS.length]);
+            days[i] = day;
+        }
+        assertEquals(DAYS, context.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days));
+    }
+
+    /**
+     * Records the interval between consecutive frames while started.  Main thread only.
+     */
+    private static class FrameRecorder implements Choreographer.FrameCallback {
+        private final LatencySamples mFrames;
+        private long mLastFrameNanos;
+        private boolean mRecording;
+
+        FrameRecorder(LatencySamples frames) {
+            mFrames = frames;
+        }
+
+        void start() {
+            if (!mRecording) {
+                mRecording = true;
+                mLastFrameNanos = 0;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }
+
+        void stop() {
+            mRecording = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRecording) {
+                return;
+            }
+            if (mLastFrameNanos != 0) {
+                mFrames.add(frameTimeNanos - mLastFrameNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
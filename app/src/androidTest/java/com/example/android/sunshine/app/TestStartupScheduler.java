@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+public class TestStartupScheduler extends AndroidTestCase {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    // Names of the tasks that ran, in the order they did
+    private final List<String> mRan = Collections.synchronizedList(new ArrayList<String>());
+    // Names of the tasks that ran on the wrong thread; run() can't fail the test itself
+    private final List<String> mWrongThread =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRan.clear();
+        mWrongThread.clear();
+    }
+
+    public void testRunsTasksAfterTheirDependencies() throws Exception {
+        final StartupScheduler scheduler = new StartupScheduler()
+                .add(new RecordingTask("a", false, true))
+                .add(new RecordingTask("b", true, true, "a"))
+                .add(new RecordingTask("c", false, true, "b"))
+                .add(new RecordingTask("d", true, true, "a"));
+        start(scheduler, false);
+
+        assertEquals("Error: Not every task ran", 4, mRan.size());
+        assertTrue(mRan.indexOf("a") < mRan.indexOf("b"));
+        assertTrue(mRan.indexOf("b") < mRan.indexOf("c"));
+        assertTrue(mRan.indexOf("a") < mRan.indexOf("d"));
+    }
+
+    public void testFailedTaskSkipsItsDependents() throws Exception {
+        final StartupScheduler scheduler = new StartupScheduler()
+                .add(new RecordingTask("a", false, false))
+                .add(new RecordingTask("b", true, true, "a"))
+                .add(new RecordingTask("c", false, true, "b"))
+                .add(new RecordingTask("d", true, true));
+        start(scheduler, false);
+
+        assertTrue(mRan.contains("a"));
+        assertTrue("Error: A task that didn't depend on the failed one was skipped",
+                mRan.contains("d"));
+        assertFalse("Error: A task ran after its dependency failed", mRan.contains("b"));
+        assertFalse("Error: A task ran after its dependency was skipped", mRan.contains("c"));
+    }
+
+    public void testCancelSkipsPostedMainThreadTask() throws Exception {
+        final StartupScheduler scheduler = new StartupScheduler()
+                .add(new RecordingTask("a", true, true))
+                .add(new RecordingTask("b", false, true, "a"));
+        // Cancelled in the same message as start(), so before "a" is dispatched
+        start(scheduler, true);
+
+        assertTrue("Error: A task ran after the scheduler was cancelled", mRan.isEmpty());
+    }
+
+    // Starts scheduler on the main thread, as an activity would, and waits for every task
+    private void start(final StartupScheduler scheduler, final boolean cancel)
+            throws Exception {
+        onMainThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                scheduler.start();
+                if (cancel) {
+                    scheduler.cancel();
+                }
+                return null;
+            }
+        });
+        PollingCheck.check("Error: The scheduler didn't finish", TIMEOUT_MILLIS,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return onMainThread(new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() {
+                                return scheduler.isFinished();
+                            }
+                        });
+                    }
+                });
+        assertTrue("Error: Tasks ran on the wrong thread: " + mWrongThread,
+                mWrongThread.isEmpty());
+    }
+
+    private static <T> T onMainThread(Callable<T> callable) throws Exception {
+        FutureTask<T> task = new FutureTask<T>(callable);
+        new Handler(Looper.getMainLooper()).post(task);
+        return task.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private class RecordingTask extends StartupScheduler.Task {
+        private final String mName;
+        private final boolean mOnMainThread;
+        private final boolean mSucceeds;
+
+        RecordingTask(String name, boolean onMainThread, boolean succeeds,
+                      String... dependencies) {
+            super(name, onMainThread, dependencies);
+            mName = name;
+            mOnMainThread = onMainThread;
+            mSucceeds = succeeds;
+        }
+
+        @Override
+        protected boolean run() {
+            if (mOnMainThread != (Looper.myLooper() == Looper.getMainLooper())) {
+                mWrongThread.add(mName);
+            }
+            mRan.add(mName);
+            return mSucceeds;
+        }
+    }
+}
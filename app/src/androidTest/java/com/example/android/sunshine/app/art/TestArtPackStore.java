@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+
+public class TestArtPackStore extends AndroidTestCase {
+
+    // A thunderstorm
+    private static final int WEATHER_ID = 211;
+
+    private String mSavedPack;
+    private File mPackDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSavedPack = ArtPackStore.getPreferredPack(mContext);
+        String pack = mContext.getString(R.string.pref_art_pack_cute_dogs);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_art_pack_key), pack)
+                .commit();
+        mPackDir = ArtPackStore.getPackDir(mContext, pack);
+        deletePackDir();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deletePackDir();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_art_pack_key), mSavedPack)
+                .commit();
+        super.tearDown();
+    }
+
+    public void testServesRemoteUrlUntilInstalled() {
+        assertEquals(Utility.getArtUrlForWeatherCondition(mContext, WEATHER_ID),
+                ArtPackStore.getArtUrl(mContext, WEATHER_ID, ArtPackStore.VARIANT_LIST));
+
+        assertTrue(mPackDir.mkdirs());
+        ArtPackStore.onPacksChanged();
+
+        Uri list = Uri.parse(
+                ArtPackStore.getArtUrl(mContext, WEATHER_ID, ArtPackStore.VARIANT_LIST));
+        assertEquals("file", list.getScheme());
+        assertEquals(new File(mPackDir, ArtPackStore.getFileName("storm",
+                ArtPackStore.getSizePx(mContext, ArtPackStore.VARIANT_LIST))).getPath(),
+                list.getPath());
+        Uri today = Uri.parse(
+                ArtPackStore.getArtUrl(mContext, WEATHER_ID, ArtPackStore.VARIANT_TODAY));
+        assertFalse("Error: The list and today variants share a file",
+                list.equals(today));
+        // The detail widget's rows draw at list size
+        assertEquals(list.toString(),
+                ArtPackStore.getArtUrl(mContext, WEATHER_ID, ArtPackStore.VARIANT_WIDGET));
+        assertNull(ArtPackStore.getArtUrl(mContext, 900, ArtPackStore.VARIANT_LIST));
+    }
+
+    private void deletePackDir() {
+        File[] files = mPackDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mPackDir.delete();
+        ArtPackStore.onPacksChanged();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+public class TestLocationIdCache extends AndroidTestCase {
+
+    private static final long TEST_LOCATION_ID = 10L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testProviderWritesInvalidate() {
+        LocationIdCache cache = LocationIdCache.getInstance();
+        cache.put(TestUtilities.TEST_LOCATION, TEST_LOCATION_ID, cache.getGeneration());
+        assertEquals(TEST_LOCATION_ID, cache.get(TestUtilities.TEST_LOCATION));
+
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        assertEquals("Error: A location insert didn't invalidate the cache",
+                LocationIdCache.NO_ID, cache.get(TestUtilities.TEST_LOCATION));
+
+        cache.put(TestUtilities.TEST_LOCATION, TEST_LOCATION_ID, cache.getGeneration());
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, values, null, null);
+        assertEquals("Error: A location update didn't invalidate the cache",
+                LocationIdCache.NO_ID, cache.get(TestUtilities.TEST_LOCATION));
+
+        cache.put(TestUtilities.TEST_LOCATION, TEST_LOCATION_ID, cache.getGeneration());
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        assertEquals("Error: A location delete didn't invalidate the cache",
+                LocationIdCache.NO_ID, cache.get(TestUtilities.TEST_LOCATION));
+    }
+
+    public void testStaleGenerationIsIgnored() {
+        LocationIdCache cache = LocationIdCache.getInstance();
+        int generation = cache.getGeneration();
+        cache.invalidate();
+        cache.put(TestUtilities.TEST_LOCATION, TEST_LOCATION_ID, generation);
+        assertEquals("Error: An id read before an invalidation was cached",
+                LocationIdCache.NO_ID, cache.get(TestUtilities.TEST_LOCATION));
+    }
+}
@@ -16,17 +16,29 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.RemoteException;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
+import com.example.android.sunshine.core.ForecastSnapshot;
+import com.example.android.sunshine.core.HistoryRetention;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -56,6 +68,11 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                HistoryEntry.CONTENT_URI,
+                null,
+                null
+        );
         mContext.getContentResolver().delete(
                 LocationEntry.CONTENT_URI,
                 null,
@@ -512,4 +529,374 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // Archiving moves weather rows into the daily history, and a shorter retention rolls the
+    // days up into weeks without losing any of them.
+    public void testArchiveToHistory() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        // Ten days, starting three weeks ago
+        long millisecondsInADay = 1000*60*60*24;
+        long firstDate = WeatherContract.normalizeDate(
+                System.currentTimeMillis() - 21 * millisecondsInADay);
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        for (int i = 0; i < weatherValues.length; i++) {
+            weatherValues[i].put(WeatherEntry.COLUMN_DATE, firstDate + i * millisecondsInADay);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        int archived = mContext.getContentResolver().delete(
+                HistoryEntry.buildArchiveUri(new HistoryRetention(30, 104, 120)), null, null);
+        assertEquals("Error: Not every weather row was archived",
+                BULK_INSERT_RECORDS_TO_INSERT, archived);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Archived rows were left in the weather table", 0, cursor.getCount());
+        cursor.close();
+
+        Uri dailyUri = HistoryEntry.buildHistoryLocationWithRange(TestUtilities.TEST_LOCATION,
+                HistoryEntry.TIER_DAILY, 0, Long.MAX_VALUE);
+        cursor = mContext.getContentResolver().query(dailyUri, null, null, null,
+                HistoryEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Archived rows are missing from the daily history",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals(firstDate, cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_DATE)));
+        cursor.close();
+
+        // Keeping a single day of daily history turns all of them into weeks
+        mContext.getContentResolver().delete(
+                HistoryEntry.buildArchiveUri(new HistoryRetention(1, 104, 120)),
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{"0"});
+
+        cursor = mContext.getContentResolver().query(dailyUri, null, null, null, null);
+        assertEquals("Error: Old days weren't rolled up", 0, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                HistoryEntry.buildHistoryLocationWithRange(TestUtilities.TEST_LOCATION,
+                        HistoryEntry.TIER_WEEKLY, 0, Long.MAX_VALUE),
+                new String[]{HistoryEntry.COLUMN_DAYS, HistoryEntry.COLUMN_MIN_TEMP},
+                null, null, null);
+        int days = 0;
+        double minTemp = Double.MAX_VALUE;
+        while (cursor.moveToNext()) {
+            days += cursor.getInt(0);
+            minTemp = Math.min(minTemp, cursor.getDouble(1));
+        }
+        cursor.close();
+        assertEquals("Error: Days were lost rolling up", BULK_INSERT_RECORDS_TO_INSERT, days);
+        assertEquals(65.0 - (BULK_INSERT_RECORDS_TO_INSERT - 1), minTemp);
+    }
+
+    // More locations than fit in one IN query, one of which already has a row
+    static private final int BATCH_LOCATIONS_TO_INSERT = 1200;
+
+    public void testInsertLocationBatch() {
+        long existingRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        List<ContentValues> locations = new ArrayList<ContentValues>();
+        locations.add(TestUtilities.createNorthPoleLocationValues());
+        for (int i = 1; i < BATCH_LOCATIONS_TO_INSERT; i++) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "batch-" + i);
+            location.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+            location.put(LocationEntry.COLUMN_COORD_LAT, i * 0.01);
+            location.put(LocationEntry.COLUMN_COORD_LONG, -i * 0.01);
+            locations.add(location);
+        }
+
+        Map<String, Long> ids = LocationBatch.insertLocations(
+                mContext.getContentResolver(), locations);
+
+        assertEquals("Error: Not every location got an id", BATCH_LOCATIONS_TO_INSERT, ids.size());
+        assertEquals("Error: The existing location wasn't reused",
+                existingRowId, (long) ids.get(TestUtilities.TEST_LOCATION));
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Wrong number of location rows",
+                BATCH_LOCATIONS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        // A second import finds every row and inserts nothing
+        assertEquals(ids, LocationBatch.insertLocations(mContext.getContentResolver(), locations));
+    }
+
+    // Cached per-location queries have to see every write to their location
+    public void testWeatherQueryCacheInvalidation() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(locationRowId));
+
+        Uri locationUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        String[] projection = new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP};
+        for (int i = 0; i < 2; i++) {
+            Cursor cursor = mContext.getContentResolver().query(locationUri, projection,
+                    null, null, null);
+            assertEquals("Error: Wrong number of rows on query " + i, 1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(75.0, cursor.getDouble(1));
+            cursor.close();
+        }
+
+        ContentValues updateValues = new ContentValues();
+        updateValues.put(WeatherEntry.COLUMN_MAX_TEMP, 80);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, updateValues, null, null);
+        Cursor cursor = mContext.getContentResolver().query(locationUri, projection,
+                null, null, null);
+        cursor.moveToFirst();
+        assertEquals("Error: A cached query missed an update", 80.0, cursor.getDouble(1));
+        cursor.close();
+
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        cursor = mContext.getContentResolver().query(locationUri, projection, null, null, null);
+        assertEquals("Error: A cached query missed a bulk insert",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(locationUri, projection, null, null, null);
+        assertEquals("Error: A cached query missed a delete", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Queries that only ask for weather columns skip the location join; they have to return
+        the same rows as the joined query.
+     */
+    public void testWeatherOnlyProjection() {
+        final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+        assertFalse(WeatherProvider.needsLocationJoin(new String[]{
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_LOC_KEY}, WeatherEntry.COLUMN_DATE + " ASC"));
+        assertTrue(WeatherProvider.needsLocationJoin(null, null));
+        assertTrue(WeatherProvider.needsLocationJoin(new String[]{
+                WeatherEntry.COLUMN_DATE, LocationEntry.COLUMN_COORD_LAT}, null));
+        assertTrue(WeatherProvider.needsLocationJoin(new String[]{WeatherEntry.COLUMN_DATE},
+                LocationEntry.TABLE_NAME + "." + LocationEntry._ID));
+
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        String[] weatherProjection = new String[]{WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_WEATHER_ID, WeatherEntry.COLUMN_MAX_TEMP};
+        String[] joinedProjection = new String[]{WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_WEATHER_ID, WeatherEntry.COLUMN_MAX_TEMP,
+                LocationEntry.COLUMN_CITY_NAME};
+        Uri[] uris = new Uri[]{
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE + 2 * DAY_IN_MILLIS),
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE + DAY_IN_MILLIS)
+        };
+        for (Uri uri : uris) {
+            Cursor weatherCursor = mContext.getContentResolver().query(uri, weatherProjection,
+                    null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            Cursor joinedCursor = mContext.getContentResolver().query(uri, joinedProjection,
+                    null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertTrue("Error: No rows for " + uri, joinedCursor.getCount() > 0);
+            assertEquals("Error: Row count differs for " + uri,
+                    joinedCursor.getCount(), weatherCursor.getCount());
+            while (joinedCursor.moveToNext()) {
+                weatherCursor.moveToNext();
+                for (int i = 0; i < weatherProjection.length; i++) {
+                    assertEquals("Error: " + weatherProjection[i] + " differs for " + uri,
+                            joinedCursor.getString(i), weatherCursor.getString(i));
+                }
+            }
+            weatherCursor.close();
+            joinedCursor.close();
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation("no such location"), weatherProjection,
+                null, null, null);
+        assertEquals("Error: Rows for an unknown location", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        The writes of an applyBatch notify once, after the batch has committed.
+     */
+    public void testNotificationBatch() throws RemoteException, OperationApplicationException,
+            InterruptedException {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        TestUtilities.TestContentObserver tco = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, tco);
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (ContentValues weatherValues : createBulkInsertWeatherValues(locationRowId)) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(
+                HistoryEntry.buildArchiveUri(HistoryRetention.DEFAULT))
+                .withSelection(WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+        mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+
+        Thread.sleep(500);
+        tco.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(tco);
+        assertEquals("Error: Expected one notification for the batch", 1, tco.mChangeCount);
+    }
+
+    // A sync's writes go through applyBatch as one transaction: all of them or none
+    public void testApplyBatch() throws RemoteException, OperationApplicationException,
+            InterruptedException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues weatherValues : createBulkInsertWeatherValues(0)) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .withYieldAllowed(true)
+                    .build());
+        }
+        // Archive the first day
+        operations.add(ContentProviderOperation.newDelete(
+                HistoryEntry.buildArchiveUri(HistoryRetention.DEFAULT))
+                .withSelection(WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals(operations.size(), results.length);
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        assertTrue("Error: The location wasn't inserted", locationRowId != -1);
+        assertEquals("Error: Expected the first day to be archived",
+                1, (int) results[results.length - 1].count);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: Wrong number of weather rows",
+                BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getCount());
+        cursor.close();
+
+        // A failing operation rolls back the ones before it, and notifies nobody
+        deleteAllRecordsFromProvider();
+        operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                .withExpectedCount(0)
+                .build());
+        TestUtilities.TestContentObserver tco = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, tco);
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("Error: The assertion should have failed");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+        Thread.sleep(500);
+        mContext.getContentResolver().unregisterContentObserver(tco);
+        assertEquals("Error: Notified of a rolled back batch", 0, tco.mChangeCount);
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: The failed batch wasn't rolled back", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // Pages start at a date and hold at most limit days, bypassing the query cache
+    public void testWeatherPage() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        long millisecondsInADay = 1000*60*60*24;
+        long startDate = TestUtilities.TEST_DATE + 2 * millisecondsInADay;
+        Uri pageUri = WeatherEntry.buildWeatherLocationPage(TestUtilities.TEST_LOCATION,
+                startDate, 3);
+        assertEquals(3, WeatherEntry.getLimitFromUri(pageUri));
+        assertEquals(startDate, WeatherEntry.getStartDateFromUri(pageUri));
+        assertEquals(0, WeatherEntry.getLimitFromUri(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        startDate)));
+
+        // Fill the cache with the whole list first; the page mustn't be answered from it
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        startDate),
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 2, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(pageUri,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Wrong number of rows in the page", 3, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(startDate + i * millisecondsInADay, cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
+    // The shared snapshot is read once and read again after each write
+    public void testForecastSnapshotCache() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long millisecondsInADay = 1000*60*60*24;
+        for (int i = 0; i < 3; i++) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, today + i * millisecondsInADay);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+        }
+
+        ForecastSnapshotCache cache = ForecastSnapshotCache.getInstance();
+        ForecastSnapshot snapshot = cache.get(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION);
+        assertEquals("Error: Wrong number of days in the snapshot", 3, snapshot.getCount());
+        assertEquals(today, snapshot.getDate(0));
+        assertEquals("Asteroids", snapshot.getDescription(2));
+        assertEquals(321, snapshot.getWeatherId(1));
+        assertSame("Error: The snapshot wasn't shared", snapshot,
+                cache.get(mContext.getContentResolver(), TestUtilities.TEST_LOCATION));
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, today + 3 * millisecondsInADay);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+        assertEquals("Error: The snapshot wasn't read again after a write", 4,
+                cache.get(mContext.getContentResolver(), TestUtilities.TEST_LOCATION).getCount());
+    }
+
+    // The detail screen reads a day the shared snapshot doesn't have, such as yesterday, alone
+    public void testForecastSnapshotDayBeforeToday() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long millisecondsInADay = 1000*60*60*24;
+        long yesterday = today - millisecondsInADay;
+        for (long date : new long[]{yesterday, today}) {
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, date);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+        }
+
+        ForecastSnapshot snapshot = ForecastSnapshotCache.getInstance().get(
+                mContext.getContentResolver(), TestUtilities.TEST_LOCATION);
+        assertEquals("Error: Yesterday is in the shared snapshot", -1,
+                snapshot.indexOfDate(yesterday));
+
+        ForecastSnapshot day = ForecastSnapshotCache.readDay(mContext.getContentResolver(),
+                TestUtilities.TEST_LOCATION, yesterday);
+        assertEquals("Error: Expected yesterday alone", 1, day.getCount());
+        assertEquals(0, day.indexOfDate(yesterday));
+        assertEquals(321, day.getWeatherId(0));
+
+        assertEquals("Error: Read a day the location doesn't have", 0,
+                ForecastSnapshotCache.readDay(mContext.getContentResolver(),
+                        TestUtilities.TEST_LOCATION, today - 7 * millisecondsInADay).getCount());
+    }
 }
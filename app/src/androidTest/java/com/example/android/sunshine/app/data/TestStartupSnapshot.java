@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.core.ForecastSnapshot;
+
+public class TestStartupSnapshot extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StartupSnapshot.delete(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        StartupSnapshot.delete(mContext);
+        super.tearDown();
+    }
+
+    public void testReadsBackTheFirstRowsFromToday() {
+        assertNull("Error: A snapshot was read before one was written",
+                StartupSnapshot.read(mContext, LOCATION));
+
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(20);
+        // Yesterday, which a cold start today mustn't show, then 19 days from today on
+        for (int i = -1; i < 19; i++) {
+            builder.add(100 + i, today + i * DAY_IN_MILLIS, 800, "Clear", 20 + i, 10 + i,
+                    50, 1010, 3, 90);
+        }
+        StartupSnapshot.write(mContext, LOCATION, builder.build());
+
+        ForecastSnapshot read = StartupSnapshot.read(mContext, LOCATION);
+        assertNotNull("Error: The snapshot wasn't read back", read);
+        assertEquals(StartupSnapshot.MAX_ROWS - 1, read.getCount());
+        assertEquals(today, read.getDate(0));
+        assertEquals(20.0, read.getHigh(0));
+        assertEquals(10.0, read.getLow(0));
+        assertEquals(800, read.getWeatherId(0));
+    }
+
+    public void testIgnoresAnotherLocation() {
+        ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(1);
+        builder.add(1, WeatherContract.normalizeDate(System.currentTimeMillis()), 500, "Rain",
+                15, 8, 80, 1000, 5, 180);
+        StartupSnapshot.write(mContext, LOCATION, builder.build());
+
+        assertNull("Error: Another location's snapshot was read",
+                StartupSnapshot.read(mContext, "94043"));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestSyncCoalescer extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final String OTHER_LOCATION = "94043";
+
+    // The pending requests are posted here, and dropped by quitting it before they're due
+    private HandlerThread mThread;
+    private SyncCoalescer mCoalescer;
+    private SyncMetrics mMetrics;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThread = new HandlerThread("TestSyncCoalescer");
+        mThread.start();
+        mCoalescer = new SyncCoalescer(mThread.getLooper());
+        mMetrics = SyncMetrics.getInstance();
+        mMetrics.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mThread.quit();
+        mMetrics.reset();
+        super.tearDown();
+    }
+
+    public void testBurstIsCoalesced() {
+        mCoalescer.requestSync(mContext, LOCATION);
+        mCoalescer.requestSync(mContext, LOCATION);
+        mCoalescer.requestSync(mContext, LOCATION);
+        assertEquals(LOCATION, mCoalescer.getPendingLocation());
+
+        runPendingSync();
+        assertCounted(0, 2, 0, 1, 0);
+    }
+
+    public void testNewerLocationSupersedesPendingRequest() {
+        mCoalescer.requestSync(mContext, LOCATION);
+        mCoalescer.requestSync(mContext, OTHER_LOCATION);
+        assertEquals(OTHER_LOCATION, mCoalescer.getPendingLocation());
+        assertTrue(mCoalescer.isSuperseded(LOCATION));
+        assertFalse(mCoalescer.isSuperseded(OTHER_LOCATION));
+
+        runPendingSync();
+        assertCounted(0, 0, 1, 1, 0);
+    }
+
+    public void testRequestDuringFetchIsAnsweredByIt() {
+        // A periodic sync is running when the request comes in
+        assertTrue(mCoalescer.onFetchStarted(LOCATION));
+        mCoalescer.requestSync(mContext, LOCATION);
+        assertNull("Error: A request was held while its location was being fetched",
+                mCoalescer.getPendingLocation());
+
+        mCoalescer.onFetchFinished(LOCATION, true);
+        assertNull(mCoalescer.getPendingLocation());
+        assertCounted(1, 1, 0, 1, 0);
+    }
+
+    public void testRequestDuringFailedFetchIsHeldAgain() {
+        assertTrue(mCoalescer.onFetchStarted(LOCATION));
+        mCoalescer.requestSync(mContext, LOCATION);
+        mCoalescer.requestSync(mContext, LOCATION);
+
+        mCoalescer.onFetchFinished(LOCATION, false);
+        assertEquals("Error: A request waiting on a failed fetch was lost",
+                LOCATION, mCoalescer.getPendingLocation());
+
+        runPendingSync();
+        assertCounted(1, 1, 0, 2, 0);
+    }
+
+    public void testNewerLocationCancelsFetch() throws Exception {
+        final CountDownLatch disconnected = new CountDownLatch(1);
+        HttpURLConnection connection = new HttpURLConnection(new URL("http://localhost/")) {
+            @Override
+            public void connect() throws IOException {
+            }
+
+            @Override
+            public boolean usingProxy() {
+                return false;
+            }
+
+            @Override
+            public void disconnect() {
+                disconnected.countDown();
+            }
+        };
+        assertTrue(mCoalescer.onFetchStarted(LOCATION));
+        mCoalescer.setInFlightConnection(LOCATION, connection);
+        mCoalescer.requestSync(mContext, LOCATION);
+
+        mCoalescer.requestSync(mContext, OTHER_LOCATION);
+        assertTrue("Error: The superseded fetch's connection wasn't closed",
+                disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(OTHER_LOCATION, mCoalescer.getPendingLocation());
+
+        // The cancelled fetch fails, and mustn't bring its location back
+        mCoalescer.onFetchFinished(LOCATION, false);
+        assertEquals(OTHER_LOCATION, mCoalescer.getPendingLocation());
+
+        runPendingSync();
+        assertCounted(1, 0, 1, 2, 1);
+    }
+
+    // Stands in for the sync the pending request asks for
+    private void runPendingSync() {
+        String location = mCoalescer.getPendingLocation();
+        assertNotNull("Error: No request was pending", location);
+        assertTrue(mCoalescer.onFetchStarted(location));
+        mCoalescer.onFetchFinished(location, true);
+    }
+
+    /**
+     * Checks the counters, and that every request was counted as exactly one of coalesced,
+     * superseded or executed, which periodic syncs only add to.
+     */
+    private void assertCounted(int periodic, long coalesced, long superseded, long executed,
+                               long cancelled) {
+        long requested = mMetrics.getCounter(SyncMetrics.COUNTER_SYNC_REQUESTED);
+        assertEquals(coalesced, mMetrics.getCounter(SyncMetrics.COUNTER_SYNC_COALESCED));
+        assertEquals(superseded, mMetrics.getCounter(SyncMetrics.COUNTER_SYNC_SUPERSEDED));
+        assertEquals(executed, mMetrics.getCounter(SyncMetrics.COUNTER_SYNC_EXECUTED));
+        assertEquals(cancelled, mMetrics.getCounter(SyncMetrics.COUNTER_SYNC_CANCELLED));
+        assertEquals("Error: A request wasn't counted exactly once",
+                requested + periodic, coalesced + superseded + executed);
+    }
+}
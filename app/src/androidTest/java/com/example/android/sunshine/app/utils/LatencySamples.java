@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects durations, in nanoseconds, and summarizes them as exact percentiles.  Samples can
+ * be added on one thread and read on another.
+ */
+public class LatencySamples {
+    private final String mName;
+    private long[] mSamples = new long[256];
+    private int mCount;
+
+    public LatencySamples(String name) {
+        mName = name;
+    }
+
+    public synchronized void add(long nanos) {
+        if (mCount == mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, 2 * mCount);
+        }
+        mSamples[mCount++] = nanos;
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of samples above a threshold, such as frames that missed a vsync.
+     */
+    public synchronized int countAbove(long nanos) {
+        int count = 0;
+        for (int i = 0; i < mCount; i++) {
+            if (mSamples[i] > nanos) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the smallest sample at least percent of the samples are less than or equal to,
+     * 0 if there are none.
+     */
+    public synchronized long percentile(int percent) {
+        if (mCount == 0) return 0;
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        int rank = (mCount * percent + 99) / 100;
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns a one line summary with the percentiles in microseconds.
+     */
+    public String summarize() {
+        return String.format(Locale.US, "%s: count=%d p50=%dus p90=%dus p99=%dus max=%dus",
+                mName, getCount(), micros(percentile(50)), micros(percentile(90)),
+                micros(percentile(99)), micros(percentile(100)));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.art.ArtPackStore;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Weather artwork of the art packs that aren't bundled with the app.
+ *
+ * Every request goes through {@link #load}, so the list, the detail screen and the prefetch
+ * after a sync ask Glide for the same sizes and share its cache entries.  After each sync
+ * {@link #prefetch} loads the artwork of every condition in the forecast at list size, and
+ * keeps those few bitmaps pinned in memory until the system asks for memory back; they are also
+ * kept in a disk cache of their own, see {@link ArtworkGlideModule}.
+ */
+public final class ArtworkCache {
+    private static final String LOG_TAG = ArtworkCache.class.getSimpleName();
+
+    // Bump when the way artwork is stored changes; the caches of older versions are deleted
+    static final int DISK_CACHE_VERSION = 1;
+    static final String DISK_CACHE_PREFIX = "artwork_v";
+    static final int DISK_CACHE_SIZE = 16 * 1024 * 1024;
+    // Where Glide kept everything before the artwork had a cache of its own
+    private static final String GLIDE_DEFAULT_DISK_CACHE = "image_manager_disk_cache";
+
+    // Well above the distinct conditions of a two week forecast
+    private static final int MAX_PINNED = 24;
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    // Keyed by size and url; only used on the main thread
+    private static final Map<String, Target<GlideDrawable>> sPinned =
+            new HashMap<String, Target<GlideDrawable>>();
+    private static boolean sWatchingMemory;
+
+    private ArtworkCache() {
+    }
+
+    /**
+     * Starts a request for the artwork at url, scaled to fit a square of sizePx.
+     */
+    public static DrawableRequestBuilder<String> load(RequestManager requestManager, String url,
+                                                      int sizePx) {
+        // An installed art pack is already on disk at this size
+        boolean local = url != null && url.startsWith(ContentResolver.SCHEME_FILE + ":");
+        return requestManager.load(url)
+                .override(sizePx, sizePx)
+                .fitCenter()
+                .diskCacheStrategy(local ? DiskCacheStrategy.NONE : DiskCacheStrategy.ALL);
+    }
+
+    /**
+     * Returns a listener recording how long the first image of a bind took to show, in the
+     * art_bind_memory phase when Glide had it in memory, and in art_bind_fetch when it had to
+     * read it from disk or download it.
+     */
+    public static RequestListener<String, GlideDrawable> timeBind() {
+        final long bindStart = UiMetrics.now();
+        return new RequestListener<String, GlideDrawable>() {
+            @Override
+            public boolean onException(Exception e, String model, Target<GlideDrawable> target,
+                                       boolean isFirstResource) {
+                return false;
+            }
+
+            @Override
+            public boolean onResourceReady(GlideDrawable resource, String model,
+                                           Target<GlideDrawable> target,
+                                           boolean isFromMemoryCache, boolean isFirstResource) {
+                if (isFirstResource) {
+                    UiMetrics.getInstance().recordPhase(isFromMemoryCache
+                            ? UiMetrics.PHASE_ART_BIND_MEMORY
+                            : UiMetrics.PHASE_ART_BIND_FETCH, bindStart);
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Loads the artwork of weatherIds, the forecast in date order, and pins it in memory: every
+     * condition at list size, and the first day at the size of today's icon.  Artwork pinned
+     * by an earlier call and no longer in the forecast is released.  Reads the disk, so call it
+     * off the main thread, as the sync adapter does.
+     */
+    public static void prefetch(Context context, int[] weatherIds) {
+        final Context appContext = context.getApplicationContext();
+        deleteOldDiskCaches(appContext);
+
+        int listPx = appContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        int todayPx = appContext.getResources().getDimensionPixelSize(R.dimen.today_icon);
+        final Map<String, Integer> wanted = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < weatherIds.length && wanted.size() < MAX_PINNED; i++) {
+            String url = ArtPackStore.getArtUrl(appContext, weatherIds[i],
+                    ArtPackStore.VARIANT_LIST);
+            if (url == null) {
+                continue;
+            }
+            if (i == 0) {
+                String todayUrl = ArtPackStore.getArtUrl(appContext, weatherIds[i],
+                        ArtPackStore.VARIANT_TODAY);
+                wanted.put(key(todayUrl, todayPx), todayPx);
+            }
+            wanted.put(key(url, listPx), listPx);
+        }
+
+        sHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                pin(appContext, wanted);
+            }
+        });
+    }
+
+    private static void pin(Context context, Map<String, Integer> wanted) {
+        watchMemory(context);
+        Iterator<Map.Entry<String, Target<GlideDrawable>>> pinned = sPinned.entrySet().iterator();
+        while (pinned.hasNext()) {
+            Map.Entry<String, Target<GlideDrawable>> entry = pinned.next();
+            if (!wanted.containsKey(entry.getKey())) {
+                Glide.clear(entry.getValue());
+                pinned.remove();
+            }
+        }
+
+        RequestManager requestManager = Glide.with(context);
+        for (Map.Entry<String, Integer> entry : wanted.entrySet()) {
+            if (sPinned.containsKey(entry.getKey())) {
+                continue;
+            }
+            int sizePx = entry.getValue();
+            String url = entry.getKey().substring(entry.getKey().indexOf(' ') + 1);
+            // As long as its request isn't cleared, the target keeps the bitmap in memory
+            Target<GlideDrawable> target = new SimpleTarget<GlideDrawable>(sizePx, sizePx) {
+                @Override
+                public void onResourceReady(GlideDrawable resource,
+                                            GlideAnimation<? super GlideDrawable> animation) {
+                }
+            };
+            sPinned.put(entry.getKey(), load(requestManager, url, sizePx).into(target));
+        }
+    }
+
+    private static void release() {
+        for (Target<GlideDrawable> target : sPinned.values()) {
+            Glide.clear(target);
+        }
+        sPinned.clear();
+    }
+
+    // There's no Application class to pass memory pressure on to Glide, so it is done here
+    private static void watchMemory(final Context context) {
+        if (sWatchingMemory) {
+            return;
+        }
+        sWatchingMemory = true;
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_BACKGROUND) {
+                    release();
+                }
+                Glide.get(context).trimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                release();
+                Glide.get(context).clearMemory();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+
+    private static void deleteOldDiskCaches(Context context) {
+        String current = DISK_CACHE_PREFIX + DISK_CACHE_VERSION;
+        File[] files = context.getCacheDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            boolean stale = name.startsWith(DISK_CACHE_PREFIX) && !name.equals(current)
+                    || name.equals(GLIDE_DEFAULT_DISK_CACHE);
+            if (stale && file.isDirectory()) {
+                File[] entries = file.listFiles();
+                if (entries != null) {
+                    for (File entry : entries) {
+                        entry.delete();
+                    }
+                }
+                if (!file.delete()) {
+                    Log.w(LOG_TAG, "Couldn't delete " + file);
+                }
+            }
+        }
+    }
+
+    private static String key(String url, int sizePx) {
+        return sizePx + " " + url;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Sizes Glide's caches for the weather artwork, the only images the app loads.  Registered
+ * in the manifest.
+ */
+public class ArtworkGlideModule implements GlideModule {
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        // Versioned, so a change in how artwork is stored starts from an empty directory
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context,
+                ArtworkCache.DISK_CACHE_PREFIX + ArtworkCache.DISK_CACHE_VERSION,
+                ArtworkCache.DISK_CACHE_SIZE));
+        // Glide's default holds a few screens of full size photos; a few dozen icons need half
+        // of that, and the pinned ones don't count against it
+        builder.setMemoryCache(new LruResourceCache(
+                new MemorySizeCalculator(context).getMemoryCacheSize() / 2));
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+    }
+}
@@ -16,12 +16,10 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
@@ -38,13 +36,15 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.art.ArtPackStore;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.ForecastSnapshot;
 
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment
+        implements LoaderManager.LoaderCallbacks<ForecastSnapshot> {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,38 +55,13 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The forecast of mUri's location, once loaded
+    private ForecastSnapshot mSnapshot;
+    // When the day being loaded was selected, 0 if it isn't timed
+    private long mSelectedNanos;
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
-            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
-            WeatherEntry.COLUMN_DATE,
-            WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherEntry.COLUMN_HUMIDITY,
-            WeatherEntry.COLUMN_PRESSURE,
-            WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherEntry.COLUMN_DEGREES,
-            WeatherEntry.COLUMN_WEATHER_ID,
-            // This works because the WeatherProvider returns location data joined with
-            // weather data, even though they're stored in two different tables.
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
-    };
-
-    // These indices are tied to DETAIL_COLUMNS.  If DETAIL_COLUMNS changes, these
-    // must change.
-    public static final int COL_WEATHER_ID = 0;
-    public static final int COL_WEATHER_DATE = 1;
-    public static final int COL_WEATHER_DESC = 2;
-    public static final int COL_WEATHER_MAX_TEMP = 3;
-    public static final int COL_WEATHER_MIN_TEMP = 4;
-    public static final int COL_WEATHER_HUMIDITY = 5;
-    public static final int COL_WEATHER_PRESSURE = 6;
-    public static final int COL_WEATHER_WIND_SPEED = 7;
-    public static final int COL_WEATHER_DEGREES = 8;
-    public static final int COL_WEATHER_CONDITION_ID = 9;
-
     private ImageView mIconView;
     private TextView mDateView;
     private TextView mDescriptionView;
@@ -106,12 +81,17 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
+        long budgetStart = MainThreadBudget.begin();
 
         Bundle arguments = getArguments();
         if (arguments != null) {
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
             mTransitionAnimation = arguments.getBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, false);
         }
+        if (savedInstanceState != null && savedInstanceState.containsKey(DETAIL_URI)) {
+            // The day may have changed since the arguments were set; see showDay
+            mUri = savedInstanceState.getParcelable(DETAIL_URI);
+        }
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
         mIconView = (ImageView) rootView.findViewById(R.id.detail_icon);
@@ -125,9 +105,18 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mWindLabelView = (TextView) rootView.findViewById(R.id.detail_wind_label_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
         mPressureLabelView = (TextView) rootView.findViewById(R.id.detail_pressure_label_textview);
+        MainThreadBudget.end("DetailFragment.onCreateView", budgetStart);
         return rootView;
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (null != mUri) {
+            outState.putParcelable(DETAIL_URI, mUri);
+        }
+    }
+
     private void finishCreatingMenu(Menu menu) {
         // Retrieve the share menu item
         MenuItem menuItem = menu.findItem(R.id.action_share);
@@ -164,55 +153,129 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
+            mSnapshot = null;
+            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+        }
+    }
+
+    /**
+     * Shows another day in place, rather than in a new fragment.  A day already loaded is
+     * shown right away; otherwise it is loaded, and a load still running for the previous day
+     * is cancelled.
+     * @param selectedNanos when the day was selected, from UiMetrics.now()
+     */
+    void showDay(Uri uri, long selectedNanos) {
+        boolean loaded = null != mSnapshot && null != mUri
+                && WeatherContract.WeatherEntry.getLocationSettingFromUri(uri).equals(
+                        WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri))
+                && mSnapshot.indexOfDate(WeatherContract.WeatherEntry.getDateFromUri(uri)) >= 0;
+        mUri = uri;
+        if (loaded) {
+            bindDay();
+            updateShareItem();
+            UiMetrics.getInstance().recordPhase(UiMetrics.PHASE_DETAIL_SELECT_CACHED,
+                    selectedNanos);
+        } else {
+            mSnapshot = null;
+            mSelectedNanos = selectedNanos;
             getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
         }
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+    public Loader<ForecastSnapshot> onCreateLoader(int id, Bundle args) {
         if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
-            // creating a Cursor for the data being displayed.
-            return new CursorLoader(
-                    getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
-                    null,
-                    null,
-                    null
-            );
+            // The day is read from the location's shared forecast snapshot, which the
+            // widgets read too, or on its own if it isn't in there
+            return new ForecastSnapshotLoader(getActivity(),
+                    WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri),
+                    WeatherContract.WeatherEntry.getDateFromUri(mUri));
         }
+        hideCard();
+        return null;
+    }
+
+    // In two-pane mode the detail is on a card, which is hidden while there's no day to show
+    private void hideCard() {
         ViewParent vp = getView().getParent();
         if ( vp instanceof CardView ) {
             ((View)vp).setVisibility(View.INVISIBLE);
         }
-        return null;
+    }
+
+    // The share intent carries the day's forecast; without a day there's nothing to share
+    private void updateShareItem() {
+        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
+        MenuItem shareItem = null == toolbarView ? null
+                : toolbarView.getMenu().findItem(R.id.action_share);
+        if ( null != shareItem ) {
+            shareItem.setIntent(createShareForecastIntent());
+            shareItem.setVisible(null != mForecast);
+        }
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
+    public void onLoadFinished(Loader<ForecastSnapshot> loader, ForecastSnapshot data) {
+        long budgetStart = MainThreadBudget.begin();
+        mSnapshot = data;
+        bindDay();
+        if (0 != mSelectedNanos) {
+            UiMetrics.getInstance().recordPhase(UiMetrics.PHASE_DETAIL_SELECT_LOADED,
+                    mSelectedNanos);
+            mSelectedNanos = 0;
+        }
+        AppCompatActivity activity = (AppCompatActivity)getActivity();
+        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
+
+        // We need to start the enter transition after the data has loaded
+        if ( mTransitionAnimation ) {
+            activity.supportStartPostponedEnterTransition();
+
+            if ( null != toolbarView ) {
+                activity.setSupportActionBar(toolbarView);
+
+                activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
+                activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            }
+        } else {
+            if ( null != toolbarView ) {
+                Menu menu = toolbarView.getMenu();
+                if ( null != menu ) menu.clear();
+                toolbarView.inflateMenu(R.menu.detailfragment);
+                finishCreatingMenu(toolbarView.getMenu());
+                updateShareItem();
+            }
+        }
+        MainThreadBudget.end("DetailFragment.onLoadFinished", budgetStart);
+    }
+
+    private void bindDay() {
+        int row = null == mSnapshot ? -1
+                : mSnapshot.indexOfDate(WeatherContract.WeatherEntry.getDateFromUri(mUri));
+        if (row >= 0) {
             ViewParent vp = getView().getParent();
             if ( vp instanceof CardView ) {
                 ((View)vp).setVisibility(View.VISIBLE);
             }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+            // Read weather condition ID from the snapshot
+            int weatherId = mSnapshot.getWeatherId(row);
 
             if ( Utility.usingLocalGraphics(getActivity()) ) {
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
             } else {
                 // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                ArtworkCache.load(Glide.with(this),
+                        ArtPackStore.getArtUrl(getActivity(), weatherId,
+                                ArtPackStore.VARIANT_TODAY),
+                        getResources().getDimensionPixelSize(R.dimen.today_icon))
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
             }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
+            // Read date from the snapshot and update views for day of week and date
+            long date = mSnapshot.getDate(row);
             String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
             mDateView.setText(dateText);
 
@@ -227,35 +290,35 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // has text describing it in the same UI component.
             mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
 
-            // Read high temperature from cursor and update view
+            // Read high temperature from the snapshot and update view
             boolean isMetric = Utility.isMetric(getActivity());
 
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
+            double high = mSnapshot.getHigh(row);
             String highString = Utility.formatTemperature(getActivity(), high);
             mHighTempView.setText(highString);
             mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
 
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
+            // Read low temperature from the snapshot and update view
+            double low = mSnapshot.getLow(row);
             String lowString = Utility.formatTemperature(getActivity(), low);
             mLowTempView.setText(lowString);
             mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
 
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
+            // Read humidity from the snapshot and update view
+            double humidity = mSnapshot.getHumidity(row);
             mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
             mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
             mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
 
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
+            // Read wind speed and direction from the snapshot and update view
+            float windSpeedStr = (float) mSnapshot.getWindSpeed(row);
+            float windDirStr = (float) mSnapshot.getWindDirection(row);
             mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
             mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
             mWindLabelView.setContentDescription(mWindView.getContentDescription());
 
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
+            // Read pressure from the snapshot and update view
+            double pressure = mSnapshot.getPressure(row);
             mPressureView.setText(getString(R.string.format_pressure, pressure));
             mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
             mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
@@ -263,30 +326,28 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // We still need this for the share intent
             mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
 
+        } else {
+            // The location has no such day, so don't leave the previous one on the card
+            clearDay();
         }
-        AppCompatActivity activity = (AppCompatActivity)getActivity();
-        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
-
-        // We need to start the enter transition after the data has loaded
-        if ( mTransitionAnimation ) {
-            activity.supportStartPostponedEnterTransition();
-
-            if ( null != toolbarView ) {
-                activity.setSupportActionBar(toolbarView);
+    }
 
-                activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
-                activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
-            }
-        } else {
-            if ( null != toolbarView ) {
-                Menu menu = toolbarView.getMenu();
-                if ( null != menu ) menu.clear();
-                toolbarView.inflateMenu(R.menu.detailfragment);
-                finishCreatingMenu(toolbarView.getMenu());
-            }
+    private void clearDay() {
+        hideCard();
+        Glide.clear(mIconView);
+        mIconView.setImageDrawable(null);
+        mIconView.setContentDescription(null);
+        for (TextView view : new TextView[]{mDateView, mDescriptionView, mHighTempView,
+                mLowTempView, mHumidityView, mWindView, mPressureView}) {
+            view.setText(null);
+            view.setContentDescription(null);
         }
+        mHumidityLabelView.setContentDescription(null);
+        mWindLabelView.setContentDescription(null);
+        mPressureLabelView.setContentDescription(null);
+        mForecast = null;
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) { }
-}
\ No newline at end of file
+    public void onLoaderReset(Loader<ForecastSnapshot> loader) { }
+}
@@ -30,25 +30,48 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.art.ArtPackStore;
+import com.example.android.sunshine.core.ForecastSnapshot;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * The cursor is the list's index; the rows themselves come from a {@link ForecastPager}.
+ * On a cold start the rows of the {@link com.example.android.sunshine.app.data.StartupSnapshot}
+ * are shown until the loader and the pager have read the provider.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ForecastPager.Callback {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
+
+    /**
+     * Told how long each bind took, for measuring the list; see the scroll harness in the tests.
+     */
+    interface BindObserver {
+        /**
+         * @param loaded false if the row wasn't loaded yet and only its placeholder was bound
+         */
+        void onBindFinished(int viewType, boolean loaded, long durationNanos);
+    }
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    final private ForecastPager mPager;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    private BindObserver mBindObserver;
+    // The list as of the last sync, shown until the pager loads its first page
+    private ForecastSnapshot mStartupRows;
+    private String mStartupLocation;
+    // Artwork sizes, the same ArtworkCache prefetches at
+    final private int mListIconPx;
+    final private int mTodayIconPx;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -73,9 +96,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+            mClickHandler.onClick(getDate(adapterPosition), this);
             mICM.onClick(this);
         }
     }
@@ -86,10 +108,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
+        mPager = new ForecastPager(context.getContentResolver(), this);
         mClickHandler = dh;
         mEmptyView = emptyView;
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
+        mListIconPx = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+        mTodayIconPx = context.getResources().getDimensionPixelSize(R.dimen.today_icon);
     }
 
     /*
@@ -103,6 +128,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     @Override
     public ForecastAdapterViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
         if ( viewGroup instanceof RecyclerView ) {
+            long budgetStart = MainThreadBudget.begin();
             int layoutId = -1;
             switch (viewType) {
                 case VIEW_TYPE_TODAY: {
@@ -116,7 +142,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             }
             View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
             view.setFocusable(true);
-            return new ForecastAdapterViewHolder(view);
+            ForecastAdapterViewHolder viewHolder = new ForecastAdapterViewHolder(view);
+            MainThreadBudget.end("ForecastAdapter.onCreateViewHolder", budgetStart);
+            return viewHolder;
         } else {
             throw new RuntimeException("Not bound to RecyclerView");
         }
@@ -124,26 +152,69 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        long budgetStart = MainThreadBudget.begin();
+        if (null == mBindObserver) {
+            bindRow(forecastAdapterViewHolder, position);
+        } else {
+            long bindStart = System.nanoTime();
+            boolean loaded = bindRow(forecastAdapterViewHolder, position);
+            mBindObserver.onBindFinished(getItemViewType(position), loaded,
+                    System.nanoTime() - bindStart);
+        }
+        MainThreadBudget.end("ForecastAdapter.onBindViewHolder", budgetStart);
+    }
+
+    // Returns false if the row wasn't loaded yet, and a placeholder was bound instead
+    private boolean bindRow(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        Cursor row = null == mCursor ? null : mPager.getRow(position);
+        if (null != row) {
+            bindDay(forecastAdapterViewHolder, position,
+                    row.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    row.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    row.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    row.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            return true;
+        }
+        int startupRow = null == mStartupRows ? -1 : mStartupRows.indexOfDate(getDate(position));
+        if (startupRow >= 0) {
+            bindDay(forecastAdapterViewHolder, position,
+                    mStartupRows.getWeatherId(startupRow),
+                    mStartupRows.getDate(startupRow),
+                    mStartupRows.getHigh(startupRow),
+                    mStartupRows.getLow(startupRow));
+            return true;
+        }
+        bindPlaceholder(forecastAdapterViewHolder, position);
+        return false;
+    }
+
+    private void bindDay(ForecastAdapterViewHolder forecastAdapterViewHolder, int position,
+                         int weatherId, long dateInMillis, double high, double low) {
         int defaultImage;
+        int iconPx;
+        int artVariant;
         boolean useLongToday;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
                 defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
+                iconPx = mTodayIconPx;
+                artVariant = ArtPackStore.VARIANT_TODAY;
                 useLongToday = true;
                 break;
             default:
                 defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+                iconPx = mListIconPx;
+                artVariant = ArtPackStore.VARIANT_LIST;
                 useLongToday = false;
         }
 
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            ArtworkCache.load(Glide.with(mContext),
+                    ArtPackStore.getArtUrl(mContext, weatherId, artVariant), iconPx)
+                    .listener(ArtworkCache.timeBind())
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -153,9 +224,6 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // the animator can use this to re-find the original view
         ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
 
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
         // Find TextView and set formatted date on it
         forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
 
@@ -170,14 +238,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
         String highString = Utility.formatTemperature(mContext, high);
         forecastAdapterViewHolder.mHighTempView.setText(highString);
         forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
         String lowString = Utility.formatTemperature(mContext, low);
         forecastAdapterViewHolder.mLowTempView.setText(lowString);
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
@@ -185,6 +249,73 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
 
+    // Until its page is loaded a row only shows its date, which the index already has
+    private void bindPlaceholder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        Glide.clear(forecastAdapterViewHolder.mIconView);
+        forecastAdapterViewHolder.mIconView.setImageDrawable(null);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
+        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext,
+                getDate(position), getItemViewType(position) == VIEW_TYPE_TODAY));
+        forecastAdapterViewHolder.mDescriptionView.setText(null);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(null);
+        forecastAdapterViewHolder.mHighTempView.setText(null);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(null);
+        forecastAdapterViewHolder.mLowTempView.setText(null);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(null);
+        mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+    }
+
+    @Override
+    public void onRowsLoaded(int position, int count) {
+        // The pager reads the rows on screen first, so from here on it has what the startup
+        // rows stood in for
+        mStartupRows = null;
+        notifyItemRangeChanged(position, count);
+    }
+
+    /**
+     * Shows the forecast as of the last sync until the loader delivers the index.
+     */
+    public void setStartupRows(String locationSetting, ForecastSnapshot startupRows) {
+        mStartupRows = startupRows;
+        mStartupLocation = locationSetting;
+        if (null == mCursor) {
+            notifyDataSetChanged();
+            mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    /**
+     * Returns true while the list only has the startup rows to show.
+     */
+    public boolean isShowingStartupRows() {
+        return null == mCursor && null != mStartupRows;
+    }
+
+    // The index has the date of every row; before it's loaded only the startup rows do
+    private long getDate(int position) {
+        return null == mCursor ? mStartupRows.getDate(position) : mPager.getDate(position);
+    }
+
+    /**
+     * Tells the pager which rows are on screen, so it can read ahead of the scroll.
+     */
+    public void onVisibleRangeChanged(int first, int last) {
+        mPager.onVisibleRangeChanged(first, last);
+    }
+
+    /**
+     * Returns a cursor with {@link ForecastFragment#FORECAST_COLUMNS} moved to the row at
+     * position, or null if that row isn't loaded yet.
+     */
+    public Cursor getRow(int position) {
+        return mPager.getRow(position);
+    }
+
+    void setBindObserver(BindObserver bindObserver) {
+        mBindObserver = bindObserver;
+    }
+
     public void onRestoreInstanceState(Bundle savedInstanceState) {
         mICM.onRestoreInstanceState(savedInstanceState);
     }
@@ -208,12 +339,17 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
+        if ( null == mCursor ) return null == mStartupRows ? 0 : mStartupRows.getCount();
         return mCursor.getCount();
     }
 
     public void swapCursor(Cursor newCursor) {
         mCursor = newCursor;
+        String locationSetting = Utility.getPreferredLocation(mContext);
+        if (null == newCursor || !locationSetting.equals(mStartupLocation)) {
+            mStartupRows = null;
+        }
+        mPager.swapIndex(newCursor, locationSetting);
         notifyDataSetChanged();
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
@@ -45,8 +45,10 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.StartupSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.core.ForecastSnapshot;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
@@ -59,13 +61,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // When the fragment was created, the start of its time to first rows
+    private long mCreatedNanos;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -95,6 +99,18 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     static final int COL_COORD_LAT = 7;
     static final int COL_COORD_LONG = 8;
 
+    // The loader only reads the list's index, the date of each row; ForecastPager reads the
+    // FORECAST_COLUMNS of the rows around the ones on screen.  Both columns are in the
+    // weather table, so the location table isn't joined in.
+    static final String[] FORECAST_INDEX_COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE
+    };
+
+    // These indices are tied to FORECAST_INDEX_COLUMNS.
+    static final int COL_INDEX_ID = 0;
+    static final int COL_INDEX_DATE = 1;
+
     /**
      * A callback interface that all activities containing this fragment must
      * implement. This mechanism allows activities to be notified of item
@@ -113,6 +129,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedNanos = UiMetrics.now();
         // Add this line in order for this fragment to handle menu events.
         setHasOptionsMenu(true);
     }
@@ -168,7 +185,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
-
+        long budgetStart = MainThreadBudget.begin();
 
         View rootView = inflater.inflate(R.layout.fragment_main, container, false);
 
@@ -176,7 +193,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         mRecyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview_forecast);
 
         // Set the layout manager
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        mRecyclerView.setLayoutManager(layoutManager);
         View emptyView = rootView.findViewById(R.id.recyclerview_forecast_empty);
 
         // use this setting to improve performance if you know that changes
@@ -200,6 +218,27 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Draw the forecast as of the last sync while the provider and the loader start up.
+        // The snapshot is a couple of kilobytes, so it's read right here.
+        String locationSetting = Utility.getPreferredLocation(getActivity());
+        ForecastSnapshot startupRows = StartupSnapshot.read(getActivity(), locationSetting);
+        if (null != startupRows) {
+            mForecastAdapter.setStartupRows(locationSetting, startupRows);
+        }
+        recordFirstRows();
+
+        // The adapter's rows are loaded a page at a time; let it read ahead of the scroll
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int first = layoutManager.findFirstVisibleItemPosition();
+                if (first != RecyclerView.NO_POSITION) {
+                    mForecastAdapter.onVisibleRangeChanged(first,
+                            layoutManager.findLastVisibleItemPosition());
+                }
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -248,9 +287,37 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
 
+        MainThreadBudget.end("ForecastFragment.onCreateView", budgetStart);
         return rootView;
     }
 
+    // Records how long the list took to draw rows, from the startup snapshot and then from the
+    // provider
+    private void recordFirstRows() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+            private boolean mSnapshotDrawn;
+
+            @Override
+            public boolean onPreDraw() {
+                if (mRecyclerView.getChildCount() == 0) {
+                    return true;
+                }
+                UiMetrics metrics = UiMetrics.getInstance();
+                if (mForecastAdapter.isShowingStartupRows()) {
+                    if (!mSnapshotDrawn) {
+                        mSnapshotDrawn = true;
+                        metrics.recordPhase(UiMetrics.PHASE_FIRST_ROWS_SNAPSHOT, mCreatedNanos);
+                    }
+                } else if (null != mForecastAdapter.getRow(0)) {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    metrics.recordPhase(UiMetrics.PHASE_FIRST_ROWS_LOADER, mCreatedNanos);
+                }
+                return true;
+            }
+        });
+    }
+
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         // We hold for transition here just in-case the activity
@@ -272,10 +339,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // Using the URI scheme for showing a location found on a map.  This super-handy
         // intent can is detailed in the "Common Intents" page of Android's developer site:
         // http://developer.android.com/guide/components/intents-common.html#Maps
-        if (null != mForecastAdapter) {
-            Cursor c = mForecastAdapter.getCursor();
+        if (null != mForecastAdapter && mForecastAdapter.getItemCount() > 0) {
+            Cursor c = mForecastAdapter.getRow(0);
             if (null != c) {
-                c.moveToPosition(0);
                 String posLat = c.getString(COL_COORD_LAT);
                 String posLong = c.getString(COL_COORD_LONG);
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
@@ -318,7 +384,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         return new CursorLoader(getActivity(),
                 weatherForLocationUri,
-                FORECAST_COLUMNS,
+                FORECAST_INDEX_COLUMNS,
                 null,
                 null,
                 sortOrder);
@@ -326,6 +392,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        long budgetStart = MainThreadBudget.begin();
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
         if ( data.getCount() == 0 ) {
@@ -369,7 +436,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                 }
             });
         }
-
+        MainThreadBudget.end("ForecastFragment.onLoadFinished", budgetStart);
     }
 
 
@@ -403,6 +470,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         use to determine why they aren't seeing weather.
      */
     private void updateEmptyView() {
+        long budgetStart = MainThreadBudget.begin();
         if ( mForecastAdapter.getItemCount() == 0 ) {
             TextView tv = (TextView) getView().findViewById(R.id.recyclerview_forecast_empty);
             if ( null != tv ) {
@@ -427,6 +495,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                 tv.setText(message);
             }
         }
+        MainThreadBudget.end("ForecastFragment.updateEmptyView", budgetStart);
     }
 
     @Override
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.PageWindow;
+
+/**
+ * Loads the rows of the forecast list a page at a time, around the rows on screen.
+ *
+ * The forecast loader only reads the list's index, the date of each row, which keeps the
+ * cursor it copies on every change small however many days are stored.  The full rows are
+ * read here in pages of {@link #PAGE_SIZE}, each starting at the date the index has for its
+ * first row.  A page read for an older index is still shown while its dates match the new one,
+ * and is read again in the background.
+ *
+ * Only used from the main thread; the pages are read on AsyncTask's pool.
+ */
+final class ForecastPager {
+
+    /**
+     * Told on the main thread when rows have been loaded and can be bound.
+     */
+    interface Callback {
+        void onRowsLoaded(int position, int count);
+    }
+
+    static final int PAGE_SIZE = 20;
+    // Pages read ahead of the scroll, and pages kept on either side of the visible ones
+    private static final int PREFETCH_PAGES = 2;
+    private static final int KEEP_PAGES = 4;
+
+    private static final String SORT_ORDER = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+    private final ContentResolver mContentResolver;
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final PageWindow mWindow = new PageWindow(PAGE_SIZE, PREFETCH_PAGES, KEEP_PAGES);
+    private final SparseArray<Cursor> mPages = new SparseArray<Cursor>();
+    // Pages read, or being read, for the current index
+    private final SparseBooleanArray mRequested = new SparseBooleanArray();
+
+    private Cursor mIndex;
+    private String mLocationSetting;
+    // Bumped with each index, so pages read for an older one are recognized
+    private int mGeneration;
+
+    ForecastPager(ContentResolver contentResolver, Callback callback) {
+        mContentResolver = contentResolver;
+        mCallback = callback;
+    }
+
+    /**
+     * Sets the index of the list, a cursor with {@link ForecastFragment#FORECAST_INDEX_COLUMNS}
+     * of the location, or null.  The cursor belongs to the caller.
+     */
+    void swapIndex(Cursor index, String locationSetting) {
+        mGeneration++;
+        mRequested.clear();
+        if (index == null || !locationSetting.equals(mLocationSetting)) {
+            clearPages();
+        }
+        mIndex = index;
+        mLocationSetting = locationSetting;
+        for (int i = 0; i < mPages.size(); i++) {
+            load(mPages.keyAt(i));
+        }
+    }
+
+    int getCount() {
+        return mIndex == null ? 0 : mIndex.getCount();
+    }
+
+    long getDate(int position) {
+        mIndex.moveToPosition(position);
+        return mIndex.getLong(ForecastFragment.COL_INDEX_DATE);
+    }
+
+    /**
+     * Returns a cursor with {@link ForecastFragment#FORECAST_COLUMNS} moved to the row at
+     * position, or null if that row isn't loaded yet; it is then loaded, and the callback told.
+     */
+    Cursor getRow(int position) {
+        int page = mWindow.getPage(position);
+        Cursor cursor = mPages.get(page);
+        if (cursor != null && cursor.moveToPosition(position - mWindow.getPageStart(page))
+                && cursor.getLong(ForecastFragment.COL_WEATHER_DATE) == getDate(position)) {
+            return cursor;
+        }
+        load(page);
+        return null;
+    }
+
+    /**
+     * Loads the pages around the rows first to last, and drops the ones far from them.
+     */
+    void onVisibleRangeChanged(int first, int last) {
+        for (int page : mWindow.onVisibleRangeChanged(first, last, getCount())) {
+            if (mPages.get(page) == null) {
+                load(page);
+            }
+        }
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            int page = mPages.keyAt(i);
+            if (!mWindow.isKept(page)) {
+                mPages.valueAt(i).close();
+                mPages.removeAt(i);
+                mRequested.delete(page);
+            }
+        }
+    }
+
+    private void load(final int page) {
+        int count = mWindow.getPageRows(page, getCount());
+        if (count == 0 || mRequested.get(page)) {
+            return;
+        }
+        mRequested.put(page, true);
+
+        final int generation = mGeneration;
+        final Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationPage(
+                mLocationSetting, getDate(mWindow.getPageStart(page)), count);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Cursor cursor = mContentResolver.query(uri,
+                        ForecastFragment.FORECAST_COLUMNS, null, null, SORT_ORDER);
+                if (cursor != null) {
+                    // Fills the cursor's window here rather than on the first bind
+                    cursor.getCount();
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(page, cursor, generation);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int page, Cursor cursor, int generation) {
+        if (generation == mGeneration && (cursor == null || !mWindow.isKept(page))) {
+            // Not shown, so the next bind or scroll that needs the page asks for it again
+            mRequested.delete(page);
+        }
+        if (cursor == null) {
+            return;
+        }
+        if (generation != mGeneration || !mWindow.isKept(page)) {
+            cursor.close();
+            return;
+        }
+        Cursor old = mPages.get(page);
+        if (old != null) {
+            old.close();
+        }
+        mPages.put(page, cursor);
+        mCallback.onRowsLoaded(mWindow.getPageStart(page), cursor.getCount());
+    }
+
+    private void clearPages() {
+        for (int i = 0; i < mPages.size(); i++) {
+            mPages.valueAt(i).close();
+        }
+        mPages.clear();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.core.ForecastSnapshot;
+
+/**
+ * Loads the shared {@link ForecastSnapshot} of a location, and loads it again whenever the
+ * weather data changes, the way a CursorLoader follows its cursor.
+ */
+public class ForecastSnapshotLoader extends AsyncTaskLoader<ForecastSnapshot> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    // Any day is fine, the snapshot is delivered whether or not it has it
+    public static final long ANY_DATE = -1;
+
+    private final String mLocationSetting;
+    private final long mDate;
+    private ForecastSnapshot mSnapshot;
+    private boolean mObserving;
+
+    public ForecastSnapshotLoader(Context context, String locationSetting) {
+        this(context, locationSetting, ANY_DATE);
+    }
+
+    /**
+     * Loads a snapshot that has the day at date, if the location has such a day: the shared
+     * one, or the day alone when it isn't in there, such as a day before today.
+     */
+    public ForecastSnapshotLoader(Context context, String locationSetting, long date) {
+        super(context);
+        mLocationSetting = locationSetting;
+        mDate = date;
+    }
+
+    @Override
+    public ForecastSnapshot loadInBackground() {
+        ForecastSnapshot snapshot = ForecastSnapshotCache.getInstance().get(
+                getContext().getContentResolver(), mLocationSetting);
+        if (mDate != ANY_DATE && snapshot.indexOfDate(mDate) < 0) {
+            return ForecastSnapshotCache.readDay(getContext().getContentResolver(),
+                    mLocationSetting, mDate);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void deliverResult(ForecastSnapshot snapshot) {
+        if (isReset()) {
+            return;
+        }
+        mSnapshot = snapshot;
+        if (isStarted()) {
+            super.deliverResult(snapshot);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            mObserving = true;
+        }
+        if (mSnapshot != null) {
+            deliverResult(mSnapshot);
+        }
+        if (takeContentChanged() || mSnapshot == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        mSnapshot = null;
+    }
+}
@@ -15,10 +15,13 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
@@ -36,6 +39,9 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class MainActivity extends AppCompatActivity implements ForecastFragment.Callback {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -43,12 +49,41 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private final static int PLAY_SERVICES_RESOLUTION_REQUEST = 9000;
     public static final String SENT_TOKEN_TO_SERVER = "sentTokenToServer";
 
+    // Names of the initialization steps run after the first frame
+    private static final String TASK_SYNC_ACCOUNT = "sync_account";
+    private static final String TASK_PLAY_SERVICES = "play_services";
+    private static final String TASK_GCM_REGISTRATION = "gcm_registration";
+
+    // Selections closer together than this, such as D-pad presses held down in two-pane mode,
+    // only show the last one
+    private static final long DETAIL_DEBOUNCE_MILLIS = 120;
+
     private boolean mTwoPane;
     private String mLocation;
+    private StartupScheduler mStartupScheduler;
+    private final Handler mHandler = new Handler();
+    // The two-pane selection waiting out the debounce, and when it was made
+    private Uri mPendingDetailUri;
+    private long mPendingDetailNanos;
+    private long mLastDetailSelection;
+    private final Runnable mShowPendingDetail = new Runnable() {
+        @Override
+        public void run() {
+            Uri uri = mPendingDetailUri;
+            mPendingDetailUri = null;
+            if (null != uri) {
+                showDetail(uri, mPendingDetailNanos);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStart = UiMetrics.now();
         super.onCreate(savedInstanceState);
+        if (BuildConfig.DEBUG) {
+            MainThreadBudget.getInstance().watchMainLooper();
+        }
         mLocation = Utility.getPreferredLocation(this);
         Uri contentUri = getIntent() != null ? getIntent().getData() : null;
 
@@ -89,22 +124,86 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
-
-        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
-        // skip the registration and this device will not receive any downstream messages from
-        // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
-            SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
-            boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
-            if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
+        // The sync account, the Play Services check and GCM registration aren't needed to draw
+        // the forecast, and the account alone is a round trip to the account service, so they
+        // wait for the first frame
+        scheduleStartupTasks();
+        mStartupScheduler.startAfterFirstFrame(getWindow().getDecorView());
+        UiMetrics.getInstance().recordPhase(UiMetrics.PHASE_MAIN_CREATE, createStart);
+    }
+
+    private void scheduleStartupTasks() {
+        final Context context = getApplicationContext();
+        mStartupScheduler = new StartupScheduler()
+                .add(new StartupScheduler.Task(TASK_SYNC_ACCOUNT, false) {
+                    @Override
+                    protected boolean run() {
+                        SunshineSyncAdapter.initializeSyncAdapter(context);
+                        return true;
+                    }
+                })
+                // On the main thread, as it may show a dialog or finish the activity
+                .add(new StartupScheduler.Task(TASK_PLAY_SERVICES, true) {
+                    @Override
+                    protected boolean run() {
+                        return !isFinishing() && checkPlayServices();
+                    }
+                })
+                // If Google Play Services is up to date, we'll want to register GCM. If it is
+                // not, we'll skip the registration and this device will not receive any
+                // downstream messages from our fake server. Because weather alerts are not a
+                // core feature of the app, this should not affect the behavior of the app, from
+                // a user perspective.
+                .add(new StartupScheduler.Task(TASK_GCM_REGISTRATION, false, TASK_PLAY_SERVICES) {
+                    @Override
+                    protected boolean run() {
+                        // Because this is the initial creation of the app, we'll want to be
+                        // certain we have a token. If we do not, then we will start the
+                        // IntentService that will register this application with GCM.
+                        SharedPreferences sharedPreferences =
+                                PreferenceManager.getDefaultSharedPreferences(context);
+                        boolean sentToken =
+                                sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
+                        if (!sentToken) {
+                            Intent intent = new Intent(context, RegistrationIntentService.class);
+                            context.startService(intent);
+                        }
+                        return true;
+                    }
+                });
+    }
+
+    @Override
+    protected void onDestroy() {
+        mStartupScheduler.cancel();
+        mHandler.removeCallbacks(mShowPendingDetail);
+        super.onDestroy();
+    }
+
+    /**
+     * Prints the UI metrics and, in debug builds, the main thread budget report, after the
+     * activity's own state.  Invoke with
+     * "adb shell dumpsys activity top [reset | budget <ms>]" while the forecast is showing.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        UiMetrics metrics = UiMetrics.getInstance();
+        MainThreadBudget budget = MainThreadBudget.getInstance();
+        metrics.dump(writer);
+        if (BuildConfig.DEBUG) {
+            budget.dump(writer);
+        }
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            metrics.reset();
+            budget.reset();
+            writer.println("UI metrics reset");
+        } else if (args != null && args.length > 1 && "budget".equals(args[0])) {
+            try {
+                budget.setBudgetMillis(Integer.parseInt(args[1]));
+                writer.println("Main thread budget set to " + args[1] + "ms");
+            } catch (NumberFormatException e) {
+                writer.println("Not a number of milliseconds: " + args[1]);
             }
         }
     }
@@ -153,18 +252,22 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
-            // In two-pane mode, show the detail view in this activity by
-            // adding or replacing the detail fragment using a
-            // fragment transaction.
-            Bundle args = new Bundle();
-            args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
-
-            DetailFragment fragment = new DetailFragment();
-            fragment.setArguments(args);
-
-            getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
-                    .commit();
+            // A lone selection is shown right away; one that follows another closely waits, and
+            // is dropped if yet another comes in meanwhile
+            long now = SystemClock.uptimeMillis();
+            boolean debounce = now - mLastDetailSelection < DETAIL_DEBOUNCE_MILLIS;
+            mLastDetailSelection = now;
+            if (null != mPendingDetailUri) {
+                UiMetrics.getInstance().increment(UiMetrics.COUNTER_DETAIL_SELECT_SKIPPED);
+            }
+            mHandler.removeCallbacks(mShowPendingDetail);
+            mPendingDetailUri = contentUri;
+            mPendingDetailNanos = UiMetrics.now();
+            if (debounce) {
+                mHandler.postDelayed(mShowPendingDetail, DETAIL_DEBOUNCE_MILLIS);
+            } else {
+                mShowPendingDetail.run();
+            }
         } else {
             Intent intent = new Intent(this, DetailActivity.class)
                     .setData(contentUri);
@@ -176,6 +279,27 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    private void showDetail(Uri contentUri, long selectedNanos) {
+        DetailFragment df = (DetailFragment)getSupportFragmentManager().findFragmentByTag(DETAILFRAGMENT_TAG);
+        if ( null != df && null != df.getView() ) {
+            // The fragment already has the location's forecast, or at least its views
+            df.showDay(contentUri, selectedNanos);
+            return;
+        }
+        // In two-pane mode, show the detail view in this activity by
+        // adding or replacing the detail fragment using a
+        // fragment transaction.
+        Bundle args = new Bundle();
+        args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
+
+        DetailFragment fragment = new DetailFragment();
+        fragment.setArguments(args);
+
+        getSupportFragmentManager().beginTransaction()
+                .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
+                .commit();
+    }
+
     /**
      * Check the device to make sure it has the Google Play Services APK. If
      * it doesn't, display a dialog that allows users to download the APK from
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import com.example.android.sunshine.app.sync.SyncMetrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debug build guard on the time the main thread spends in the fragments' and adapters'
+ * callbacks.  The callbacks are wrapped in {@link #begin()} and {@link #end(String, long)},
+ * and every message the main looper dispatches is timed as well, so work outside of them is
+ * caught too.  A section that runs over the budget counts as a violation and is logged, the way
+ * StrictMode reports a disk read; the latest violations are kept for the report.
+ *
+ * The report follows the UI metrics in "adb shell dumpsys activity top", with MainActivity in
+ * front, where "budget &lt;ms&gt;" changes the budget.  Release builds record nothing.
+ */
+public final class MainThreadBudget {
+    private static final String LOG_TAG = MainThreadBudget.class.getSimpleName();
+
+    // Half a frame at 60fps; the rest is left for measure, layout and draw
+    public static final int DEFAULT_BUDGET_MILLIS = 8;
+    // The section every message of the main looper is recorded in
+    static final String SECTION_LOOPER_MESSAGE = "looper_message";
+    private static final int MAX_RECENT_VIOLATIONS = 32;
+
+    private static final MainThreadBudget sInstance = new MainThreadBudget();
+
+    // Per section durations in microseconds, sorted by name for the report
+    private final Map<String, SyncMetrics.Histogram> mSections =
+            new TreeMap<String, SyncMetrics.Histogram>();
+    private final Map<String, long[]> mViolations = new TreeMap<String, long[]>();
+    private final ArrayDeque<String> mRecentViolations = new ArrayDeque<String>();
+    private long mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BUDGET_MILLIS);
+    private boolean mWatchingLooper;
+
+    public static MainThreadBudget getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns a timestamp for {@link #end(String, long)}, 0 in release builds.
+     */
+    public static long begin() {
+        if (!BuildConfig.DEBUG) {
+            return 0;
+        }
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records the time since begin() against a section, such as "ForecastAdapter.onBind".
+     * Ignored off the main thread, and in release builds.
+     */
+    public static void end(String section, long startNanos) {
+        if (!BuildConfig.DEBUG || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        sInstance.record(section, SystemClock.elapsedRealtimeNanos() - startNanos, null);
+    }
+
+    /**
+     * Times every message the main looper dispatches.  Call it on the main thread; a debug
+     * build does from MainActivity.onCreate.
+     */
+    public synchronized void watchMainLooper() {
+        if (!BuildConfig.DEBUG || mWatchingLooper) {
+            return;
+        }
+        mWatchingLooper = true;
+        // Looper prints a line before and after dispatching each message
+        Looper.getMainLooper().setMessageLogging(new Printer() {
+            private long mDispatchStart;
+            private String mDispatching;
+
+            @Override
+            public void println(String line) {
+                if (line.startsWith(">")) {
+                    mDispatchStart = SystemClock.elapsedRealtimeNanos();
+                    mDispatching = line;
+                } else if (mDispatching != null) {
+                    record(SECTION_LOOPER_MESSAGE,
+                            SystemClock.elapsedRealtimeNanos() - mDispatchStart, mDispatching);
+                    mDispatching = null;
+                }
+            }
+        });
+    }
+
+    public synchronized void setBudgetMillis(int budgetMillis) {
+        mBudgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    private synchronized void record(String section, long durationNanos, String detail) {
+        SyncMetrics.Histogram histogram = mSections.get(section);
+        if (histogram == null) {
+            histogram = new SyncMetrics.Histogram();
+            mSections.put(section, histogram);
+        }
+        histogram.add(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+        if (durationNanos <= mBudgetNanos) {
+            return;
+        }
+
+        long[] violations = mViolations.get(section);
+        if (violations == null) {
+            violations = new long[1];
+            mViolations.put(section, violations);
+        }
+        violations[0]++;
+        String violation = section + " took "
+                + TimeUnit.NANOSECONDS.toMillis(durationNanos) + "ms, budget "
+                + TimeUnit.NANOSECONDS.toMillis(mBudgetNanos) + "ms"
+                + (detail == null ? "" : ": " + detail);
+        Log.w(LOG_TAG, violation);
+        if (mRecentViolations.size() == MAX_RECENT_VIOLATIONS) {
+            mRecentViolations.removeFirst();
+        }
+        mRecentViolations.addLast(new Date() + " " + violation);
+    }
+
+    public synchronized void reset() {
+        mSections.clear();
+        mViolations.clear();
+        mRecentViolations.clear();
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Main thread sections, budget "
+                + TimeUnit.NANOSECONDS.toMillis(mBudgetNanos) + "ms (durations in us)");
+        for (Map.Entry<String, SyncMetrics.Histogram> section : mSections.entrySet()) {
+            section.getValue().dump(writer, section.getKey());
+            long[] violations = mViolations.get(section.getKey());
+            writer.println("    over_budget=" + (violations == null ? 0 : violations[0]));
+        }
+        writer.println("  recent violations:");
+        for (String violation : mRecentViolations) {
+            writer.println("    " + violation);
+        }
+    }
+}
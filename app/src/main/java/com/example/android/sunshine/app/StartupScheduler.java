@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the initialization a screen doesn't need to draw, such as creating the sync account,
+ * once its first frame is drawn.  A task runs on the main thread or on AsyncTask's pool, after
+ * the tasks it depends on; if one of those fails or is skipped, it is skipped too.
+ *
+ * Only used from the main thread.  The time from the first frame to the last task finishing
+ * is recorded as the "startup_tasks" phase of the {@link UiMetrics}.
+ */
+public class StartupScheduler {
+    private static final String LOG_TAG = StartupScheduler.class.getSimpleName();
+
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_SUCCEEDED = 2;
+    // Failed, skipped or cancelled
+    private static final int STATE_FAILED = 3;
+
+    /**
+     * A step of the initialization.
+     */
+    public static abstract class Task {
+        private final String mName;
+        private final boolean mOnMainThread;
+        private final String[] mDependencies;
+        private int mState = STATE_PENDING;
+
+        /**
+         * @param dependencies the names of the tasks to run first; they have to be added to the
+         *                     scheduler before this one
+         */
+        protected Task(String name, boolean onMainThread, String... dependencies) {
+            mName = name;
+            mOnMainThread = onMainThread;
+            mDependencies = dependencies;
+        }
+
+        /**
+         * Returns false if the tasks depending on this one should be skipped.
+         */
+        protected abstract boolean run();
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // In the order added, which is a valid order to run them in
+    private final Map<String, Task> mTasks = new LinkedHashMap<String, Task>();
+    private long mStartNanos;
+    private int mUnfinished;
+    private boolean mStarted;
+    private boolean mCancelled;
+
+    public StartupScheduler add(Task task) {
+        if (mStarted) {
+            throw new IllegalStateException("Tasks can't be added once started");
+        }
+        if (mTasks.containsKey(task.mName)) {
+            throw new IllegalArgumentException("Duplicate task " + task.mName);
+        }
+        for (String dependency : task.mDependencies) {
+            if (!mTasks.containsKey(dependency)) {
+                throw new IllegalArgumentException(
+                        "Task " + task.mName + " depends on unknown task " + dependency);
+            }
+        }
+        mTasks.put(task.mName, task);
+        return this;
+    }
+
+    /**
+     * Starts the tasks right after the next frame of view's window is drawn.
+     */
+    public void startAfterFirstFrame(final View view) {
+        view.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted from the traversal, so it runs once the frame has been drawn
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        start();
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Starts the tasks now.
+     */
+    public void start() {
+        if (mStarted || mCancelled) {
+            return;
+        }
+        mStarted = true;
+        mStartNanos = UiMetrics.now();
+        mUnfinished = mTasks.size();
+        runReadyTasks();
+    }
+
+    /**
+     * Skips the tasks that haven't started, such as when the activity is destroyed.  Tasks
+     * already running finish.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Whether every task has finished, failed or been skipped.
+     */
+    boolean isFinished() {
+        return mStarted && mUnfinished == 0;
+    }
+
+    private void runReadyTasks() {
+        for (Task task : mTasks.values()) {
+            if (task.mState != STATE_PENDING) continue;
+            int state = mCancelled ? STATE_FAILED : STATE_SUCCEEDED;
+            for (String dependency : task.mDependencies) {
+                int dependencyState = mTasks.get(dependency).mState;
+                if (dependencyState == STATE_FAILED) {
+                    state = STATE_FAILED;
+                    break;
+                } else if (dependencyState != STATE_SUCCEEDED) {
+                    state = STATE_PENDING;
+                }
+            }
+            if (state == STATE_FAILED) {
+                // Dependencies come first, so the tasks that depend on this one see it skipped
+                Log.d(LOG_TAG, "Skipped " + task.mName);
+                finish(task, false);
+            } else if (state == STATE_SUCCEEDED) {
+                task.mState = STATE_RUNNING;
+                execute(task);
+            }
+        }
+    }
+
+    private void execute(final Task task) {
+        final Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                long start = UiMetrics.now();
+                boolean succeeded = false;
+                try {
+                    // A main thread task is posted, so cancel() may have come in between
+                    if (!task.mOnMainThread || !mCancelled) {
+                        succeeded = task.run();
+                    }
+                } finally {
+                    final boolean result = succeeded;
+                    Log.d(LOG_TAG, task.mName + (result ? " finished" : " failed") + " in "
+                            + TimeUnit.NANOSECONDS.toMillis(UiMetrics.now() - start) + "ms");
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            finish(task, result);
+                            runReadyTasks();
+                        }
+                    });
+                }
+            }
+        };
+        if (task.mOnMainThread) {
+            // One message per task, so the looper can draw between them
+            mHandler.post(runnable);
+        } else {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(runnable);
+        }
+    }
+
+    private void finish(Task task, boolean succeeded) {
+        task.mState = succeeded ? STATE_SUCCEEDED : STATE_FAILED;
+        if (--mUnfinished == 0) {
+            UiMetrics.getInstance().recordPhase(UiMetrics.PHASE_STARTUP_TASKS, mStartNanos);
+        }
+    }
+}
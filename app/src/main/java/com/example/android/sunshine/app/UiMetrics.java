@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+
+import com.example.android.sunshine.app.sync.SyncMetrics;
+
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide registry of how long the screens take to show things: the startup of
+ * MainActivity, the first rows and the artwork of the forecast list, and the detail pane of a
+ * two-pane selection.  The sync itself is measured by {@link SyncMetrics}, whose histograms
+ * this reuses.
+ */
+public final class UiMetrics {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({PHASE_ART_BIND_MEMORY, PHASE_ART_BIND_FETCH, PHASE_FIRST_ROWS_SNAPSHOT,
+            PHASE_FIRST_ROWS_LOADER, PHASE_MAIN_CREATE, PHASE_STARTUP_TASKS,
+            PHASE_DETAIL_SELECT_CACHED, PHASE_DETAIL_SELECT_LOADED})
+    public @interface Phase {}
+
+    // From binding a forecast row to its artwork showing, when Glide had it in memory and when
+    // it had to be read from disk or downloaded; see ArtworkCache
+    public static final int PHASE_ART_BIND_MEMORY = 0;
+    public static final int PHASE_ART_BIND_FETCH = 1;
+    // From creating the forecast list to the first frame with rows, drawn from the startup
+    // snapshot and from the provider; see ForecastFragment
+    public static final int PHASE_FIRST_ROWS_SNAPSHOT = 2;
+    public static final int PHASE_FIRST_ROWS_LOADER = 3;
+    // MainActivity.onCreate, and the initialization deferred until after its first frame; see
+    // StartupScheduler
+    public static final int PHASE_MAIN_CREATE = 4;
+    public static final int PHASE_STARTUP_TASKS = 5;
+    // From selecting a day in two-pane mode to the detail pane showing it, from the forecast
+    // it already had and after loading one; see MainActivity.onItemSelected
+    public static final int PHASE_DETAIL_SELECT_CACHED = 6;
+    public static final int PHASE_DETAIL_SELECT_LOADED = 7;
+
+    private static final String[] PHASE_NAMES = {
+            "art_bind_memory",
+            "art_bind_fetch",
+            "first_rows_snapshot",
+            "first_rows_loader",
+            "main_create",
+            "startup_tasks",
+            "detail_select_cached",
+            "detail_select_loaded"
+    };
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({COUNTER_DETAIL_SELECT_SKIPPED})
+    public @interface Counter {}
+
+    // Two-pane selections replaced by a later one before the detail pane showed them
+    public static final int COUNTER_DETAIL_SELECT_SKIPPED = 0;
+
+    private static final String[] COUNTER_NAMES = {
+            "detail_select_skipped"
+    };
+
+    private static final UiMetrics sInstance = new UiMetrics();
+
+    private final SyncMetrics.Histogram[] mPhases = new SyncMetrics.Histogram[PHASE_NAMES.length];
+    private final long[] mCounters = new long[COUNTER_NAMES.length];
+    private long mSinceMillis;
+
+    public static UiMetrics getInstance() {
+        return sInstance;
+    }
+
+    private UiMetrics() {
+        reset();
+    }
+
+    /**
+     * Returns a timestamp suitable for {@link #recordPhase(int, long)}.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records the time spent in a phase.
+     * @param phase The phase that just finished
+     * @param startNanos The value returned by {@link #now()} when the phase started
+     */
+    public synchronized void recordPhase(@Phase int phase, long startNanos) {
+        mPhases[phase].add(TimeUnit.NANOSECONDS.toMicros(now() - startNanos));
+    }
+
+    public synchronized void increment(@Counter int counter) {
+        mCounters[counter]++;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < mPhases.length; i++) {
+            mPhases[i] = new SyncMetrics.Histogram();
+        }
+        for (int i = 0; i < mCounters.length; i++) {
+            mCounters[i] = 0;
+        }
+        mSinceMillis = System.currentTimeMillis();
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("UI metrics since " + new java.util.Date(mSinceMillis)
+                + " (durations in us)");
+        for (int i = 0; i < mPhases.length; i++) {
+            mPhases[i].dump(writer, PHASE_NAMES[i]);
+        }
+        for (int i = 0; i < mCounters.length; i++) {
+            writer.println("  " + COUNTER_NAMES[i] + "=" + mCounters[i]);
+        }
+    }
+}
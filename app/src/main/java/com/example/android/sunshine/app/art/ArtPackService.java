@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.core.WeatherConditions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * Installs the preferred art pack into app storage, see {@link ArtPackStore}.
+ *
+ * The whole pack is downloaded in one go, an image per condition, and each image is written
+ * out at every variant size, so renderers read a small local file instead of decoding and
+ * scaling a download.  The pack is put together in a temporary directory and renamed into
+ * place when complete; if any image fails the renderers keep using the remote urls, and the
+ * next request tries again.  Packs other than the installed one are deleted.
+ */
+public class ArtPackService extends IntentService {
+    private static final String LOG_TAG = ArtPackService.class.getSimpleName();
+
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+    // The images are a few kilobytes; anything much larger isn't artwork
+    private static final int MAX_IMAGE_BYTES = 1024 * 1024;
+
+    public ArtPackService() {
+        super("ArtPackService");
+    }
+
+    /**
+     * Installs the preferred art pack unless it already is, and deletes the others.
+     */
+    public static void install(Context context) {
+        context.startService(new Intent(context, ArtPackService.class));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (Utility.usingLocalGraphics(this)) {
+            // The bundled art needs no download
+            deletePacksExcept(null);
+            return;
+        }
+        String pack = ArtPackStore.getPreferredPack(this);
+        if (ArtPackStore.isInstalled(this, pack)) {
+            return;
+        }
+
+        File packDir = ArtPackStore.getPackDir(this, pack);
+        File tempDir = new File(packDir.getPath() + ".tmp");
+        delete(tempDir);
+        if (!tempDir.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + tempDir);
+            return;
+        }
+        try {
+            for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+                String artName = WeatherConditions.getArtNameForCondition(condition);
+                writeVariants(tempDir, artName,
+                        download(new URL(String.format(Locale.US, pack, artName))));
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error installing art pack " + pack, e);
+            delete(tempDir);
+            return;
+        }
+        if (!tempDir.renameTo(packDir)) {
+            Log.e(LOG_TAG, "Couldn't move " + tempDir + " to " + packDir);
+            delete(tempDir);
+            return;
+        }
+        deletePacksExcept(packDir);
+
+        // Have the list, the detail screen and the widgets draw from the installed pack
+        getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        sendBroadcast(new Intent(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                .setPackage(getPackageName()));
+    }
+
+    private void writeVariants(File dir, String artName, byte[] image) throws IOException {
+        Bitmap source = BitmapFactory.decodeByteArray(image, 0, image.length);
+        if (source == null) {
+            throw new IOException("Not an image: " + artName);
+        }
+        SparseBooleanArray written = new SparseBooleanArray();
+        for (int variant = 0; variant < ArtPackStore.VARIANT_COUNT; variant++) {
+            int sizePx = ArtPackStore.getSizePx(this, variant);
+            if (written.get(sizePx)) {
+                continue;
+            }
+            Bitmap scaled = scaleToFit(source, sizePx);
+            OutputStream out = new FileOutputStream(
+                    new File(dir, ArtPackStore.getFileName(artName, sizePx)));
+            try {
+                if (!scaled.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                    throw new IOException("Couldn't write " + artName + " at " + sizePx);
+                }
+            } finally {
+                out.close();
+                if (scaled != source) {
+                    scaled.recycle();
+                }
+            }
+            written.put(sizePx, true);
+        }
+        source.recycle();
+    }
+
+    // Scales down to fit a square of sizePx, keeping the aspect ratio; never scales up
+    private static Bitmap scaleToFit(Bitmap source, int sizePx) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        float scale = Math.min((float) sizePx / width, (float) sizePx / height);
+        if (scale >= 1) {
+            return source;
+        }
+        return Bitmap.createScaledBitmap(source, Math.max(1, Math.round(width * scale)),
+                Math.max(1, Math.round(height * scale)), true);
+    }
+
+    private static byte[] download(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        try {
+            urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(TIMEOUT_MILLIS);
+            int statusCode = urlConnection.getResponseCode();
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + statusCode + " for " + url);
+            }
+            InputStream in = urlConnection.getInputStream();
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, count);
+                    if (bytes.size() > MAX_IMAGE_BYTES) {
+                        throw new IOException("Image too large: " + url);
+                    }
+                }
+                return bytes.toByteArray();
+            } finally {
+                in.close();
+            }
+        } finally {
+            urlConnection.disconnect();
+        }
+    }
+
+    private void deletePacksExcept(File keep) {
+        File[] packs = ArtPackStore.getPacksDir(this).listFiles();
+        if (packs != null) {
+            for (File pack : packs) {
+                if (!pack.equals(keep)) {
+                    delete(pack);
+                }
+            }
+        }
+        ArtPackStore.onPacksChanged();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.annotation.IntDef;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.core.WeatherConditions;
+
+import java.io.File;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * The art pack installed in app storage by {@link ArtPackService}: every image of the pack,
+ * scaled once to each size the app draws it at.
+ *
+ * Renderers ask {@link #getArtUrl} for the artwork of a condition, and get a file uri when the
+ * preferred pack is installed, or the pack's remote url until it is.
+ */
+public final class ArtPackStore {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({VARIANT_LIST, VARIANT_TODAY, VARIANT_WIDGET, VARIANT_NOTIFICATION})
+    public @interface Variant {}
+
+    public static final int VARIANT_LIST = 0;
+    public static final int VARIANT_TODAY = 1;
+    public static final int VARIANT_WIDGET = 2;
+    public static final int VARIANT_NOTIFICATION = 3;
+    static final int VARIANT_COUNT = 4;
+
+    // Bump when the files of a pack change, so installed packs are installed again
+    private static final int LAYOUT_VERSION = 1;
+    private static final String PACKS_DIR = "art_packs";
+
+    // The pack last looked for on disk, and whether it was there
+    private static String sCheckedPack;
+    private static boolean sCheckedInstalled;
+
+    private ArtPackStore() {
+    }
+
+    /**
+     * Returns the url of the artwork for a weather condition from the preferred art pack, a
+     * file uri of the variant if the pack is installed, its remote url otherwise.
+     * @return the url, null if no relation is found.
+     */
+    public static String getArtUrl(Context context, int weatherId, @Variant int variant) {
+        String artName = WeatherConditions.getArtName(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        String pack = getPreferredPack(context);
+        if (!isInstalled(context, pack)) {
+            return Utility.getArtUrlForWeatherCondition(context, weatherId);
+        }
+        File file = new File(getPackDir(context, pack),
+                getFileName(artName, getSizePx(context, variant)));
+        return Uri.fromFile(file).toString();
+    }
+
+    /**
+     * Returns the art pack preference: the url format of the pack's images.
+     */
+    public static String getPreferredPack(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+    }
+
+    public static synchronized boolean isInstalled(Context context, String pack) {
+        if (!pack.equals(sCheckedPack)) {
+            sCheckedInstalled = getPackDir(context, pack).isDirectory();
+            sCheckedPack = pack;
+        }
+        return sCheckedInstalled;
+    }
+
+    // Called when packs are installed or deleted, so the next lookup checks the disk again
+    static synchronized void onPacksChanged() {
+        sCheckedPack = null;
+    }
+
+    /**
+     * Returns the width and height, in pixels, of the square a variant is scaled to fit.
+     */
+    static int getSizePx(Context context, @Variant int variant) {
+        Resources resources = context.getResources();
+        switch (variant) {
+            case VARIANT_TODAY:
+                return resources.getDimensionPixelSize(R.dimen.today_icon);
+            case VARIANT_NOTIFICATION:
+                return Math.max(
+                        resources.getDimensionPixelSize(
+                                android.R.dimen.notification_large_icon_width),
+                        resources.getDimensionPixelSize(
+                                android.R.dimen.notification_large_icon_height));
+            case VARIANT_WIDGET:
+            case VARIANT_LIST:
+            default:
+                // The detail widget's rows use the list's icon size
+                return resources.getDimensionPixelSize(R.dimen.list_icon);
+        }
+    }
+
+    static File getPacksDir(Context context) {
+        return new File(context.getFilesDir(), PACKS_DIR);
+    }
+
+    // The sizes depend on the screen density, so a pack is installed per density
+    static File getPackDir(Context context, String pack) {
+        return new File(getPacksDir(context), "v" + LAYOUT_VERSION + "_"
+                + Integer.toHexString(pack.hashCode()) + "_"
+                + context.getResources().getDisplayMetrics().densityDpi);
+    }
+
+    // Variants of the same size share a file
+    static String getFileName(String artName, int sizePx) {
+        return artName + "_" + sizePx + ".png";
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+
+/**
+ * An immutable copy of a query result.  Any number of cursors can read one snapshot at the
+ * same time; each gets its own position and notification uri.
+ */
+final class CursorSnapshot {
+
+    private final String[] mColumnNames;
+    // Each cell is null, a Long, a Double, a String or a byte[], as Cursor.getType reported it
+    private final Object[][] mRows;
+
+    private CursorSnapshot(String[] columnNames, Object[][] rows) {
+        mColumnNames = columnNames;
+        mRows = rows;
+    }
+
+    /**
+     * Reads every row of cursor.  The cursor is left open.
+     */
+    static CursorSnapshot copyOf(Cursor cursor) {
+        String[] columnNames = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        int columnCount = columnNames.length;
+        cursor.moveToPosition(-1);
+        for (int r = 0; cursor.moveToNext(); r++) {
+            Object[] row = new Object[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                switch (cursor.getType(c)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[c] = cursor.getLong(c);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[c] = cursor.getDouble(c);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[c] = cursor.getString(c);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[c] = cursor.getBlob(c);
+                        break;
+                    default:
+                        row[c] = null;
+                }
+            }
+            rows[r] = row;
+        }
+        cursor.moveToPosition(-1);
+        return new CursorSnapshot(columnNames, rows);
+    }
+
+    /**
+     * Returns the number of cells, a rough measure of the memory the snapshot holds.
+     */
+    int getCellCount() {
+        return mRows.length * mColumnNames.length;
+    }
+
+    Cursor newCursor() {
+        return new SnapshotCursor();
+    }
+
+    private final class SnapshotCursor extends AbstractCursor {
+
+        @Override
+        public int getCount() {
+            return mRows.length;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        private Object get(int column) {
+            if (column < 0 || column >= mColumnNames.length) {
+                throw new IllegalArgumentException("Invalid column " + column);
+            }
+            if (mPos < 0 || mPos >= mRows.length) {
+                throw new android.database.CursorIndexOutOfBoundsException(mPos, mRows.length);
+            }
+            return mRows[mPos][column];
+        }
+
+        @Override
+        public int getType(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return FIELD_TYPE_NULL;
+            } else if (value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if (value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if (value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_STRING;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = get(column);
+            return value == null ? null : value.toString();
+        }
+
+        @Override
+        public short getShort(int column) {
+            return (short) getLong(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return (int) getLong(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            return Long.parseLong(value.toString());
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return (float) getDouble(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            Object value = get(column);
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.parseDouble(value.toString());
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            Object value = get(column);
+            return value instanceof byte[] ? (byte[]) value : null;
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return get(column) == null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.core.ForecastSnapshot;
+
+/**
+ * Process-wide {@link ForecastSnapshot} of the preferred location's forecast from today on,
+ * read once per change of the weather data and shared by the detail screen and the widgets.
+ * The WeatherProvider clears it whenever it sends out a change notification, which is after
+ * the write has committed.
+ *
+ * A read that raced with a write must not put a stale snapshot back: callers read the
+ * generation before querying, like {@link LocationIdCache}, and a snapshot read while the
+ * cache was cleared is returned but not kept.
+ */
+public class ForecastSnapshotCache {
+
+    // Only weather columns, so the provider doesn't join the location table in
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_MIN_TEMP = 5;
+    private static final int INDEX_HUMIDITY = 6;
+    private static final int INDEX_PRESSURE = 7;
+    private static final int INDEX_WIND_SPEED = 8;
+    private static final int INDEX_DEGREES = 9;
+
+    private static final ForecastSnapshotCache sInstance = new ForecastSnapshotCache();
+
+    private String mLocationSetting;
+    // The day the snapshot starts at; a snapshot from yesterday on is stale after midnight
+    private long mStartDate;
+    private ForecastSnapshot mSnapshot;
+    private int mGeneration;
+
+    public static ForecastSnapshotCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the forecast of locationSetting from today on, reading it from the provider if
+     * it isn't cached.  Reads the database, so don't call it on the main thread.
+     */
+    public ForecastSnapshot get(ContentResolver contentResolver, String locationSetting) {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int generation;
+        synchronized (this) {
+            if (mSnapshot != null && mStartDate == today
+                    && locationSetting.equals(mLocationSetting)) {
+                return mSnapshot;
+            }
+            generation = mGeneration;
+        }
+
+        ForecastSnapshot snapshot = read(contentResolver, locationSetting, today);
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mLocationSetting = locationSetting;
+                mStartDate = today;
+                mSnapshot = snapshot;
+            }
+        }
+        return snapshot;
+    }
+
+    public synchronized void invalidate() {
+        mSnapshot = null;
+        mGeneration++;
+    }
+
+    /**
+     * Returns the day of locationSetting at date on its own, for a day the shared snapshot
+     * doesn't have, such as one before today.  Neither cached nor shared; reads the database,
+     * so don't call it on the main thread.
+     */
+    public static ForecastSnapshot readDay(ContentResolver contentResolver,
+                                           String locationSetting, long date) {
+        return read(contentResolver,
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting, date));
+    }
+
+    private static ForecastSnapshot read(ContentResolver contentResolver, String locationSetting,
+                                         long startDate) {
+        return read(contentResolver, WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, startDate));
+    }
+
+    private static ForecastSnapshot read(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = contentResolver.query(
+                uri,
+                SNAPSHOT_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return ForecastSnapshot.EMPTY;
+        }
+        try {
+            ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(cursor.getCount());
+            while (cursor.moveToNext()) {
+                builder.add(cursor.getLong(INDEX_ID),
+                        cursor.getLong(INDEX_DATE),
+                        cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getString(INDEX_SHORT_DESC),
+                        cursor.getDouble(INDEX_MAX_TEMP),
+                        cursor.getDouble(INDEX_MIN_TEMP),
+                        cursor.getDouble(INDEX_HUMIDITY),
+                        cursor.getDouble(INDEX_PRESSURE),
+                        cursor.getDouble(INDEX_WIND_SPEED),
+                        cursor.getDouble(INDEX_DEGREES));
+            }
+            return builder.build();
+        } finally {
+            cursor.close();
+        }
+    }
+}
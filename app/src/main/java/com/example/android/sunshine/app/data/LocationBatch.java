@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds many locations at once: existing rows are found with IN queries and the missing ones
+ * are inserted with a single bulkInsert, which the provider runs in one transaction.
+ */
+public final class LocationBatch {
+
+    // SQLite's default limit on the number of ? parameters in one statement
+    private static final int MAX_QUERY_ARGS = 999;
+
+    private static final String[] LOCATION_ID_PROJECTION = new String[] {
+            LocationEntry._ID,
+            LocationEntry.COLUMN_LOCATION_SETTING
+    };
+    // these indices must match the projection
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+
+    /**
+     * Makes sure there is a location row for each of the given values, which hold the
+     * LocationEntry columns.  Existing rows are left as they are.  When several values share a
+     * location setting the first one is used.
+     *
+     * @return the row id of every location setting in locations
+     */
+    public static Map<String, Long> insertLocations(ContentResolver resolver,
+                                                    Collection<ContentValues> locations) {
+        Map<String, ContentValues> bySetting = new LinkedHashMap<String, ContentValues>();
+        for (ContentValues location : locations) {
+            String locationSetting = location.getAsString(LocationEntry.COLUMN_LOCATION_SETTING);
+            if (!bySetting.containsKey(locationSetting)) {
+                bySetting.put(locationSetting, location);
+            }
+        }
+
+        Map<String, Long> ids = queryLocationIds(resolver, bySetting.keySet());
+        if (ids.size() < bySetting.size()) {
+            List<ContentValues> missing = new ArrayList<ContentValues>();
+            for (Map.Entry<String, ContentValues> entry : bySetting.entrySet()) {
+                if (!ids.containsKey(entry.getKey())) {
+                    missing.add(entry.getValue());
+                }
+            }
+            resolver.bulkInsert(LocationEntry.CONTENT_URI,
+                    missing.toArray(new ContentValues[missing.size()]));
+
+            // Rows that someone else inserted in the meantime are picked up here too
+            List<String> missingSettings = new ArrayList<String>(missing.size());
+            for (ContentValues location : missing) {
+                missingSettings.add(location.getAsString(LocationEntry.COLUMN_LOCATION_SETTING));
+            }
+            ids.putAll(queryLocationIds(resolver, missingSettings));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the row ids of the given location settings; settings without a row are left out.
+     */
+    public static Map<String, Long> queryLocationIds(ContentResolver resolver,
+                                                     Collection<String> locationSettings) {
+        Map<String, Long> ids = new HashMap<String, Long>(locationSettings.size() * 2);
+        String[] settings = locationSettings.toArray(new String[locationSettings.size()]);
+        for (int start = 0; start < settings.length; start += MAX_QUERY_ARGS) {
+            int count = Math.min(MAX_QUERY_ARGS, settings.length - start);
+            String[] args = new String[count];
+            System.arraycopy(settings, start, args, 0, count);
+
+            Cursor cursor = resolver.query(LocationEntry.CONTENT_URI, LOCATION_ID_PROJECTION,
+                    buildInSelection(LocationEntry.COLUMN_LOCATION_SETTING, count), args, null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    ids.put(cursor.getString(INDEX_LOCATION_SETTING),
+                            cursor.getLong(INDEX_LOCATION_ID));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return ids;
+    }
+
+    //column IN (?, ?, ...)
+    private static String buildInSelection(String column, int count) {
+        StringBuilder selection = new StringBuilder(column.length() + 6 + count * 3);
+        selection.append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        return selection.append(')').toString();
+    }
+
+    private LocationBatch() { }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide map from location setting to location row id, so that sync doesn't have to
+ * query the location table for an id that almost never changes.  The WeatherProvider clears
+ * it whenever the location table is written.
+ *
+ * A lookup that raced with a write must not put a stale id back: the provider invalidates
+ * after writing, and callers read the generation before querying and hand it to {@link #put},
+ * which ignores ids from an older generation.
+ */
+public class LocationIdCache {
+
+    public static final long NO_ID = -1;
+
+    private static final LocationIdCache sInstance = new LocationIdCache();
+
+    private final Map<String, Long> mIds = new HashMap<String, Long>();
+    private int mGeneration;
+
+    public static LocationIdCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached row id of locationSetting, NO_ID if it isn't cached.
+     */
+    public synchronized long get(String locationSetting) {
+        Long id = mIds.get(locationSetting);
+        return id == null ? NO_ID : id;
+    }
+
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Caches an id that was read while the cache was at the given generation.
+     */
+    public synchronized void put(String locationSetting, long id, int generation) {
+        if (generation == mGeneration) {
+            mIds.put(locationSetting, id);
+        }
+    }
+
+    public synchronized void invalidate() {
+        mIds.clear();
+        mGeneration++;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The change notifications of writes made inside a batch scope, held back until the outermost
+ * scope ends.  Each uri is notified once, and not at all when an ancestor is notified too:
+ * notifying a uri also reaches the observers of everything below it.
+ *
+ * Only used from the thread that opened the scope.
+ */
+final class NotificationBatch {
+
+    private final Set<Uri> mUris = new LinkedHashSet<Uri>();
+    private int mDepth;
+
+    void begin() {
+        mDepth++;
+    }
+
+    /**
+     * Closes a scope.
+     *
+     * @return whether that was the outermost one, after which the batch is done
+     */
+    boolean end() {
+        if (mDepth == 0) {
+            throw new IllegalStateException("No notification batch to end");
+        }
+        return --mDepth == 0;
+    }
+
+    void add(Uri uri) {
+        mUris.add(uri);
+    }
+
+    /**
+     * Drops the held notifications and closes every scope, for writes that were rolled back.
+     */
+    void discard() {
+        mUris.clear();
+        mDepth = 0;
+    }
+
+    /**
+     * Returns the uris to notify: every uri that was added, minus those below another one.
+     */
+    List<Uri> getUris() {
+        List<Uri> uris = new ArrayList<Uri>(mUris.size());
+        for (Uri uri : mUris) {
+            boolean covered = false;
+            for (Uri other : mUris) {
+                if (other != uri && isAncestor(other, uri)) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                uris.add(uri);
+            }
+        }
+        return uris;
+    }
+
+    // Whether notifying ancestor reaches the observers of uri
+    private static boolean isAncestor(Uri ancestor, Uri uri) {
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() < segments.size()
+                && ancestorSegments.equals(segments.subList(0, ancestorSegments.size()));
+    }
+}
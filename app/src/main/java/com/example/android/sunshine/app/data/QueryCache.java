@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Results of the per-location weather queries the WeatherProvider has already answered.  The
+ * forecast list, the detail view, the widgets, Muzei and the notifications all ask the same
+ * handful of questions between two syncs; a hit answers them without touching SQLite.
+ *
+ * Entries are dropped when a write touches their location.  As in LocationIdCache, a query
+ * that raced with a write doesn't store its result: callers read the generation before
+ * querying and hand it to {@link #put}.
+ */
+final class QueryCache {
+
+    // Bound on the cached cells (rows times columns) across all entries
+    private static final int MAX_CELLS = 16 * 1024;
+
+    static final class Entry {
+        final String locationSetting;
+        final CursorSnapshot snapshot;
+        // How long the query that produced the snapshot took, i.e. what a hit saves
+        final long queryNanos;
+
+        Entry(String locationSetting, CursorSnapshot snapshot, long queryNanos) {
+            this.locationSetting = locationSetting;
+            this.snapshot = snapshot;
+            this.queryNanos = queryNanos;
+        }
+    }
+
+    private final LruCache<String, Entry> mEntries = new LruCache<String, Entry>(MAX_CELLS) {
+        @Override
+        protected int sizeOf(String key, Entry entry) {
+            // Empty results still take a slot
+            return Math.max(1, entry.snapshot.getCellCount());
+        }
+    };
+    private int mGeneration;
+
+    static String buildKey(int route, String locationSetting, long date, String[] projection,
+                           String sortOrder) {
+        return route + "|" + locationSetting + "|" + date + "|" + Arrays.toString(projection)
+                + "|" + sortOrder;
+    }
+
+    Entry get(String key) {
+        return mEntries.get(key);
+    }
+
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    synchronized void put(String key, Entry entry, int generation) {
+        if (generation == mGeneration && entry.snapshot.getCellCount() <= MAX_CELLS) {
+            mEntries.put(key, entry);
+        }
+    }
+
+    /**
+     * Drops the entries of the given locations.
+     */
+    synchronized void invalidate(Collection<String> locationSettings) {
+        mGeneration++;
+        for (Map.Entry<String, Entry> entry : mEntries.snapshot().entrySet()) {
+            if (locationSettings.contains(entry.getValue().locationSetting)) {
+                mEntries.remove(entry.getKey());
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        mGeneration++;
+        mEntries.evictAll();
+    }
+}
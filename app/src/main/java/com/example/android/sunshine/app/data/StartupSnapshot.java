@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.core.ForecastSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The first screen of the forecast list as it was after the last sync, kept in a file of a
+ * couple of kilobytes.  The list draws it on a cold start while the provider opens the
+ * database and the loader runs its first query, and its rows stand in for the ones the loader
+ * hasn't read yet.
+ */
+public final class StartupSnapshot {
+    private static final String LOG_TAG = StartupSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "startup_snapshot";
+    // More than a phone's screen of rows; a sync fetches two weeks
+    public static final int MAX_ROWS = 14;
+
+    private StartupSnapshot() {
+    }
+
+    /**
+     * Replaces the snapshot with the first rows of a location's forecast.  Writes to disk, so
+     * don't call it on the main thread.
+     */
+    public static void write(Context context, String locationSetting, ForecastSnapshot forecast) {
+        AtomicFile file = getFile(context);
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeUTF(locationSetting);
+            forecast.writeTo(out, MAX_ROWS);
+            out.flush();
+            file.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing the startup snapshot", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Returns the rows of locationSetting from today on, null if the snapshot is missing,
+     * unreadable or of another location.  Reads a file of a couple of kilobytes, which a cold
+     * start can afford on the main thread.
+     */
+    public static ForecastSnapshot read(Context context, String locationSetting) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(getFile(context).openRead()));
+            if (!locationSetting.equals(in.readUTF())) {
+                return null;
+            }
+            ForecastSnapshot forecast = ForecastSnapshot.readFrom(in,
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+            return forecast.getCount() == 0 ? null : forecast;
+        } catch (FileNotFoundException e) {
+            // No sync has finished yet
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Ignoring an unreadable startup snapshot", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    private static AtomicFile getFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+}
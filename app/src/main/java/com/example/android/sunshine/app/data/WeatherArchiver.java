@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.core.HistoryRetention;
+import com.example.android.sunshine.core.WeatherHistory;
+
+import java.util.TimeZone;
+
+/**
+ * Moves expiring weather rows into the history table and downsamples the history as it ages:
+ * days older than the retention's daily period become weeks, weeks become months, and months
+ * past the monthly period are dropped.
+ */
+final class WeatherArchiver {
+
+    // The weather columns that are archived, in the same order as HISTORY_COLUMNS
+    private static final String WEATHER_COLUMNS =
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES;
+
+    private static final String[] HISTORY_COLUMNS = {
+            HistoryEntry.COLUMN_LOC_KEY,
+            HistoryEntry.COLUMN_DATE,
+            HistoryEntry.COLUMN_WEATHER_ID,
+            HistoryEntry.COLUMN_MIN_TEMP,
+            HistoryEntry.COLUMN_MAX_TEMP,
+            HistoryEntry.COLUMN_HUMIDITY,
+            HistoryEntry.COLUMN_PRESSURE,
+            HistoryEntry.COLUMN_WIND_SPEED,
+            HistoryEntry.COLUMN_DEGREES,
+            HistoryEntry.COLUMN_DAYS
+    };
+    // these indices must match the projection
+    private static final int INDEX_LOC_KEY = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_HUMIDITY = 5;
+    private static final int INDEX_PRESSURE = 6;
+    private static final int INDEX_WIND_SPEED = 7;
+    private static final int INDEX_DEGREES = 8;
+    private static final int INDEX_DAYS = 9;
+
+    //tier = ? AND date < ?
+    private static final String sTierBeforeDateSelection =
+            HistoryEntry.COLUMN_TIER + " = ? AND " + HistoryEntry.COLUMN_DATE + " < ? ";
+
+    //location_id = ? AND tier = ? AND date = ?
+    private static final String sBucketSelection =
+            HistoryEntry.COLUMN_LOC_KEY + " = ? AND " + HistoryEntry.COLUMN_TIER + " = ? AND " +
+                    HistoryEntry.COLUMN_DATE + " = ? ";
+
+    /**
+     * Archives the weather rows matching selection, then applies the retention to the whole
+     * history, all in one transaction.
+     *
+     * @return the number of weather rows that were moved
+     */
+    static int archive(SQLiteDatabase db, String selection, String[] selectionArgs,
+                       HistoryRetention retention, long now, TimeZone tz) {
+        db.beginTransaction();
+        try {
+            // Weather rows are already normalized, so each one is exactly one day
+            db.execSQL("INSERT INTO " + HistoryEntry.TABLE_NAME + " (" +
+                            HistoryEntry.COLUMN_TIER + ", " +
+                            HistoryEntry.COLUMN_DAYS + ", " + WEATHER_COLUMNS + ") " +
+                            "SELECT " + HistoryEntry.TIER_DAILY + ", 1, " + WEATHER_COLUMNS +
+                            " FROM " + WeatherEntry.TABLE_NAME + " WHERE " + selection,
+                    selectionArgs == null ? new String[0] : selectionArgs);
+            int moved = db.delete(WeatherEntry.TABLE_NAME, selection, selectionArgs);
+
+            rollUp(db, HistoryEntry.TIER_DAILY, HistoryEntry.TIER_WEEKLY,
+                    retention.getCutoff(HistoryEntry.TIER_DAILY, now, tz), tz);
+            rollUp(db, HistoryEntry.TIER_WEEKLY, HistoryEntry.TIER_MONTHLY,
+                    retention.getCutoff(HistoryEntry.TIER_WEEKLY, now, tz), tz);
+            db.delete(HistoryEntry.TABLE_NAME, sTierBeforeDateSelection, new String[]{
+                    Integer.toString(HistoryEntry.TIER_MONTHLY),
+                    Long.toString(retention.getCutoff(HistoryEntry.TIER_MONTHLY, now, tz))});
+
+            db.setTransactionSuccessful();
+            return moved;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Replaces the rows of tier from dated before cutoff with rows of tier to, merging them
+     * into any row already archived for the same period.
+     */
+    private static void rollUp(SQLiteDatabase db, int from, int to, long cutoff, TimeZone tz) {
+        String[] expiredArgs = new String[]{Integer.toString(from), Long.toString(cutoff)};
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME, HISTORY_COLUMNS,
+                sTierBeforeDateSelection, expiredArgs, null, null,
+                HistoryEntry.COLUMN_LOC_KEY + ", " + HistoryEntry.COLUMN_DATE);
+        try {
+            // Sorted by location and date, so each period's rows are consecutive
+            WeatherHistory.Rollup rollup = null;
+            long locationId = -1;
+            long bucket = 0;
+            while (cursor.moveToNext()) {
+                long rowLocationId = cursor.getLong(INDEX_LOC_KEY);
+                long rowBucket = WeatherHistory.getBucketStart(to,
+                        cursor.getLong(INDEX_DATE), tz);
+                if (rollup == null || rowLocationId != locationId || rowBucket != bucket) {
+                    if (rollup != null) {
+                        writeBucket(db, locationId, to, bucket, rollup);
+                    }
+                    locationId = rowLocationId;
+                    bucket = rowBucket;
+                    rollup = readBucket(db, locationId, to, bucket);
+                }
+                addRow(rollup, cursor);
+            }
+            if (rollup != null) {
+                writeBucket(db, locationId, to, bucket, rollup);
+            }
+        } finally {
+            cursor.close();
+        }
+        db.delete(HistoryEntry.TABLE_NAME, sTierBeforeDateSelection, expiredArgs);
+    }
+
+    private static WeatherHistory.Rollup readBucket(SQLiteDatabase db, long locationId, int tier,
+                                                    long bucket) {
+        WeatherHistory.Rollup rollup = new WeatherHistory.Rollup();
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME, HISTORY_COLUMNS, sBucketSelection,
+                new String[]{Long.toString(locationId), Integer.toString(tier),
+                        Long.toString(bucket)}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                addRow(rollup, cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+        return rollup;
+    }
+
+    private static void addRow(WeatherHistory.Rollup rollup, Cursor cursor) {
+        rollup.add(cursor.getInt(INDEX_WEATHER_ID),
+                cursor.getDouble(INDEX_MIN_TEMP),
+                cursor.getDouble(INDEX_MAX_TEMP),
+                cursor.getDouble(INDEX_HUMIDITY),
+                cursor.getDouble(INDEX_PRESSURE),
+                cursor.getDouble(INDEX_WIND_SPEED),
+                cursor.getDouble(INDEX_DEGREES),
+                cursor.getInt(INDEX_DAYS));
+    }
+
+    private static void writeBucket(SQLiteDatabase db, long locationId, int tier, long bucket,
+                                    WeatherHistory.Rollup rollup) {
+        ContentValues values = new ContentValues();
+        values.put(HistoryEntry.COLUMN_LOC_KEY, locationId);
+        values.put(HistoryEntry.COLUMN_TIER, tier);
+        values.put(HistoryEntry.COLUMN_DATE, bucket);
+        values.put(HistoryEntry.COLUMN_WEATHER_ID, rollup.getWeatherId());
+        values.put(HistoryEntry.COLUMN_MIN_TEMP, rollup.getMinTemp());
+        values.put(HistoryEntry.COLUMN_MAX_TEMP, rollup.getMaxTemp());
+        values.put(HistoryEntry.COLUMN_HUMIDITY, rollup.getHumidity());
+        values.put(HistoryEntry.COLUMN_PRESSURE, rollup.getPressure());
+        values.put(HistoryEntry.COLUMN_WIND_SPEED, rollup.getWindSpeed());
+        values.put(HistoryEntry.COLUMN_DEGREES, rollup.getDegrees());
+        values.put(HistoryEntry.COLUMN_DAYS, rollup.getDays());
+        // The unique constraint replaces the row that readBucket merged in
+        db.insert(HistoryEntry.TABLE_NAME, null, values);
+    }
+
+    private WeatherArchiver() { }
+}
@@ -19,7 +19,12 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+import android.util.LruCache;
+
+import com.example.android.sunshine.core.DayNormalizer;
+import com.example.android.sunshine.core.HistoryRetention;
+import com.example.android.sunshine.core.WeatherHistory;
+import com.example.android.sunshine.core.WeatherUriCodec;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +48,16 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    // Debug builds only: sync pipeline measurements, see SyncMetrics.
+    public static final String PATH_METRICS = "metrics";
+    public static final String PATH_HISTORY = "history";
+    // Deleting weather rows through this path archives them into the history instead
+    public static final String PATH_ARCHIVE = "archive";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the the Julian day.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return DayNormalizer.getDefault().normalizeDate(startDate);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -86,6 +92,121 @@ public class WeatherContract {
         }
     }
 
+    /* Inner class that defines the (read-only, in-memory) sync metrics surface */
+    public static final class MetricsEntry {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_METRICS).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_METRICS;
+    }
+
+    /* Inner class that defines the table contents of the weather history archive */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final Uri ARCHIVE_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_ARCHIVE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "history";
+
+        public static final int TIER_DAILY = WeatherHistory.TIER_DAILY;
+        public static final int TIER_WEEKLY = WeatherHistory.TIER_WEEKLY;
+        public static final int TIER_MONTHLY = WeatherHistory.TIER_MONTHLY;
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // One of the TIER_ constants: whether a row stands for a day, a week or a month
+        public static final String COLUMN_TIER = "tier";
+        // Start of the day, week or month, stored as long in milliseconds since the epoch
+        public static final String COLUMN_DATE = "date";
+        // The weather id that covered the most days of the period
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        // Lowest min and highest max temperature of the period
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+
+        // Averages over the days of the period
+        public static final String COLUMN_HUMIDITY = "humidity";
+        public static final String COLUMN_PRESSURE = "pressure";
+        public static final String COLUMN_WIND_SPEED = "wind";
+        public static final String COLUMN_DEGREES = "degrees";
+
+        // Number of archived days the row was rolled up from
+        public static final String COLUMN_DAYS = "days";
+
+        private static final String PARAM_TIER = "tier";
+        private static final String PARAM_START_DATE = "start";
+        private static final String PARAM_END_DATE = "end";
+        private static final String PARAM_DAILY_DAYS = "daily_days";
+        private static final String PARAM_WEEKLY_WEEKS = "weekly_weeks";
+        private static final String PARAM_MONTHLY_MONTHS = "monthly_months";
+
+        public static Uri buildHistoryLocation(String locationSetting) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+        }
+
+        /**
+         * Returns the history of one tier for a location, from startDate (inclusive) to
+         * endDate (exclusive).
+         */
+        public static Uri buildHistoryLocationWithRange(String locationSetting, int tier,
+                                                        long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_TIER, Integer.toString(tier))
+                    .appendQueryParameter(PARAM_START_DATE, Long.toString(startDate))
+                    .appendQueryParameter(PARAM_END_DATE, Long.toString(endDate)).build();
+        }
+
+        public static Uri buildArchiveUri(HistoryRetention retention) {
+            return ARCHIVE_URI.buildUpon()
+                    .appendQueryParameter(PARAM_DAILY_DAYS, Integer.toString(retention.dailyDays))
+                    .appendQueryParameter(PARAM_WEEKLY_WEEKS,
+                            Integer.toString(retention.weeklyWeeks))
+                    .appendQueryParameter(PARAM_MONTHLY_MONTHS,
+                            Integer.toString(retention.monthlyMonths)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static int getTierFromUri(Uri uri) {
+            return (int) getLongParameter(uri, PARAM_TIER, TIER_DAILY);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            return getLongParameter(uri, PARAM_START_DATE, 0);
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            return getLongParameter(uri, PARAM_END_DATE, Long.MAX_VALUE);
+        }
+
+        public static HistoryRetention getRetentionFromUri(Uri uri) {
+            HistoryRetention defaults = HistoryRetention.DEFAULT;
+            return new HistoryRetention(
+                    (int) getLongParameter(uri, PARAM_DAILY_DAYS, defaults.dailyDays),
+                    (int) getLongParameter(uri, PARAM_WEEKLY_WEEKS, defaults.weeklyWeeks),
+                    (int) getLongParameter(uri, PARAM_MONTHLY_MONTHS, defaults.monthlyMonths));
+        }
+
+        private static long getLongParameter(Uri uri, String name, long defaultValue) {
+            String value = uri.getQueryParameter(name);
+            if (null != value && value.length() > 0)
+                return Long.parseLong(value);
+            else
+                return defaultValue;
+        }
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -126,6 +247,15 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // The per-location uris are built and parsed as strings by WeatherUriCodec; the
+        // provider, the loaders and the widgets keep asking about the same few of them, so
+        // the parsed parts are kept around too.
+        private static final String CONTENT_URI_STRING = CONTENT_URI.toString();
+        private static final String PARAM_LIMIT = "limit";
+        private static final int PARSED_URI_CACHE_SIZE = 32;
+        private static final LruCache<String, WeatherUriCodec.Parsed> sParsedUris =
+                new LruCache<String, WeatherUriCodec.Parsed>(PARSED_URI_CACHE_SIZE);
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -134,35 +264,87 @@ public class WeatherContract {
             Student: This is the buildWeatherLocation function you filled in.
          */
         public static Uri buildWeatherLocation(String locationSetting) {
-            return CONTENT_URI.buildUpon().appendPath(locationSetting).build();
+            return Uri.parse(
+                    WeatherUriCodec.buildWeatherLocation(CONTENT_URI_STRING, locationSetting));
         }
 
         public static Uri buildWeatherLocationWithStartDate(
                 String locationSetting, long startDate) {
             long normalizedDate = normalizeDate(startDate);
-            return CONTENT_URI.buildUpon().appendPath(locationSetting)
-                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizedDate)).build();
+            return Uri.parse(WeatherUriCodec.buildWeatherLocationWithStartDate(
+                    CONTENT_URI_STRING, locationSetting, normalizedDate));
+        }
+
+        /**
+         * Returns a page of the weather for a location: at most limit days, from startDate
+         * (inclusive) on.  A list pages through its rows by starting each page at a date it
+         * already knows, rather than at an offset the database would have to count up to.
+         */
+        public static Uri buildWeatherLocationPage(
+                String locationSetting, long startDate, int limit) {
+            return Uri.parse(WeatherUriCodec.buildWeatherLocationWithStartDate(
+                    CONTENT_URI_STRING, locationSetting, normalizeDate(startDate))
+                    + '&' + PARAM_LIMIT + '=' + limit);
         }
 
         public static Uri buildWeatherLocationWithDate(String locationSetting, long date) {
-            return CONTENT_URI.buildUpon().appendPath(locationSetting)
-                    .appendPath(Long.toString(normalizeDate(date))).build();
+            return Uri.parse(WeatherUriCodec.buildWeatherLocationWithDate(
+                    CONTENT_URI_STRING, locationSetting, normalizeDate(date)));
+        }
+
+        /**
+         * Returns the parts of a per-location weather uri, null if uri isn't shaped like one
+         * of the uris built above.
+         */
+        static WeatherUriCodec.Parsed parse(Uri uri) {
+            String uriString = uri.toString();
+            WeatherUriCodec.Parsed parsed = sParsedUris.get(uriString);
+            if (parsed == null) {
+                parsed = WeatherUriCodec.parse(uriString, CONTENT_URI_STRING);
+                if (parsed != null) {
+                    sParsedUris.put(uriString, parsed);
+                }
+            }
+            return parsed;
         }
 
         public static String getLocationSettingFromUri(Uri uri) {
+            WeatherUriCodec.Parsed parsed = parse(uri);
+            if (parsed != null) {
+                return parsed.locationSetting;
+            }
             return uri.getPathSegments().get(1);
         }
 
         public static long getDateFromUri(Uri uri) {
+            WeatherUriCodec.Parsed parsed = parse(uri);
+            if (parsed != null && parsed.hasDate()) {
+                return parsed.date;
+            }
             return Long.parseLong(uri.getPathSegments().get(2));
         }
 
         public static long getStartDateFromUri(Uri uri) {
+            WeatherUriCodec.Parsed parsed = parse(uri);
+            if (parsed != null) {
+                return parsed.startDate;
+            }
             String dateString = uri.getQueryParameter(COLUMN_DATE);
             if (null != dateString && dateString.length() > 0)
                 return Long.parseLong(dateString);
             else
                 return 0;
         }
+
+        /**
+         * Returns the page size of a page uri, 0 if uri isn't one.
+         */
+        public static int getLimitFromUri(Uri uri) {
+            String limitString = uri.getQueryParameter(PARAM_LIMIT);
+            if (null != limitString && limitString.length() > 0)
+                return Integer.parseInt(limitString);
+            else
+                return 0;
+        }
     }
 }
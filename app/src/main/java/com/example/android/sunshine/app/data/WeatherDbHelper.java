@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -28,10 +29,12 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    static final String WEATHER_LOCATION_INDEX = "weather_location_date";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -81,10 +84,69 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createWeatherLocationIndex(sqLiteDatabase);
+        createHistoryTable(sqLiteDatabase);
+    }
+
+    private void createWeatherLocationIndex(SQLiteDatabase sqLiteDatabase) {
+        // The unique (date, location_id) index can't seek by location.  This one serves the
+        // per-location queries, and when WeatherProvider skips the location join it covers the
+        // projections of the widgets, Muzei, the notification and sync's change check, so
+        // those never read the table itself.
+        sqLiteDatabase.execSQL("CREATE INDEX " + WEATHER_LOCATION_INDEX + " ON " +
+                WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherEntry.COLUMN_SHORT_DESC + ");");
+    }
+
+    private void createHistoryTable(SQLiteDatabase sqLiteDatabase) {
+        // Past weather rows end up here instead of being deleted, see WeatherArchiver.  The
+        // descriptions aren't kept: they can be rebuilt from the weather id.
+        final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+                HistoryEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+                HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_TIER + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+                HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+                HistoryEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_DAYS + " INTEGER NOT NULL, " +
+
+                " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // One row per period and tier for each location; the unique index also
+                // serves the range queries, which filter on all three.
+                " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                HistoryEntry.COLUMN_TIER + ", " +
+                HistoryEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        if (oldVersion >= 2) {
+            // Since version 2 only tables and indices were added; keep the locations the
+            // history points to
+            if (oldVersion < 3) {
+                createHistoryTable(sqLiteDatabase);
+            }
+            if (oldVersion < 4) {
+                createWeatherLocationIndex(sqLiteDatabase);
+            }
+            return;
+        }
         // This database is only a cache for online data, so its upgrade policy is
         // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
@@ -93,6 +155,7 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
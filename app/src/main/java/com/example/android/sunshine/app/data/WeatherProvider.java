@@ -17,23 +17,45 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.sync.SyncMetrics;
+import com.example.android.sunshine.core.DayNormalizer;
+import com.example.android.sunshine.core.WeatherUriCodec;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final QueryCache mQueryCache = new QueryCache();
+    // The notification batch of the applyBatch running on each thread
+    private final ThreadLocal<NotificationBatch> mNotificationBatch =
+            new ThreadLocal<NotificationBatch>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int HISTORY = 400;
+    static final int HISTORY_WITH_LOCATION = 401;
+    static final int ARCHIVE = 500;
+    static final int METRICS = 900;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -51,6 +73,21 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    private static final SQLiteQueryBuilder sHistoryByLocationSettingQueryBuilder;
+
+    static{
+        sHistoryByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //history INNER JOIN location ON history.location_id = location._id
+        sHistoryByLocationSettingQueryBuilder.setTables(
+                WeatherContract.HistoryEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.HistoryEntry.TABLE_NAME +
+                        "." + WeatherContract.HistoryEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+    }
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -68,10 +105,105 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
-    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+    //location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //location_id = ? AND date >= ?
+    private static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    // Anything only the location table can answer: a column qualified with its name or one of
+    // the columns the weather table doesn't have
+    private static final Pattern sLocationColumnPattern = Pattern.compile(
+            "\\b" + WeatherContract.LocationEntry.TABLE_NAME + "\\s*\\.|\\b(" +
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + "|" +
+                    WeatherContract.LocationEntry.COLUMN_CITY_NAME + "|" +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LAT + "|" +
+                    WeatherContract.LocationEntry.COLUMN_COORD_LONG + ")\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    //location.location_setting = ? AND tier = ? AND date >= ? AND date < ?
+    private static final String sLocationSettingTierAndRangeSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_TIER + " = ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherContract.HistoryEntry.COLUMN_DATE + " < ? ";
+
+    /**
+     * Returns whether a query needs the location table joined in: a null projection asks for
+     * every column, otherwise the projection or the sort order has to mention a location one.
+     */
+    static boolean needsLocationJoin(String[] projection, String sortOrder) {
+        if (projection == null) {
+            return true;
+        }
+        for (String column : projection) {
+            if (sLocationColumnPattern.matcher(column).find()) {
+                return true;
+            }
+        }
+        return sortOrder != null && sLocationColumnPattern.matcher(sortOrder).find();
+    }
+
+    /**
+     * Returns the row id of a location setting, LocationIdCache.NO_ID if there's no such
+     * location.
+     */
+    private long getLocationId(String locationSetting) {
+        final LocationIdCache cache = LocationIdCache.getInstance();
+        long locationId = cache.get(locationSetting);
+        if (locationId != LocationIdCache.NO_ID) {
+            return locationId;
+        }
+        final int generation = cache.getGeneration();
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            if (cursor.moveToFirst()) {
+                locationId = cursor.getLong(0);
+                cache.put(locationSetting, locationId, generation);
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationId;
+    }
+
+    private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder,
+                                               String limit) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
+        if (!needsLocationJoin(projection, sortOrder)) {
+            // Only weather columns: find the location once and read the weather table alone
+            String locationId = Long.toString(getLocationId(locationSetting));
+            return mOpenHelper.getReadableDatabase().query(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    projection,
+                    startDate == 0 ? sLocationIdSelection : sLocationIdWithStartDateSelection,
+                    startDate == 0 ? new String[]{locationId}
+                            : new String[]{locationId, Long.toString(startDate)},
+                    null,
+                    null,
+                    sortOrder,
+                    limit
+            );
+        }
+
         String[] selectionArgs;
         String selection;
 
@@ -89,7 +221,8 @@ public class WeatherProvider extends ContentProvider {
                 selectionArgs,
                 null,
                 null,
-                sortOrder
+                sortOrder,
+                limit
         );
     }
 
@@ -98,6 +231,19 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        if (!needsLocationJoin(projection, sortOrder)) {
+            return mOpenHelper.getReadableDatabase().query(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    projection,
+                    sLocationIdAndDaySelection,
+                    new String[]{Long.toString(getLocationId(locationSetting)),
+                            Long.toString(date)},
+                    null,
+                    null,
+                    sortOrder
+            );
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -108,6 +254,119 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    private Cursor getHistoryByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.HistoryEntry.getLocationSettingFromUri(uri);
+
+        return sHistoryByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationSettingTierAndRangeSelection,
+                new String[]{locationSetting,
+                        Integer.toString(WeatherContract.HistoryEntry.getTierFromUri(uri)),
+                        Long.toString(WeatherContract.HistoryEntry.getStartDateFromUri(uri)),
+                        Long.toString(WeatherContract.HistoryEntry.getEndDateFromUri(uri))},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    /**
+     * Answers the per-location weather queries from mQueryCache when it can, and fills it when
+     * it can't.
+     */
+    private Cursor getCachedWeather(int match, Uri uri, String[] projection, String sortOrder) {
+        final SyncMetrics metrics = SyncMetrics.getInstance();
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        long date = match == WEATHER_WITH_LOCATION_AND_DATE
+                ? WeatherContract.WeatherEntry.getDateFromUri(uri)
+                : WeatherContract.WeatherEntry.getStartDateFromUri(uri);
+        String key = QueryCache.buildKey(match, locationSetting, date, projection, sortOrder);
+
+        QueryCache.Entry entry = mQueryCache.get(key);
+        if (entry != null) {
+            metrics.increment(SyncMetrics.COUNTER_QUERY_CACHE_HIT);
+            metrics.addQueryTimeSaved(entry.queryNanos);
+            return entry.snapshot.newCursor();
+        }
+        metrics.increment(SyncMetrics.COUNTER_QUERY_CACHE_MISS);
+
+        int generation = mQueryCache.getGeneration();
+        long start = SyncMetrics.now();
+        Cursor cursor = match == WEATHER_WITH_LOCATION_AND_DATE
+                ? getWeatherByLocationSettingAndDate(uri, projection, sortOrder)
+                : getWeatherByLocationSetting(uri, projection, sortOrder, null);
+        CursorSnapshot snapshot;
+        try {
+            snapshot = CursorSnapshot.copyOf(cursor);
+        } finally {
+            cursor.close();
+        }
+        mQueryCache.put(key, new QueryCache.Entry(locationSetting, snapshot,
+                SyncMetrics.now() - start), generation);
+        return snapshot.newCursor();
+    }
+
+    /**
+     * Returns the ids of the locations that have weather rows matching selection, for
+     * {@link #invalidateWeather}; none inside a transaction, which doesn't need them.
+     */
+    private static Set<Long> getWeatherLocationIds(SQLiteDatabase db, String selection,
+                                                   String[] selectionArgs) {
+        Set<Long> locationIds = new HashSet<Long>();
+        if (db.inTransaction()) {
+            return locationIds;
+        }
+        Cursor cursor = db.query(true, WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationIds;
+    }
+
+    /**
+     * Drops the cached queries of the given locations.  Called after the write, so that a
+     * query racing with it can't cache what it read before.  Does nothing inside a
+     * transaction: bulkInsert and applyBatch invalidate once it has committed, which saves a
+     * lookup of the location settings per written row.
+     */
+    private void invalidateWeather(SQLiteDatabase db, Set<Long> locationIds) {
+        if (locationIds.isEmpty() || db.inTransaction()) {
+            return;
+        }
+        // Ids are numbers, so they can go in the statement itself
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID + " IN (");
+        for (Long locationId : locationIds) {
+            selection.append(locationId).append(',');
+        }
+        selection.setCharAt(selection.length() - 1, ')');
+
+        List<String> locationSettings = new ArrayList<String>(locationIds.size());
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(), null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        mQueryCache.invalidate(locationSettings);
+    }
+
+    private static void addLocationId(Set<Long> locationIds, ContentValues values) {
+        Long locationId = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        if (locationId != null) {
+            locationIds.add(locationId);
+        }
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +389,12 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_ARCHIVE, ARCHIVE);
+
+        matcher.addURI(authority, WeatherContract.PATH_METRICS, METRICS);
         return matcher;
     }
 
@@ -164,6 +429,11 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HISTORY:
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case METRICS:
+                return WeatherContract.MetricsEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -175,16 +445,28 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        // The per-location weather uris are most of the traffic; their shape already says
+        // which they are, the rest go through the matcher
+        WeatherUriCodec.Parsed parsed = WeatherContract.WeatherEntry.parse(uri);
+        final int match = parsed == null ? sUriMatcher.match(uri)
+                : parsed.hasDate() ? WEATHER_WITH_LOCATION_AND_DATE : WEATHER_WITH_LOCATION;
+        switch (match) {
             // "weather/*/*"
-            case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+            case WEATHER_WITH_LOCATION_AND_DATE: {
+                retCursor = getCachedWeather(match, uri, projection, sortOrder);
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                int limit = WeatherContract.WeatherEntry.getLimitFromUri(uri);
+                if (limit > 0) {
+                    // Pages are small and their list keeps them; caching them would only
+                    // push out the whole-list entries
+                    retCursor = getWeatherByLocationSetting(uri, projection, sortOrder,
+                            Integer.toString(limit));
+                } else {
+                    retCursor = getCachedWeather(match, uri, projection, sortOrder);
+                }
                 break;
             }
             // "weather"
@@ -213,6 +495,33 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "history/*"
+            case HISTORY_WITH_LOCATION: {
+                retCursor = getHistoryByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "history"
+            case HISTORY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "metrics"
+            case METRICS: {
+                // The metrics are diagnostics only; release builds don't serve them
+                if (!BuildConfig.DEBUG) {
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+                }
+                retCursor = SyncMetrics.getInstance().toCursor();
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -234,6 +543,9 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER: {
                 normalizeDate(values);
                 long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                Set<Long> locationIds = new HashSet<Long>();
+                addLocationId(locationIds, values);
+                invalidateWeather(db, locationIds);
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -242,6 +554,9 @@ public class WeatherProvider extends ContentProvider {
             }
             case LOCATION: {
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                // Always after the write, see LocationIdCache
+                LocationIdCache.getInstance().invalidate();
+                mQueryCache.invalidateAll();
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
@@ -251,7 +566,8 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        countCommit(db);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -263,24 +579,76 @@ public class WeatherProvider extends ContentProvider {
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
+                Set<Long> locationIds = getWeatherLocationIds(db, selection, selectionArgs);
                 rowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                invalidateWeather(db, locationIds);
                 break;
+            }
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                LocationIdCache.getInstance().invalidate();
+                mQueryCache.invalidateAll();
+                break;
+            case HISTORY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case ARCHIVE: {
+                // The selection picks weather rows; they move to the history, which changes too
+                Set<Long> locationIds = getWeatherLocationIds(db, selection, selectionArgs);
+                long start = SyncMetrics.now();
+                rowsDeleted = WeatherArchiver.archive(db, selection, selectionArgs,
+                        WeatherContract.HistoryEntry.getRetentionFromUri(uri),
+                        System.currentTimeMillis(), DayNormalizer.getDefault().getTimeZone());
+                SyncMetrics.getInstance().recordPhase(SyncMetrics.PHASE_ARCHIVE, start);
+                invalidateWeather(db, locationIds);
+                if (rowsDeleted != 0) {
+                    countCommit(db);
+                    notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                    notifyChange(WeatherContract.HistoryEntry.CONTENT_URI);
+                }
+                return rowsDeleted;
+            }
+            case METRICS:
+                // Deleting the metrics resets every histogram and counter
+                if (!BuildConfig.DEBUG) {
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+                }
+                SyncMetrics.getInstance().reset();
+                return 0;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            countCommit(db);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
+    /**
+     * Notifies the observers of uri, or leaves that to the end of the calling thread's
+     * notification batch if it has one open.
+     */
+    private void notifyChange(Uri uri) {
+        NotificationBatch batch = mNotificationBatch.get();
+        if (batch != null) {
+            batch.add(uri);
+        } else {
+            sendNotification(uri);
+        }
+    }
+
+    // The writes behind a notification have committed, so the shared snapshot goes with it
+    private void sendNotification(Uri uri) {
+        ForecastSnapshotCache.getInstance().invalidate();
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -297,20 +665,28 @@ public class WeatherProvider extends ContentProvider {
         int rowsUpdated;
 
         switch (match) {
-            case WEATHER:
+            case WEATHER: {
                 normalizeDate(values);
+                // Rows can move to another location, which changes too
+                Set<Long> locationIds = getWeatherLocationIds(db, selection, selectionArgs);
+                addLocationId(locationIds, values);
                 rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                invalidateWeather(db, locationIds);
                 break;
+            }
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                LocationIdCache.getInstance().invalidate();
+                mQueryCache.invalidateAll();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            countCommit(db);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -323,9 +699,11 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                Set<Long> locationIds = new HashSet<Long>();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
+                        addLocationId(locationIds, value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
@@ -334,14 +712,105 @@ public class WeatherProvider extends ContentProvider {
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
+                    invalidateWeather(db, locationIds);
+                }
+                if (returnCount != 0) {
+                    countCommit(db);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
                 return returnCount;
+            case LOCATION:
+                // See LocationBatch; a setting that already has a row fails its insert and
+                // isn't counted
+                db.beginTransaction();
+                int locationCount = 0;
+                try {
+                    for (ContentValues value : values) {
+                        long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, value);
+                        if (_id != -1) {
+                            locationCount++;
+                        }
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    LocationIdCache.getInstance().invalidate();
+                    mQueryCache.invalidateAll();
+                }
+                if (locationCount != 0) {
+                    countCommit(db);
+                    notifyChange(uri);
+                }
+                return locationCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in a single transaction, so they cost one commit.  Operations
+     * marked with withYieldAllowed are points where the transaction may be committed early to
+     * let other connections in; a failing operation rolls back the ones since the last such
+     * commit, or all of them if there was none.  The change notifications go out once, after
+     * the final commit, and not at all if nothing was committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final int count = operations.size();
+        final ContentProviderResult[] results = new ContentProviderResult[count];
+        boolean writesLocations = false;
+        // The operations' notifications are held until the transaction ends, so a rollback can
+        // drop them
+        NotificationBatch batch = new NotificationBatch();
+        batch.begin();
+        mNotificationBatch.set(batch);
+        boolean committed = false;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if (i > 0 && operation.isYieldAllowed() && db.yieldIfContendedSafely()) {
+                    SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_DB_COMMITS);
+                    committed = true;
+                }
+                writesLocations |= sUriMatcher.match(operation.getUri()) == LOCATION;
+                results[i] = operation.apply(this, results, i);
+            }
+            db.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            db.endTransaction();
+            // The operations invalidated the caches before their changes were committed;
+            // anything read in between may be stale, so invalidate again
+            if (writesLocations) {
+                LocationIdCache.getInstance().invalidate();
+            }
+            mQueryCache.invalidateAll();
+            mNotificationBatch.remove();
+            if (committed) {
+                // After a yield only part may have committed; notifying all of it is safe
+                batch.end();
+                for (Uri uri : batch.getUris()) {
+                    sendNotification(uri);
+                }
+            } else {
+                batch.discard();
+            }
+        }
+        countCommit(db);
+        return results;
+    }
+
+    // Counts a write that committed, unless it's part of an enclosing transaction that commits
+    // later
+    private static void countCommit(SQLiteDatabase db) {
+        if (!db.inTransaction()) {
+            SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_DB_COMMITS);
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
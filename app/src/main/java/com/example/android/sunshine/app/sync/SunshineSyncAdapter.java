@@ -7,11 +7,13 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -24,20 +26,37 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.RemoteException;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.ArtworkCache;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.ArtPackService;
+import com.example.android.sunshine.app.art.ArtPackStore;
+import com.example.android.sunshine.app.data.ForecastSnapshotCache;
+import com.example.android.sunshine.app.data.LocationIdCache;
+import com.example.android.sunshine.app.data.StartupSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.core.AdaptiveSyncPolicy;
+import com.example.android.sunshine.core.CircuitBreaker;
+import com.example.android.sunshine.core.DailyForecast;
+import com.example.android.sunshine.core.DayNormalizer;
+import com.example.android.sunshine.core.ForecastResponse;
+import com.example.android.sunshine.core.HttpStatusException;
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.ResilientFetcher;
+import com.example.android.sunshine.core.RetryPolicy;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.DataMap;
@@ -45,18 +64,20 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Random;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -65,10 +86,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
-    // 60 seconds (1 minute) * 180 = 3 hours
-    public static final int SYNC_INTERVAL = 60 * 180;
+    // Interval at which to sync with the weather, in seconds, until SyncScheduler has seen a
+    // sync and adapted it.  60 seconds (1 minute) * 180 = 3 hours
+    public static final int SYNC_INTERVAL = AdaptiveSyncPolicy.BASE_INTERVAL;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
+    // A day counts as changed for SyncScheduler when its condition or either temperature moved
+    private static final double TEMPERATURE_CHANGE_THRESHOLD = 2.0;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
@@ -91,6 +114,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
 
+    private static final String[] CHANGE_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // these indices must match CHANGE_PROJECTION
+    private static final int INDEX_CHANGE_DATE = 0;
+    private static final int INDEX_CHANGE_WEATHER_ID = 1;
+    private static final int INDEX_CHANGE_MAX_TEMP = 2;
+    private static final int INDEX_CHANGE_MIN_TEMP = 3;
+
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -101,6 +137,45 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Fraction of the stored forecast days this sync changed, for SyncScheduler
+    private double mChangedFraction;
+    // The location status this sync set, for SyncScheduler, or NO_LOCATION_STATUS
+    private int mLocationStatus;
+    private static final int NO_LOCATION_STATUS = -1;
+
+    // After this many failed attempts in a row, stop calling OpenWeatherMap for a while
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MILLIS = 15 * 60 * 1000;
+
+    // Shared by all syncs so the circuit breaker sees every attempt
+    private static final ResilientFetcher sFetcher = new ResilientFetcher(RetryPolicy.DEFAULT,
+            new CircuitBreaker(CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS,
+                    new CircuitBreaker.Clock() {
+                        @Override
+                        public long now() {
+                            return SystemClock.elapsedRealtime();
+                        }
+                    }),
+            ResilientFetcher.THREAD_SLEEPER, new Random());
+
+    static {
+        sFetcher.setListener(new ResilientFetcher.Listener() {
+            @Override
+            public void onRetry(int failedAttempt, long delayMillis, IOException cause) {
+                Log.w(SunshineSyncAdapter.class.getSimpleName(), "Attempt " + failedAttempt
+                        + " failed (" + cause + "), retrying in " + delayMillis + " ms");
+                SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_FETCH_RETRIED);
+            }
+
+            @Override
+            public void onShortCircuit() {
+                Log.w(SunshineSyncAdapter.class.getSimpleName(),
+                        "OpenWeatherMap considered down, not fetching");
+                SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_FETCH_SHORT_CIRCUITED);
+            }
+        });
+    }
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
@@ -108,12 +183,21 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
+        final SyncMetrics metrics = SyncMetrics.getInstance();
+        final long syncStart = SyncMetrics.now();
+        mChangedFraction = SyncScheduler.CHANGE_UNKNOWN;
+        mLocationStatus = NO_LOCATION_STATUS;
         String locationQuery = Utility.getPreferredLocation(getContext());
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        // Skip syncs queued for a location the user has already changed away from
+        String requestedLocation = extras.getString(SyncCoalescer.EXTRA_LOCATION);
+        if (requestedLocation != null && !requestedLocation.equals(locationQuery)) {
+            Log.d(LOG_TAG, "Skipping superseded sync for " + requestedLocation);
+            metrics.increment(SyncMetrics.COUNTER_SYNC_SUPERSEDED);
+            return;
+        }
+        final SyncCoalescer coalescer = SyncCoalescer.getInstance();
+        boolean fetched = false;
 
         // Will contain the raw JSON response as a string.
         String forecastJsonStr = null;
@@ -142,38 +226,42 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
                     .build();
 
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+            final URL url = new URL(builtUri.toString());
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
+            if (!coalescer.onFetchStarted(locationQuery)) {
+                Log.d(LOG_TAG, "Skipping superseded sync for " + locationQuery);
                 return;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            final String location = locationQuery;
+            forecastJsonStr = sFetcher.execute(new ResilientFetcher.Attempt<String>() {
+                @Override
+                public String run() throws IOException {
+                    if (coalescer.isSuperseded(location)) {
+                        // Don't retry on behalf of a location nobody wants any more
+                        throw new InterruptedIOException("Superseded");
+                    }
+                    return downloadForecast(url, location);
+                }
+            });
+            if (forecastJsonStr == null) {
+                // Nothing to do.
+                return;
             }
+            fetched = true;
 
-            if (buffer.length() == 0) {
+            if (forecastJsonStr.length() == 0) {
                 // Stream was empty.  No point in parsing.
                 setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
                 return;
             }
-            forecastJsonStr = buffer.toString();
             getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
+            if (coalescer.isSuperseded(locationQuery)) {
+                // SyncCoalescer closed the connection because the location changed; the sync
+                // for the new location will set the status
+                Log.d(LOG_TAG, "Fetch for " + locationQuery + " cancelled");
+                return;
+            }
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
@@ -182,6 +270,64 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        } finally {
+            coalescer.onFetchFinished(locationQuery, fetched);
+            metrics.recordPhase(SyncMetrics.PHASE_TOTAL, syncStart);
+            // A sync that ended without a status, such as one with nothing to fetch, tells the
+            // scheduler nothing about the server
+            if (mLocationStatus != NO_LOCATION_STATUS && !coalescer.isSuperseded(locationQuery)) {
+                SyncScheduler.onSyncFinished(getContext(), mLocationStatus, mChangedFraction);
+            }
+        }
+        return;
+    }
+
+    /**
+     * Makes one attempt at downloading the forecast.
+     * @return the response body, null if there was none
+     * @throws HttpStatusException if the server didn't answer 200 OK
+     */
+    private String downloadForecast(URL url, String locationQuery) throws IOException {
+        final SyncMetrics metrics = SyncMetrics.getInstance();
+
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+        try {
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            SyncCoalescer.getInstance().setInFlightConnection(locationQuery, urlConnection);
+            long phaseStart = SyncMetrics.now();
+            urlConnection.connect();
+            metrics.recordPhase(SyncMetrics.PHASE_CONNECT, phaseStart);
+
+            int statusCode = urlConnection.getResponseCode();
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(statusCode);
+            }
+
+            // Read the input stream into a String
+            phaseStart = SyncMetrics.now();
+            InputStream inputStream = urlConnection.getInputStream();
+            StringBuffer buffer = new StringBuffer();
+            if (inputStream == null) {
+                return null;
+            }
+            CountingInputStream countingStream = new CountingInputStream(inputStream);
+            reader = new BufferedReader(new InputStreamReader(countingStream));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                // But it does make debugging a *lot* easier if you print out the completed
+                // buffer for debugging.
+                buffer.append(line + "\n");
+            }
+            metrics.recordPhase(SyncMetrics.PHASE_DOWNLOAD, phaseStart);
+            metrics.addBytesTransferred(countingStream.getCount());
+            return buffer.toString();
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
@@ -194,7 +340,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 }
             }
         }
-        return;
     }
 
     /**
@@ -209,158 +354,130 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             throws JSONException {
 
         // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
+        // The parsing itself lives in the core module so it can be tested and benchmarked
+        // off-device; here we only map the result onto the database.
+        final SyncMetrics metrics = SyncMetrics.getInstance();
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
-            }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
             // OWM returns daily forecasts based upon the local time of the city that is being
             // asked for, which means that we need to know the GMT offset to translate this data
             // properly.
 
             // Since this data is also sent in-order and the first day is always the
             // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
+            // normalized date for all of our weather.
+            DayNormalizer dayNormalizer = DayNormalizer.getDefault();
+            int julianStartDay = dayNormalizer.getJulianDay(System.currentTimeMillis());
+
+            long phaseStart = SyncMetrics.now();
+            ForecastResponse forecast =
+                    OwmForecastParser.parse(forecastJsonStr, julianStartDay, dayNormalizer);
+
+            // do we have an error?
+            switch (forecast.status) {
+                case ForecastResponse.STATUS_OK:
+                    break;
+                case ForecastResponse.STATUS_LOCATION_NOT_FOUND:
+                    setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                    return;
+                default:
+                    setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                    return;
+            }
+
+            // Insert the new weather information into the database
+            Vector<ContentValues> cVVector = new Vector<ContentValues>(forecast.days.size());
 
+            for (DailyForecast day : forecast.days) {
                 ContentValues weatherValues = new ContentValues();
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, day.date);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, day.humidity);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, day.pressure);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, day.windSpeed);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, day.windDirection);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, day.high);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, day.low);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, day.description);
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, day.weatherId);
 
                 cVVector.add(weatherValues);
             }
-
-            int inserted = 0;
-            // add to database
+            metrics.recordPhase(SyncMetrics.PHASE_PARSE, phaseStart);
+
+            // The location, the new forecast and the archiving of the old one are written in
+            // a single transaction, which commits once and notifies the observers once
+            ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>(cVVector.size() + 2);
+            long locationId = findLocationId(locationSetting);
+            if (locationId == LocationIdCache.NO_ID) {
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                        .withValues(buildLocationValues(locationSetting, forecast.cityName,
+                                forecast.cityLatitude, forecast.cityLongitude))
+                        .build());
+            }
             if ( cVVector.size() > 0 ) {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+                mChangedFraction = locationId == LocationIdCache.NO_ID
+                        ? SyncScheduler.CHANGE_UNKNOWN
+                        : getChangedFraction(locationId, cvArray);
+                for (ContentValues weatherValues : cVVector) {
+                    ContentProviderOperation.Builder insert = ContentProviderOperation
+                            .newInsert(WeatherContract.WeatherEntry.CONTENT_URI);
+                    if (locationId == LocationIdCache.NO_ID) {
+                        // The id of the location inserted by the first operation
+                        insert.withValues(weatherValues).withValueBackReference(
+                                WeatherContract.WeatherEntry.COLUMN_LOC_KEY, 0);
+                    } else {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                        insert.withValues(weatherValues);
+                    }
+                    operations.add(insert.build());
+                }
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+                // move old data into the history archive so the forecast table doesn't grow
+                operations.add(ContentProviderOperation
+                        .newDelete(WeatherContract.HistoryEntry.buildArchiveUri(
+                                Utility.getHistoryRetention(getContext())))
+                        .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                                new String[] {Long.toString(
+                                        dayNormalizer.getStartOfJulianDay(julianStartDay - 1))})
+                        .build());
+            }
+
+            phaseStart = SyncMetrics.now();
+            ContentProviderResult[] results;
+            try {
+                results = getContext().getContentResolver().applyBatch(
+                        WeatherContract.CONTENT_AUTHORITY, operations);
+            } catch (RemoteException | OperationApplicationException e) {
+                Log.e(LOG_TAG, "Error writing the forecast", e);
+                setLocationStatus(getContext(), LOCATION_STATUS_UNKNOWN);
+                return;
+            }
+            metrics.recordPhase(SyncMetrics.PHASE_DB_WRITE, phaseStart);
+            if ( cVVector.size() > 0 ) {
+                // A failed insert fails the whole batch, so every row was inserted; the last
+                // result is what the archiving removed
+                metrics.addRowsChanged(cVVector.size() + results[results.length - 1].count);
 
+                phaseStart = SyncMetrics.now();
                 updateWidgets();
+                metrics.recordPhase(SyncMetrics.PHASE_UPDATE_WIDGETS, phaseStart);
+                phaseStart = SyncMetrics.now();
                 updateMuzei();
+                metrics.recordPhase(SyncMetrics.PHASE_UPDATE_MUZEI, phaseStart);
+                phaseStart = SyncMetrics.now();
                 notifyWeather();
+                metrics.recordPhase(SyncMetrics.PHASE_NOTIFY_WEATHER, phaseStart);
+                phaseStart = SyncMetrics.now();
                 notifyWatchFace();
+                metrics.recordPhase(SyncMetrics.PHASE_NOTIFY_WATCH, phaseStart);
+                prefetchArtwork(cVVector);
+                StartupSnapshot.write(getContext(), locationSetting,
+                        ForecastSnapshotCache.getInstance().get(
+                                getContext().getContentResolver(), locationSetting));
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
@@ -372,6 +489,51 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /**
+     * Compares a new forecast with the one already stored for the location.
+     * @return the fraction of days present in both whose condition or temperatures changed, or
+     * SyncScheduler.CHANGE_UNKNOWN if no day is present in both
+     */
+    private double getChangedFraction(long locationId, ContentValues[] newValues) {
+        LongSparseArray<ContentValues> byDate =
+                new LongSparseArray<ContentValues>(newValues.length);
+        for (ContentValues values : newValues) {
+            byDate.put(values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE), values);
+        }
+
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI, CHANGE_PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{Long.toString(locationId), Long.toString(byDate.keyAt(0))},
+                null);
+        if (cursor == null) {
+            return SyncScheduler.CHANGE_UNKNOWN;
+        }
+        int compared = 0;
+        int changed = 0;
+        try {
+            while (cursor.moveToNext()) {
+                ContentValues values = byDate.get(cursor.getLong(INDEX_CHANGE_DATE));
+                if (values == null) continue;
+                compared++;
+                if (cursor.getInt(INDEX_CHANGE_WEATHER_ID)
+                        != values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID)
+                        || Math.abs(cursor.getDouble(INDEX_CHANGE_MAX_TEMP) - values.getAsDouble(
+                                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP))
+                                >= TEMPERATURE_CHANGE_THRESHOLD
+                        || Math.abs(cursor.getDouble(INDEX_CHANGE_MIN_TEMP) - values.getAsDouble(
+                                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP))
+                                >= TEMPERATURE_CHANGE_THRESHOLD) {
+                    changed++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return compared == 0 ? SyncScheduler.CHANGE_UNKNOWN : (double) changed / compared;
+    }
+
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -380,6 +542,23 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         context.sendBroadcast(dataUpdatedIntent);
     }
 
+    // Downloads the artwork of the new forecast now, rather than when the list first shows it
+    private void prefetchArtwork(Vector<ContentValues> cVVector) {
+        Context context = getContext();
+        if (Utility.usingLocalGraphics(context)) {
+            return;
+        }
+        if (!ArtPackStore.isInstalled(context, ArtPackStore.getPreferredPack(context))) {
+            ArtPackService.install(context);
+        }
+        int[] weatherIds = new int[cVVector.size()];
+        for (int i = 0; i < weatherIds.length; i++) {
+            weatherIds[i] = cVVector.get(i).getAsInteger(
+                    WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+        }
+        ArtworkCache.prefetch(context, weatherIds);
+    }
+
     private void updateMuzei() {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
@@ -421,7 +600,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
                     int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+                    String artUrl = ArtPackStore.getArtUrl(context, weatherId,
+                            ArtPackStore.VARIANT_NOTIFICATION);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -556,59 +736,52 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 cursor.close();
             }
 
-
-
-
     /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
+     * Returns the row id of a location setting, LocationIdCache.NO_ID if it has no row yet.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
+    long findLocationId(String locationSetting) {
+        // Location ids almost never change, so most syncs find theirs in the cache
+        final LocationIdCache cache = LocationIdCache.getInstance();
+        long locationId = cache.get(locationSetting);
+        if (locationId != LocationIdCache.NO_ID) {
+            SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_LOCATION_CACHE_HIT);
+            return locationId;
+        }
+        SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_LOCATION_CACHE_MISS);
+        final int generation = cache.getGeneration();
 
-        // First, check if the location with this city name exists in the db
+        // Check if the location with this city name exists in the db
         Cursor locationCursor = getContext().getContentResolver().query(
                 WeatherContract.LocationEntry.CONTENT_URI,
                 new String[]{WeatherContract.LocationEntry._ID},
                 WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
                 new String[]{locationSetting},
                 null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+        try {
+            if (locationCursor.moveToFirst()) {
+                int locationIdIndex =
+                        locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
+                locationId = locationCursor.getLong(locationIdIndex);
+                cache.put(locationSetting, locationId, generation);
+            }
+        } finally {
+            locationCursor.close();
         }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
         return locationId;
     }
 
+    private static ContentValues buildLocationValues(String locationSetting, String cityName,
+                                                     double lat, double lon) {
+        // Add the data, along with the corresponding name of the data type,
+        // so the content provider knows what kind of value is being inserted.
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        return locationValues;
+    }
+
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -629,13 +802,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to have the sync adapter sync immediately
+     * Helper method to have the sync adapter sync immediately.  Requests made in quick
+     * succession are coalesced into one sync of the latest preferred location.
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        SyncCoalescer.getInstance().requestSync(context, Utility.getPreferredLocation(context));
+    }
+
+    /**
+     * Requests an expedited sync right away; only SyncCoalescer should call this.
+     */
+    static void requestSyncNow(Context context, String location) {
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putString(SyncCoalescer.EXTRA_LOCATION, location);
         ContentResolver.requestSync(getSyncAccount(context),
                 context.getString(R.string.content_authority), bundle);
     }
@@ -645,10 +827,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * if the fake account doesn't exist yet.  If we make a new account, we call the
      * onAccountCreated method so we can initialize things.
      *
+     * Synchronized, as the account may be looked up on several threads at once; see
+     * StartupScheduler.
+     *
      * @param context The context used to access the account service
      * @return a fake account.
      */
-    public static Account getSyncAccount(Context context) {
+    public static synchronized Account getSyncAccount(Context context) {
         // Get an instance of the Android account manager
         AccountManager accountManager =
                 (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
@@ -701,15 +886,54 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Sets the location status into shared preference.  This function should not be called from
-     * the UI thread because it uses commit to write to the shared preferences.
+     * Sets the location status into shared preference, and as the outcome of this sync.  This
+     * function should not be called from the UI thread because it uses commit to write to the
+     * shared preferences.
      * @param c Context to get the PreferenceManager from.
      * @param locationStatus The IntDef value to set
      */
-    static private void setLocationStatus(Context c, @LocationStatus int locationStatus){
+    private void setLocationStatus(Context c, @LocationStatus int locationStatus){
+        mLocationStatus = locationStatus;
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
         SharedPreferences.Editor spe = sp.edit();
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
+        SyncMetrics.getInstance().recordLocationStatus(locationStatus);
+    }
+
+    /**
+     * Counts the raw bytes read off the connection, before any character decoding.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) mCount++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) mCount += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long byteCount) throws IOException {
+            long skipped = super.skip(byteCount);
+            mCount += skipped;
+            return skipped;
+        }
+
+        long getCount() {
+            return mCount;
+        }
     }
 }
\ No newline at end of file
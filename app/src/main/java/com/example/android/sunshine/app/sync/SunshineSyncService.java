@@ -5,6 +5,9 @@ import android.content.Intent;
 import android.os.IBinder;
 import android.util.Log;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 public class SunshineSyncService extends Service {
     private static final Object sSyncAdapterLock = new Object();
     private static SunshineSyncAdapter sSunshineSyncAdapter = null;
@@ -23,4 +26,20 @@ public class SunshineSyncService extends Service {
     public IBinder onBind(Intent intent) {
         return sSunshineSyncAdapter.getSyncAdapterBinder();
     }
+
+    /**
+     * Prints the sync metrics and the latest scheduling decisions.  Invoke with
+     * "adb shell dumpsys activity service .sync.SunshineSyncService [reset]".  The UI metrics
+     * are dumped by MainActivity.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncMetrics metrics = SyncMetrics.getInstance();
+        metrics.dump(writer);
+        SyncScheduler.dump(writer);
+        if (args != null && args.length > 0 && "reset".equals(args[0])) {
+            metrics.reset();
+            writer.println("Sync metrics reset");
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Collapses bursts of immediate sync requests into a single fetch.
+ *
+ * A request is held for {@link #COALESCE_WINDOW_MILLIS}; further requests in that time replace
+ * it, so only the location asked for last is synced.  A request for the location that is being
+ * fetched, or was fetched within the window, is answered by that fetch; if the running fetch
+ * fails, the request is held again.  A running fetch for a location the user has since moved
+ * away from is aborted, and a queued sync for such a location is skipped when it starts.
+ *
+ * Every request ends up counted in exactly one of the coalesced, superseded or executed
+ * counters of {@link SyncMetrics}, a request waiting on the running fetch once that finishes;
+ * periodic syncs only count as executed.
+ */
+public class SyncCoalescer {
+    private static final String LOG_TAG = SyncCoalescer.class.getSimpleName();
+
+    static final long COALESCE_WINDOW_MILLIS = 1000;
+
+    // Sync extra holding the location a sync was requested for
+    public static final String EXTRA_LOCATION =
+            "com.example.android.sunshine.app.sync.extra.LOCATION";
+
+    private static final SyncCoalescer sInstance = new SyncCoalescer(Looper.getMainLooper());
+
+    private final Handler mHandler;
+    private Context mContext;
+
+    // The location of the most recent request; syncs for any other location are superseded
+    private String mLatestLocation;
+    private Runnable mPendingRequest;
+    private String mPendingLocation;
+
+    private String mInFlightLocation;
+    private HttpURLConnection mInFlightConnection;
+    // Requests for the location being fetched, which that fetch answers unless it fails
+    private int mWaitingOnInFlight;
+    private String mLastFetchedLocation;
+    private long mLastFetchedAt;
+
+    public static SyncCoalescer getInstance() {
+        return sInstance;
+    }
+
+    // Pending requests are posted to looper
+    SyncCoalescer(Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * Asks for an expedited sync of location, once the window has passed without another
+     * request.
+     */
+    public synchronized void requestSync(Context context, final String location) {
+        final SyncMetrics metrics = SyncMetrics.getInstance();
+        metrics.increment(SyncMetrics.COUNTER_SYNC_REQUESTED);
+        mLatestLocation = location;
+        mContext = context.getApplicationContext();
+
+        if (mPendingRequest != null) {
+            // The new request takes the place of the pending one
+            mHandler.removeCallbacks(mPendingRequest);
+            mPendingRequest = null;
+            metrics.increment(location.equals(mPendingLocation)
+                    ? SyncMetrics.COUNTER_SYNC_COALESCED : SyncMetrics.COUNTER_SYNC_SUPERSEDED);
+        }
+
+        if (location.equals(mInFlightLocation)) {
+            // Counted once the fetch finishes, as it answers this request only if it succeeds
+            mWaitingOnInFlight++;
+            return;
+        }
+        if (location.equals(mLastFetchedLocation)
+                && SystemClock.elapsedRealtime() - mLastFetchedAt < COALESCE_WINDOW_MILLIS) {
+            // That fetch already answers this request
+            metrics.increment(SyncMetrics.COUNTER_SYNC_COALESCED);
+            return;
+        }
+
+        if (mInFlightLocation != null) {
+            cancelInFlight();
+        }
+        schedule(location);
+    }
+
+    private void schedule(final String location) {
+        final Context appContext = mContext;
+        mPendingRequest = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SyncCoalescer.this) {
+                    if (mPendingRequest != this) return;
+                    mPendingRequest = null;
+                }
+                SunshineSyncAdapter.requestSyncNow(appContext, location);
+            }
+        };
+        mPendingLocation = location;
+        mHandler.postDelayed(mPendingRequest, COALESCE_WINDOW_MILLIS);
+    }
+
+    /**
+     * Whether a sync for location has been made pointless by a newer request.
+     */
+    public synchronized boolean isSuperseded(String location) {
+        return mLatestLocation != null && !mLatestLocation.equals(location);
+    }
+
+    /**
+     * Called by the sync adapter before it fetches, so the fetch can be coalesced with or
+     * cancelled.
+     * @return false if the fetch is already superseded and should be abandoned
+     */
+    synchronized boolean onFetchStarted(String location) {
+        if (isSuperseded(location)) {
+            SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_SYNC_SUPERSEDED);
+            return false;
+        }
+        mInFlightLocation = location;
+        SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_SYNC_EXECUTED);
+        return true;
+    }
+
+    /**
+     * Called with the connection of every attempt of the fetch, so it can be closed to cancel.
+     */
+    synchronized void setInFlightConnection(String location, HttpURLConnection connection) {
+        if (location.equals(mInFlightLocation)) {
+            mInFlightConnection = connection;
+        }
+    }
+
+    synchronized void onFetchFinished(String location, boolean succeeded) {
+        if (location.equals(mInFlightLocation)) {
+            mInFlightLocation = null;
+            mInFlightConnection = null;
+            int waiting = mWaitingOnInFlight;
+            mWaitingOnInFlight = 0;
+            if (!succeeded && waiting > 0 && mPendingRequest == null
+                    && !isSuperseded(location)) {
+                // Those requests still need a sync; the first is held again, the others
+                // are coalesced into it
+                waiting--;
+                schedule(location);
+            }
+            for (int i = 0; i < waiting; i++) {
+                SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_SYNC_COALESCED);
+            }
+        }
+        if (succeeded) {
+            mLastFetchedLocation = location;
+            mLastFetchedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * Returns the location of the request waiting out the window, null if there is none.
+     */
+    synchronized String getPendingLocation() {
+        return mPendingRequest == null ? null : mPendingLocation;
+    }
+
+    private void cancelInFlight() {
+        final HttpURLConnection connection = mInFlightConnection;
+        Log.d(LOG_TAG, "Cancelling superseded fetch for " + mInFlightLocation);
+        mInFlightConnection = null;
+        SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_SYNC_CANCELLED);
+        // The requests waiting on it are for the location the user moved away from
+        for (; mWaitingOnInFlight > 0; mWaitingOnInFlight--) {
+            SyncMetrics.getInstance().increment(SyncMetrics.COUNTER_SYNC_SUPERSEDED);
+        }
+        if (connection == null) {
+            // Between attempts; the fetch checks isSuperseded before the next one
+            return;
+        }
+        // Closing the socket makes the blocked read on the sync thread fail.  It's I/O, so keep
+        // it off the caller's (usually the main) thread.
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        });
+    }
+}
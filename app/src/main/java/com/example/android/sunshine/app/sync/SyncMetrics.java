@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide registry of sync pipeline measurements.  Every phase of
+ * {@link SunshineSyncAdapter#onPerformSync} records its duration here, together with the number
+ * of bytes downloaded, the number of rows written and a count of every location status the
+ * sync ended with.  How long the screens take to show is measured separately, by
+ * {@link com.example.android.sunshine.app.UiMetrics}.
+ *
+ * The numbers can be read back through the debug metrics URI of the WeatherProvider or with
+ * "adb shell dumpsys activity service .sync.SunshineSyncService".
+ */
+public class SyncMetrics {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({PHASE_TOTAL, PHASE_CONNECT, PHASE_DOWNLOAD, PHASE_PARSE, PHASE_DB_WRITE, PHASE_ARCHIVE,
+            PHASE_UPDATE_WIDGETS, PHASE_UPDATE_MUZEI, PHASE_NOTIFY_WEATHER, PHASE_NOTIFY_WATCH})
+    public @interface Phase {}
+
+    public static final int PHASE_TOTAL = 0;
+    // DNS lookup plus TCP connect, as measured around HttpURLConnection.connect()
+    public static final int PHASE_CONNECT = 1;
+    public static final int PHASE_DOWNLOAD = 2;
+    public static final int PHASE_PARSE = 3;
+    public static final int PHASE_DB_WRITE = 4;
+    // Moving the expired rows into the history, part of db_write; see WeatherArchiver
+    public static final int PHASE_ARCHIVE = 5;
+    public static final int PHASE_UPDATE_WIDGETS = 6;
+    public static final int PHASE_UPDATE_MUZEI = 7;
+    public static final int PHASE_NOTIFY_WEATHER = 8;
+    public static final int PHASE_NOTIFY_WATCH = 9;
+
+    private static final String[] PHASE_NAMES = {
+            "total",
+            "connect",
+            "download",
+            "parse",
+            "db_write",
+            "archive",
+            "update_widgets",
+            "update_muzei",
+            "notify_weather",
+            "notify_watch"
+    };
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({COUNTER_SYNC_REQUESTED, COUNTER_SYNC_COALESCED, COUNTER_SYNC_SUPERSEDED,
+            COUNTER_SYNC_EXECUTED, COUNTER_SYNC_CANCELLED, COUNTER_FETCH_RETRIED,
+            COUNTER_FETCH_SHORT_CIRCUITED, COUNTER_LOCATION_CACHE_HIT,
+            COUNTER_LOCATION_CACHE_MISS, COUNTER_QUERY_CACHE_HIT, COUNTER_QUERY_CACHE_MISS,
+            COUNTER_DB_COMMITS})
+    public @interface Counter {}
+
+    // Every call to SunshineSyncAdapter.syncImmediately
+    public static final int COUNTER_SYNC_REQUESTED = 0;
+    // Requests merged into a pending or running fetch for the same location
+    public static final int COUNTER_SYNC_COALESCED = 1;
+    // Syncs dropped because the location changed before they ran
+    public static final int COUNTER_SYNC_SUPERSEDED = 2;
+    // Syncs that went to the network
+    public static final int COUNTER_SYNC_EXECUTED = 3;
+    // Running fetches aborted because the location changed
+    public static final int COUNTER_SYNC_CANCELLED = 4;
+    // Download attempts repeated after a transient failure
+    public static final int COUNTER_FETCH_RETRIED = 5;
+    // Fetches refused because the circuit breaker was open
+    public static final int COUNTER_FETCH_SHORT_CIRCUITED = 6;
+    // Location ids resolved from LocationIdCache, and those that needed a query
+    public static final int COUNTER_LOCATION_CACHE_HIT = 7;
+    public static final int COUNTER_LOCATION_CACHE_MISS = 8;
+    // Per-location weather queries the WeatherProvider answered from its cache, and the others
+    public static final int COUNTER_QUERY_CACHE_HIT = 9;
+    public static final int COUNTER_QUERY_CACHE_MISS = 10;
+    // Write transactions the WeatherProvider committed, each one a round of fsyncs; divided by
+    // sync_executed it gives the commits per sync
+    public static final int COUNTER_DB_COMMITS = 11;
+
+    private static final String[] COUNTER_NAMES = {
+            "sync_requested",
+            "sync_coalesced",
+            "sync_superseded",
+            "sync_executed",
+            "sync_cancelled",
+            "fetch_retried",
+            "fetch_short_circuited",
+            "location_cache_hit",
+            "location_cache_miss",
+            "query_cache_hit",
+            "query_cache_miss",
+            "db_commits"
+    };
+
+    // Indexed by SunshineSyncAdapter.LocationStatus
+    private static final String[] STATUS_NAMES = {
+            "status_ok",
+            "status_server_down",
+            "status_server_invalid",
+            "status_unknown",
+            "status_invalid"
+    };
+
+    // Columns of the cursor returned by the debug metrics URI
+    public static final String COLUMN_NAME = "name";
+    public static final String COLUMN_COUNT = "count";
+    public static final String COLUMN_TOTAL = "total";
+    public static final String COLUMN_MIN = "min";
+    public static final String COLUMN_MAX = "max";
+    public static final String COLUMN_P50 = "p50";
+    public static final String COLUMN_P90 = "p90";
+    public static final String COLUMN_P99 = "p99";
+
+    static final String[] METRICS_COLUMNS = {
+            COLUMN_NAME, COLUMN_COUNT, COLUMN_TOTAL, COLUMN_MIN, COLUMN_MAX,
+            COLUMN_P50, COLUMN_P90, COLUMN_P99
+    };
+
+    private static final SyncMetrics sInstance = new SyncMetrics();
+
+    private final Histogram[] mPhases = new Histogram[PHASE_NAMES.length];
+    private final long[] mStatusCounts = new long[STATUS_NAMES.length];
+    private final long[] mCounters = new long[COUNTER_NAMES.length];
+    private long mBytesTransferred;
+    private long mRowsChanged;
+    // Sum of the query times cache hits didn't have to spend, in microseconds
+    private long mQueryMicrosSaved;
+    private long mSinceMillis;
+
+    public static SyncMetrics getInstance() {
+        return sInstance;
+    }
+
+    SyncMetrics() {
+        reset();
+    }
+
+    /**
+     * Returns a timestamp suitable for {@link #recordPhase(int, long)}.
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records the time spent in a phase.
+     * @param phase The phase that just finished
+     * @param startNanos The value returned by {@link #now()} when the phase started
+     */
+    public void recordPhase(@Phase int phase, long startNanos) {
+        recordPhaseDuration(phase, now() - startNanos);
+    }
+
+    public synchronized void recordPhaseDuration(@Phase int phase, long durationNanos) {
+        mPhases[phase].add(TimeUnit.NANOSECONDS.toMicros(durationNanos));
+    }
+
+    public synchronized void addBytesTransferred(long bytes) {
+        mBytesTransferred += bytes;
+    }
+
+    public synchronized void addRowsChanged(long rows) {
+        mRowsChanged += rows;
+    }
+
+    public synchronized void addQueryTimeSaved(long nanos) {
+        mQueryMicrosSaved += TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    public synchronized void increment(@Counter int counter) {
+        mCounters[counter]++;
+    }
+
+    synchronized long getCounter(@Counter int counter) {
+        return mCounters[counter];
+    }
+
+    public synchronized void recordLocationStatus(@SunshineSyncAdapter.LocationStatus int status) {
+        mStatusCounts[status]++;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < mPhases.length; i++) {
+            mPhases[i] = new Histogram();
+        }
+        for (int i = 0; i < mStatusCounts.length; i++) {
+            mStatusCounts[i] = 0;
+        }
+        for (int i = 0; i < mCounters.length; i++) {
+            mCounters[i] = 0;
+        }
+        mBytesTransferred = 0;
+        mRowsChanged = 0;
+        mQueryMicrosSaved = 0;
+        mSinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Builds a cursor with one row per phase (durations in microseconds) followed by one row
+     * per counter, where only the count column is filled in.
+     */
+    public synchronized MatrixCursor toCursor() {
+        MatrixCursor cursor = new MatrixCursor(METRICS_COLUMNS);
+        for (int i = 0; i < mPhases.length; i++) {
+            cursor.addRow(mPhases[i].toRow(PHASE_NAMES[i]));
+        }
+        cursor.addRow(counterRow("bytes_transferred", mBytesTransferred));
+        cursor.addRow(counterRow("rows_changed", mRowsChanged));
+        cursor.addRow(counterRow("query_us_saved", mQueryMicrosSaved));
+        for (int i = 0; i < mStatusCounts.length; i++) {
+            cursor.addRow(counterRow(STATUS_NAMES[i], mStatusCounts[i]));
+        }
+        for (int i = 0; i < mCounters.length; i++) {
+            cursor.addRow(counterRow(COUNTER_NAMES[i], mCounters[i]));
+        }
+        return cursor;
+    }
+
+    /**
+     * Returns a row of the metrics cursor for a plain count.
+     */
+    private static Object[] counterRow(String name, long value) {
+        return new Object[]{name, value, null, null, null, null, null, null};
+    }
+
+    public synchronized void dump(PrintWriter writer) {
+        writer.println("Sync metrics since " + new java.util.Date(mSinceMillis)
+                + " (durations in us)");
+        for (int i = 0; i < mPhases.length; i++) {
+            mPhases[i].dump(writer, PHASE_NAMES[i]);
+        }
+        writer.println("  bytes_transferred=" + mBytesTransferred);
+        writer.println("  rows_changed=" + mRowsChanged);
+        writer.println("  query_us_saved=" + mQueryMicrosSaved);
+        for (int i = 0; i < mStatusCounts.length; i++) {
+            writer.println("  " + STATUS_NAMES[i] + "=" + mStatusCounts[i]);
+        }
+        for (int i = 0; i < mCounters.length; i++) {
+            writer.println("  " + COUNTER_NAMES[i] + "=" + mCounters[i]);
+        }
+    }
+
+    /**
+     * Log-linear histogram: bucket n holds values below 2^n, so 40 buckets cover everything
+     * from a microsecond to well past any sync timeout.  Percentiles are reported as the upper
+     * bound of the bucket they fall into.  Not thread safe; callers synchronize.
+     */
+    public static class Histogram {
+        private static final int BUCKET_COUNT = 40;
+
+        final long[] mBuckets = new long[BUCKET_COUNT];
+        long mCount;
+        long mTotal;
+        long mMin = Long.MAX_VALUE;
+        long mMax;
+
+        public void add(long value) {
+            if (value < 0) value = 0;
+            int bucket = 64 - Long.numberOfLeadingZeros(value);
+            mBuckets[Math.min(bucket, BUCKET_COUNT - 1)]++;
+            mCount++;
+            mTotal += value;
+            mMin = Math.min(mMin, value);
+            mMax = Math.max(mMax, value);
+        }
+
+        long getMin() {
+            return mCount == 0 ? 0 : mMin;
+        }
+
+        long percentile(int percent) {
+            if (mCount == 0) return 0;
+            long rank = (mCount * percent + 99) / 100;
+            long seen = 0;
+            for (int b = 0; b < BUCKET_COUNT; b++) {
+                seen += mBuckets[b];
+                if (seen >= rank) {
+                    return Math.min(upperBound(b), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        static long upperBound(int bucket) {
+            return 1L << bucket;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        /**
+         * Returns a row of the metrics cursor, see {@link #METRICS_COLUMNS}.
+         */
+        public Object[] toRow(String name) {
+            return new Object[]{name, mCount, mTotal, getMin(), mMax,
+                    percentile(50), percentile(90), percentile(99)};
+        }
+
+        public void dump(PrintWriter writer, String name) {
+            writer.printf("  %-16s count=%d total=%d min=%d max=%d p50=%d p90=%d p99=%d%n",
+                    name, mCount, mTotal, getMin(), mMax,
+                    percentile(50), percentile(90), percentile(99));
+            if (mCount > 0) {
+                writer.print("    buckets:");
+                for (int b = 0; b < mBuckets.length; b++) {
+                    if (mBuckets[b] != 0) {
+                        writer.print(" <" + upperBound(b) + "=" + mBuckets[b]);
+                    }
+                }
+                writer.println();
+            }
+        }
+    }
+}
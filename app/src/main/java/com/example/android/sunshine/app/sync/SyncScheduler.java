@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.core.AdaptiveSyncPolicy;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Picks the period of the next sync after every sync, using {@link AdaptiveSyncPolicy}.  The
+ * policy's inputs are kept in SharedPreferences so they survive the process, and the periodic
+ * sync is only re-registered when the interval actually changes.
+ *
+ * The latest decisions are printed by
+ * "adb shell dumpsys activity service .sync.SunshineSyncService".
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    // Passed as changedFraction when the sync had nothing to compare the new forecast with
+    public static final double CHANGE_UNKNOWN = -1;
+
+    private static final int HISTORY_SIZE = 20;
+    private static final ArrayDeque<String> sHistory = new ArrayDeque<String>(HISTORY_SIZE);
+
+    /**
+     * Updates the policy's inputs with the outcome of a sync and reschedules the periodic sync
+     * if needed.
+     * @param status The location status the sync ended with
+     * @param changedFraction Fraction of the already stored forecast days that changed, or
+     *                        {@link #CHANGE_UNKNOWN}
+     */
+    public static synchronized void onSyncFinished(Context context,
+            @SunshineSyncAdapter.LocationStatus int status, double changedFraction) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String volatilityKey = context.getString(R.string.pref_sync_volatility_key);
+        String failuresKey = context.getString(R.string.pref_sync_failures_key);
+        String intervalKey = context.getString(R.string.pref_sync_interval_key);
+
+        double volatility = sp.getFloat(volatilityKey, -1f);
+        int failures = sp.getInt(failuresKey, 0);
+        int currentInterval = sp.getInt(intervalKey, SunshineSyncAdapter.SYNC_INTERVAL);
+
+        switch (status) {
+            case SunshineSyncAdapter.LOCATION_STATUS_OK:
+                failures = 0;
+                if (changedFraction >= 0) {
+                    volatility = AdaptiveSyncPolicy.updateVolatility(volatility, changedFraction);
+                }
+                break;
+            case SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN:
+            case SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID:
+                failures++;
+                break;
+            default:
+                // An invalid location won't get better by retrying sooner or later
+                break;
+        }
+
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        boolean metered = cm.isActiveNetworkMetered();
+        int hourOfDay = Calendar.getInstance().get(Calendar.HOUR_OF_DAY);
+        AdaptiveSyncPolicy.Decision decision =
+                AdaptiveSyncPolicy.decide(volatility, failures, hourOfDay, metered);
+
+        boolean reschedule = decision.intervalSeconds != currentInterval;
+        if (reschedule) {
+            SunshineSyncAdapter.configurePeriodicSync(context, decision.intervalSeconds,
+                    decision.flexSeconds);
+        }
+        sp.edit()
+                .putFloat(volatilityKey, (float) volatility)
+                .putInt(failuresKey, failures)
+                .putInt(intervalKey, decision.intervalSeconds)
+                .apply();
+
+        String entry = new SimpleDateFormat("MM-dd HH:mm:ss").format(new Date())
+                + " status=" + status
+                + String.format(" change=%.2f volatility=%.2f ", changedFraction, volatility)
+                + decision + (reschedule ? " [rescheduled]" : "");
+        Log.d(LOG_TAG, entry);
+        if (sHistory.size() == HISTORY_SIZE) {
+            sHistory.removeFirst();
+        }
+        sHistory.addLast(entry);
+    }
+
+    public static synchronized void dump(PrintWriter writer) {
+        writer.println("Sync scheduling decisions (oldest first)");
+        for (String entry : sHistory) {
+            writer.println("  " + entry);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.DailyForecast;
+import com.example.android.sunshine.core.HistoryRetention;
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.SunshineDateUtils;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The database write phase of a sync: one bulk insert per location followed by the archive of
+ * old rows into the history.  Rows replace the ones written by the previous operation through the
+ * UNIQUE(date, location_id) constraint, so the table size stays constant between operations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkInsertBenchmark {
+
+    @Param({"1", "50"})
+    int locations;
+
+    private File mDatabaseFile;
+    private JdbcWeatherStore mStore;
+    private long[] mLocationIds;
+    private List<List<DailyForecast>> mForecasts;
+    private long mCutoff;
+    private TimeZone mTimeZone;
+
+    @Setup
+    public void setUp() throws IOException, SQLException, JSONException {
+        mDatabaseFile = File.createTempFile("weather", ".db");
+        mStore = new JdbcWeatherStore(mDatabaseFile);
+
+        String[] payloads = SyntheticForecasts.multiLocationJson(locations, 14, 42);
+        int julianStartDay = SunshineDateUtils.getCurrentJulianDay();
+        TimeZone tz = TimeZone.getDefault();
+        mLocationIds = new long[locations];
+        mForecasts = new ArrayList<List<DailyForecast>>(locations);
+        for (int i = 0; i < locations; i++) {
+            mLocationIds[i] = mStore.addLocation("location" + i, "City " + i, 0, 0);
+            mForecasts.add(OwmForecastParser.parse(payloads[i], julianStartDay, tz).days);
+        }
+        mCutoff = SunshineDateUtils.getStartOfJulianDay(julianStartDay - 1, tz);
+        mTimeZone = tz;
+    }
+
+    @TearDown
+    public void tearDown() {
+        mStore.close();
+        mDatabaseFile.delete();
+    }
+
+    @Benchmark
+    public int writeForecasts() throws SQLException {
+        int rows = 0;
+        for (int i = 0; i < mLocationIds.length; i++) {
+            rows += mStore.bulkInsert(mLocationIds[i], mForecasts.get(i));
+        }
+        return rows + mStore.archiveOlderThan(mCutoff, HistoryRetention.DEFAULT,
+                System.currentTimeMillis(), mTimeZone);
+    }
+}
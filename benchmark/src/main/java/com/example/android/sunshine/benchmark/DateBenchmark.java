@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.DayNormalizer;
+import com.example.android.sunshine.core.SunshineDateUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Date normalization runs once per inserted row in the provider and once per bound row in the
+ * adapters, so it's measured on its own.  Each operation handles {@link #BATCH} dates, spread
+ * over two years or, like the rows of one forecast, over two weeks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateBenchmark {
+
+    static final int BATCH = 1024;
+    static final int FORECAST_DAYS = 14;
+
+    private final long[] mDates = new long[BATCH];
+    private final long[] mForecastDates = new long[BATCH];
+    private final int[] mJulianDays = new int[BATCH];
+    private TimeZone mTimeZone;
+    private DayNormalizer mNormalizer;
+
+    @Setup
+    public void setUp() {
+        mTimeZone = TimeZone.getDefault();
+        Random random = new Random(42);
+        long twoYears = 730 * SunshineDateUtils.DAY_IN_MILLIS;
+        long now = System.currentTimeMillis();
+        long start = now - twoYears / 2;
+        for (int i = 0; i < BATCH; i++) {
+            mDates[i] = start + (long) (random.nextDouble() * twoYears);
+            mForecastDates[i] = now + (long) (random.nextDouble() * FORECAST_DAYS
+                    * SunshineDateUtils.DAY_IN_MILLIS);
+            mJulianDays[i] = SunshineDateUtils.getJulianDay(mDates[i],
+                    SunshineDateUtils.getGmtOffsetSeconds(mTimeZone, mDates[i]));
+        }
+        mNormalizer = new DayNormalizer(mTimeZone);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void normalizeDate(Blackhole blackhole) {
+        for (long date : mDates) {
+            blackhole.consume(SunshineDateUtils.normalizeDate(date, mTimeZone));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void normalizeDateWithNormalizer(Blackhole blackhole) {
+        for (long date : mDates) {
+            blackhole.consume(mNormalizer.normalizeDate(date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void normalizeForecastDate(Blackhole blackhole) {
+        for (long date : mForecastDates) {
+            blackhole.consume(SunshineDateUtils.normalizeDate(date, mTimeZone));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void normalizeForecastDateWithNormalizer(Blackhole blackhole) {
+        for (long date : mForecastDates) {
+            blackhole.consume(mNormalizer.normalizeDate(date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getJulianDay(Blackhole blackhole) {
+        for (long date : mDates) {
+            blackhole.consume(SunshineDateUtils.getJulianDay(date,
+                    SunshineDateUtils.getGmtOffsetSeconds(mTimeZone, date)));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getStartOfJulianDay(Blackhole blackhole) {
+        for (int julianDay : mJulianDays) {
+            blackhole.consume(SunshineDateUtils.getStartOfJulianDay(julianDay, mTimeZone));
+        }
+    }
+}
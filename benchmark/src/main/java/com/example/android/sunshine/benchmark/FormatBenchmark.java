@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.SunshineDateUtils;
+import com.example.android.sunshine.core.WeatherConditions;
+import com.example.android.sunshine.core.WeatherFormatUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The formatting ForecastAdapter and DetailFragment do for every bound row.  Each operation
+ * formats a full 14 day forecast, the same work as binding every row of the list once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+    static final int DAYS = 14;
+
+    // Same patterns as strings.xml
+    private static final String FORMAT_TEMPERATURE = "%1.0f\u00B0";
+    private static final String FORMAT_FULL_FRIENDLY_DATE = "%1$s, %2$s";
+
+    private final long[] mDates = new long[DAYS];
+    private final double[] mTemperatures = new double[DAYS];
+    private final float[] mDegrees = new float[DAYS];
+    private final int[] mWeatherIds = new int[DAYS];
+    private long mNow;
+    private TimeZone mTimeZone;
+
+    @Setup
+    public void setUp() {
+        mTimeZone = TimeZone.getDefault();
+        mNow = System.currentTimeMillis();
+        Random random = new Random(42);
+        long today = SunshineDateUtils.normalizeDate(mNow, mTimeZone);
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = today + i * SunshineDateUtils.DAY_IN_MILLIS;
+            mTemperatures[i] = random.nextDouble() * 40 - 10;
+            mDegrees[i] = random.nextFloat() * 360;
+            mWeatherIds[i] = SyntheticForecasts.WEATHER_IDS[
+                    random.nextInt(SyntheticForecasts.WEATHER_IDS.length)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public void formatTemperature(Blackhole blackhole) {
+        for (double temperature : mTemperatures) {
+            blackhole.consume(WeatherFormatUtils.formatTemperature(FORMAT_TEMPERATURE,
+                    temperature, false));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public void getFriendlyDayString(Blackhole blackhole) {
+        for (long date : mDates) {
+            blackhole.consume(WeatherFormatUtils.getFriendlyDayString(date, mNow, mTimeZone,
+                    true, "Today", "Tomorrow", FORMAT_FULL_FRIENDLY_DATE));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public void getWindDirection(Blackhole blackhole) {
+        for (float degrees : mDegrees) {
+            blackhole.consume(WeatherFormatUtils.getWindDirection(degrees));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public void getCondition(Blackhole blackhole) {
+        for (int weatherId : mWeatherIds) {
+            blackhole.consume(WeatherConditions.getCondition(weatherId));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DAYS)
+    public void getArtName(Blackhole blackhole) {
+        for (int weatherId : mWeatherIds) {
+            blackhole.consume(WeatherConditions.getArtName(weatherId));
+        }
+    }
+}
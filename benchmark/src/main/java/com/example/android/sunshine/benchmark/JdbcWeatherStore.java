@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.DailyForecast;
+import com.example.android.sunshine.core.HistoryRetention;
+import com.example.android.sunshine.core.SunshineDateUtils;
+import com.example.android.sunshine.core.WeatherHistory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * A JDBC stand-in for WeatherDbHelper and the write side of WeatherProvider, including the
+ * history archive.  It uses the same schema and issues the same statements the provider does,
+ * against a SQLite file, so write costs can be measured off-device.  Like SQLiteDatabase, it
+ * serializes writers, so one store can be shared by several threads.
+ */
+public class JdbcWeatherStore implements Closeable {
+
+    // Keep in sync with WeatherDbHelper.onCreate and WeatherArchiver
+    private static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE IF NOT EXISTS location ("
+            + "_id INTEGER PRIMARY KEY,"
+            + "location_setting TEXT UNIQUE NOT NULL, "
+            + "city_name TEXT NOT NULL, "
+            + "coord_lat REAL NOT NULL, "
+            + "coord_long REAL NOT NULL );";
+
+    private static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE IF NOT EXISTS weather ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + "location_id INTEGER NOT NULL, "
+            + "date INTEGER NOT NULL, "
+            + "short_desc TEXT NOT NULL, "
+            + "weather_id INTEGER NOT NULL,"
+            + "min REAL NOT NULL, "
+            + "max REAL NOT NULL, "
+            + "humidity REAL NOT NULL, "
+            + "pressure REAL NOT NULL, "
+            + "wind REAL NOT NULL, "
+            + "degrees REAL NOT NULL, "
+            + " FOREIGN KEY (location_id) REFERENCES location (_id), "
+            + " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    // The covering index of the per-location queries; every insert updates it too
+    private static final String SQL_CREATE_WEATHER_LOCATION_INDEX =
+            "CREATE INDEX IF NOT EXISTS weather_location_date ON weather "
+            + "(location_id, date, weather_id, max, min, short_desc);";
+
+    private static final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE IF NOT EXISTS history ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + "location_id INTEGER NOT NULL, "
+            + "tier INTEGER NOT NULL, "
+            + "date INTEGER NOT NULL, "
+            + "weather_id INTEGER NOT NULL,"
+            + "min REAL NOT NULL, "
+            + "max REAL NOT NULL, "
+            + "humidity REAL NOT NULL, "
+            + "pressure REAL NOT NULL, "
+            + "wind REAL NOT NULL, "
+            + "degrees REAL NOT NULL, "
+            + "days INTEGER NOT NULL, "
+            + " FOREIGN KEY (location_id) REFERENCES location (_id), "
+            + " UNIQUE (location_id, tier, date) ON CONFLICT REPLACE);";
+
+    // The weather columns that are archived, in the same order as HISTORY_COLUMNS
+    private static final String WEATHER_COLUMNS =
+            "location_id, date, weather_id, min, max, humidity, pressure, wind, degrees";
+    private static final String HISTORY_COLUMNS = WEATHER_COLUMNS + ", days";
+    // these indices must match the projection
+    private static final int INDEX_LOC_KEY = 1;
+    private static final int INDEX_DATE = 2;
+    private static final int INDEX_WEATHER_ID = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_MAX_TEMP = 5;
+    private static final int INDEX_HUMIDITY = 6;
+    private static final int INDEX_PRESSURE = 7;
+    private static final int INDEX_WIND_SPEED = 8;
+    private static final int INDEX_DEGREES = 9;
+    private static final int INDEX_DAYS = 10;
+
+    private final Connection mConnection;
+
+    public JdbcWeatherStore(File databaseFile) throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getPath());
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute(SQL_CREATE_LOCATION_TABLE);
+            statement.execute(SQL_CREATE_WEATHER_TABLE);
+            statement.execute(SQL_CREATE_WEATHER_LOCATION_INDEX);
+            statement.execute(SQL_CREATE_HISTORY_TABLE);
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Same contract as SunshineSyncAdapter.addLocation: look the setting up, insert it if
+     * it's missing, return its row id.
+     */
+    public synchronized long addLocation(String locationSetting, String cityName, double lat,
+                                         double lon) throws SQLException {
+        PreparedStatement query = mConnection.prepareStatement(
+                "SELECT _id FROM location WHERE location_setting = ?");
+        try {
+            query.setString(1, locationSetting);
+            ResultSet cursor = query.executeQuery();
+            if (cursor.next()) {
+                return cursor.getLong(1);
+            }
+        } finally {
+            query.close();
+        }
+
+        PreparedStatement insert = mConnection.prepareStatement(
+                "INSERT INTO location (location_setting, city_name, coord_lat, coord_long) "
+                        + "VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+        try {
+            insert.setString(1, locationSetting);
+            insert.setString(2, cityName);
+            insert.setDouble(3, lat);
+            insert.setDouble(4, lon);
+            insert.executeUpdate();
+            ResultSet keys = insert.getGeneratedKeys();
+            keys.next();
+            return keys.getLong(1);
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Same work as WeatherProvider.bulkInsert: one transaction, one normalized insert per row.
+     * @return the number of rows inserted
+     */
+    public synchronized int bulkInsert(long locationId, List<DailyForecast> days)
+            throws SQLException {
+        boolean autoCommit = mConnection.getAutoCommit();
+        mConnection.setAutoCommit(false);
+        PreparedStatement insert = mConnection.prepareStatement("INSERT INTO weather "
+                + "(location_id, date, short_desc, weather_id, min, max, humidity, pressure, "
+                + "wind, degrees) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        int returnCount = 0;
+        try {
+            for (DailyForecast day : days) {
+                insert.setLong(1, locationId);
+                insert.setLong(2, SunshineDateUtils.normalizeDate(day.date));
+                insert.setString(3, day.description);
+                insert.setInt(4, day.weatherId);
+                insert.setDouble(5, day.low);
+                insert.setDouble(6, day.high);
+                insert.setDouble(7, day.humidity);
+                insert.setDouble(8, day.pressure);
+                insert.setDouble(9, day.windSpeed);
+                insert.setDouble(10, day.windDirection);
+                returnCount += insert.executeUpdate();
+            }
+            mConnection.commit();
+        } catch (SQLException e) {
+            mConnection.rollback();
+            throw e;
+        } finally {
+            insert.close();
+            mConnection.setAutoCommit(autoCommit);
+        }
+        return returnCount;
+    }
+
+    /**
+     * Same work as the sync adapter's cleanup, which WeatherArchiver.archive does: moves the
+     * weather rows dated at or before the given date into the history, then applies the
+     * retention to the whole history, all in one transaction.
+     * @return the number of weather rows that were moved
+     */
+    public synchronized int archiveOlderThan(long date, HistoryRetention retention, long now,
+                                             TimeZone tz) throws SQLException {
+        boolean autoCommit = mConnection.getAutoCommit();
+        mConnection.setAutoCommit(false);
+        try {
+            // Weather rows are already normalized, so each one is exactly one day
+            execute("INSERT INTO history (tier, days, " + WEATHER_COLUMNS + ") SELECT "
+                    + WeatherHistory.TIER_DAILY + ", 1, " + WEATHER_COLUMNS
+                    + " FROM weather WHERE date <= ?", date);
+            int moved = execute("DELETE FROM weather WHERE date <= ?", date);
+
+            rollUp(WeatherHistory.TIER_DAILY, WeatherHistory.TIER_WEEKLY,
+                    retention.getCutoff(WeatherHistory.TIER_DAILY, now, tz), tz);
+            rollUp(WeatherHistory.TIER_WEEKLY, WeatherHistory.TIER_MONTHLY,
+                    retention.getCutoff(WeatherHistory.TIER_WEEKLY, now, tz), tz);
+            execute("DELETE FROM history WHERE tier = ? AND date < ?",
+                    WeatherHistory.TIER_MONTHLY,
+                    retention.getCutoff(WeatherHistory.TIER_MONTHLY, now, tz));
+
+            mConnection.commit();
+            return moved;
+        } catch (SQLException e) {
+            mConnection.rollback();
+            throw e;
+        } finally {
+            mConnection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Same as WeatherArchiver.rollUp: replaces the rows of tier from dated before cutoff with
+     * rows of tier to, merging them into any row already archived for the same period.
+     */
+    private void rollUp(int from, int to, long cutoff, TimeZone tz) throws SQLException {
+        PreparedStatement query = mConnection.prepareStatement("SELECT " + HISTORY_COLUMNS
+                + " FROM history WHERE tier = ? AND date < ? ORDER BY location_id, date");
+        try {
+            query.setInt(1, from);
+            query.setLong(2, cutoff);
+            ResultSet cursor = query.executeQuery();
+            // Sorted by location and date, so each period's rows are consecutive
+            WeatherHistory.Rollup rollup = null;
+            long locationId = -1;
+            long bucket = 0;
+            while (cursor.next()) {
+                long rowLocationId = cursor.getLong(INDEX_LOC_KEY);
+                long rowBucket = WeatherHistory.getBucketStart(to,
+                        cursor.getLong(INDEX_DATE), tz);
+                if (rollup == null || rowLocationId != locationId || rowBucket != bucket) {
+                    if (rollup != null) {
+                        writeBucket(locationId, to, bucket, rollup);
+                    }
+                    locationId = rowLocationId;
+                    bucket = rowBucket;
+                    rollup = readBucket(locationId, to, bucket);
+                }
+                addRow(rollup, cursor);
+            }
+            if (rollup != null) {
+                writeBucket(locationId, to, bucket, rollup);
+            }
+        } finally {
+            query.close();
+        }
+        execute("DELETE FROM history WHERE tier = ? AND date < ?", from, cutoff);
+    }
+
+    private WeatherHistory.Rollup readBucket(long locationId, int tier, long bucket)
+            throws SQLException {
+        WeatherHistory.Rollup rollup = new WeatherHistory.Rollup();
+        PreparedStatement query = mConnection.prepareStatement("SELECT " + HISTORY_COLUMNS
+                + " FROM history WHERE location_id = ? AND tier = ? AND date = ?");
+        try {
+            query.setLong(1, locationId);
+            query.setInt(2, tier);
+            query.setLong(3, bucket);
+            ResultSet cursor = query.executeQuery();
+            if (cursor.next()) {
+                addRow(rollup, cursor);
+            }
+        } finally {
+            query.close();
+        }
+        return rollup;
+    }
+
+    private static void addRow(WeatherHistory.Rollup rollup, ResultSet cursor)
+            throws SQLException {
+        rollup.add(cursor.getInt(INDEX_WEATHER_ID),
+                cursor.getDouble(INDEX_MIN_TEMP),
+                cursor.getDouble(INDEX_MAX_TEMP),
+                cursor.getDouble(INDEX_HUMIDITY),
+                cursor.getDouble(INDEX_PRESSURE),
+                cursor.getDouble(INDEX_WIND_SPEED),
+                cursor.getDouble(INDEX_DEGREES),
+                cursor.getInt(INDEX_DAYS));
+    }
+
+    private void writeBucket(long locationId, int tier, long bucket,
+                             WeatherHistory.Rollup rollup) throws SQLException {
+        // The unique constraint replaces the row that readBucket merged in
+        execute("INSERT INTO history (tier, " + HISTORY_COLUMNS
+                        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                tier, locationId, bucket, rollup.getWeatherId(), rollup.getMinTemp(),
+                rollup.getMaxTemp(), rollup.getHumidity(), rollup.getPressure(),
+                rollup.getWindSpeed(), rollup.getDegrees(), rollup.getDays());
+    }
+
+    private int execute(String sql, Object... args) throws SQLException {
+        PreparedStatement statement = mConnection.prepareStatement(sql);
+        try {
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public synchronized int countWeatherRows(long locationId) throws SQLException {
+        PreparedStatement count = mConnection.prepareStatement(
+                "SELECT COUNT(*) FROM weather WHERE location_id = ?");
+        try {
+            count.setLong(1, locationId);
+            ResultSet cursor = count.executeQuery();
+            cursor.next();
+            return cursor.getInt(1);
+        } finally {
+            count.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            mConnection.close();
+        } catch (SQLException e) {
+            // Nothing useful to do; the benchmark is over
+        }
+    }
+}
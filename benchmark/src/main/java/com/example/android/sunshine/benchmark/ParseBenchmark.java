@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.SunshineDateUtils;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning downloaded forecast responses into rows, i.e. the parse phase of a sync.
+ * One operation parses one response per location.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    // 14 is what the app requests; 16 is the API maximum
+    @Param({"14", "16"})
+    int days;
+
+    @Param({"1", "50", "500"})
+    int locations;
+
+    private String[] mPayloads;
+    private int mJulianStartDay;
+    private TimeZone mTimeZone;
+
+    @Setup
+    public void setUp() {
+        mPayloads = SyntheticForecasts.multiLocationJson(locations, days, 42);
+        mJulianStartDay = SunshineDateUtils.getCurrentJulianDay();
+        mTimeZone = TimeZone.getDefault();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws JSONException {
+        for (String payload : mPayloads) {
+            blackhole.consume(OwmForecastParser.parse(payload, mJulianStartDay, mTimeZone));
+        }
+    }
+}
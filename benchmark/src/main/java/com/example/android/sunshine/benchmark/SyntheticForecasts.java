@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates OpenWeatherMap /data/2.5/forecast/daily responses with the same shape as the real
+ * API, so parsing and storage can be measured without a network.  Output is deterministic for
+ * a given seed.
+ */
+public final class SyntheticForecasts {
+
+    // A spread of codes hitting every branch of the condition mappings
+    static final int[] WEATHER_IDS = {
+            200, 211, 232, 300, 321, 500, 501, 504, 511, 520, 531, 600, 601, 622,
+            701, 741, 761, 781, 800, 801, 802, 803, 804
+    };
+
+    private static final String[] DESCRIPTIONS = {
+            "Thunderstorm", "Drizzle", "Rain", "Snow", "Fog", "Clear", "Clouds"
+    };
+
+    /**
+     * Builds one response for a single location.
+     */
+    public static String forecastJson(String cityName, int days, Random random) {
+        StringBuilder json = new StringBuilder(256 + days * 320);
+        double lat = random.nextDouble() * 180 - 90;
+        double lon = random.nextDouble() * 360 - 180;
+        json.append("{\"city\":{\"id\":").append(random.nextInt(10000000))
+                .append(",\"name\":\"").append(cityName)
+                .append("\",\"coord\":{\"lon\":").append(format(lon))
+                .append(",\"lat\":").append(format(lat))
+                .append("},\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0126,\"cnt\":").append(days)
+                .append(",\"list\":[");
+        long dt = 1419105600L;
+        for (int i = 0; i < days; i++) {
+            if (i > 0) json.append(',');
+            double min = random.nextDouble() * 30 - 10;
+            double max = min + random.nextDouble() * 15;
+            int weatherId = WEATHER_IDS[random.nextInt(WEATHER_IDS.length)];
+            String description = DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)];
+            json.append("{\"dt\":").append(dt + i * 86400L)
+                    .append(",\"temp\":{\"day\":").append(format((min + max) / 2))
+                    .append(",\"min\":").append(format(min))
+                    .append(",\"max\":").append(format(max))
+                    .append(",\"night\":").append(format(min))
+                    .append(",\"eve\":").append(format(max))
+                    .append(",\"morn\":").append(format(min))
+                    .append("},\"pressure\":").append(format(990 + random.nextDouble() * 40))
+                    .append(",\"humidity\":").append(random.nextInt(100))
+                    .append(",\"weather\":[{\"id\":").append(weatherId)
+                    .append(",\"main\":\"").append(description)
+                    .append("\",\"description\":\"synthetic\",\"icon\":\"10d\"}]")
+                    .append(",\"speed\":").append(format(random.nextDouble() * 20))
+                    .append(",\"deg\":").append(random.nextInt(360))
+                    .append(",\"clouds\":").append(random.nextInt(100))
+                    .append('}');
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    /**
+     * Builds one response per location, as a multi-city sync would download them.
+     */
+    public static String[] multiLocationJson(int locations, int days, long seed) {
+        Random random = new Random(seed);
+        String[] payloads = new String[locations];
+        for (int i = 0; i < locations; i++) {
+            payloads[i] = forecastJson("City " + i, days, random);
+        }
+        return payloads;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    private SyntheticForecasts() { }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.benchmark;
+
+import com.example.android.sunshine.core.SunshineDateUtils;
+import com.example.android.sunshine.core.WeatherUriCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What WeatherProvider.query does with a per-location weather uri before it gets to the
+ * database: work out which kind of uri it is and pull the location setting and the date out of
+ * it.  android.net.Uri doesn't run on a desktop JVM, so java.net.URI split into path segments
+ * stands in for Uri.getPathSegments and Uri.Builder.  Each operation handles {@link #BATCH}
+ * uris, drawn from a few locations and days the way the app's loaders ask for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UriBenchmark {
+
+    static final int BATCH = 256;
+
+    private static final String BASE = "content://com.example.android.sunshine.app/weather";
+    private static final String[] LOCATIONS = {"94043", "London,uk", "S\u00e3o Paulo,br"};
+    private static final int DAYS = 14;
+    // Same size as the cache in WeatherContract.WeatherEntry
+    private static final int CACHE_SIZE = 32;
+
+    private final String[] mLocations = new String[BATCH];
+    private final long[] mDates = new long[BATCH];
+    private final String[] mUris = new String[BATCH];
+    private Map<String, WeatherUriCodec.Parsed> mCache;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < BATCH; i++) {
+            mLocations[i] = LOCATIONS[random.nextInt(LOCATIONS.length)];
+            mDates[i] = today + random.nextInt(DAYS) * SunshineDateUtils.DAY_IN_MILLIS;
+            mUris[i] = random.nextBoolean()
+                    ? WeatherUriCodec.buildWeatherLocationWithDate(BASE, mLocations[i], mDates[i])
+                    : WeatherUriCodec.buildWeatherLocationWithStartDate(BASE, mLocations[i],
+                            mDates[i]);
+        }
+        mCache = new LinkedHashMap<String, WeatherUriCodec.Parsed>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, WeatherUriCodec.Parsed> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void buildWithCodec(Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(WeatherUriCodec.buildWeatherLocationWithDate(BASE, mLocations[i],
+                    mDates[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void buildWithUri(Blackhole blackhole) throws URISyntaxException {
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(new URI("content", "com.example.android.sunshine.app",
+                    "/weather/" + mLocations[i] + "/" + mDates[i], null).toASCIIString());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatchWithCodec(Blackhole blackhole) {
+        for (String uri : mUris) {
+            WeatherUriCodec.Parsed parsed = WeatherUriCodec.parse(uri, BASE);
+            blackhole.consume(parsed.locationSetting);
+            blackhole.consume(parsed.hasDate() ? parsed.date : parsed.startDate);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatchWithCachedCodec(Blackhole blackhole) {
+        for (String uri : mUris) {
+            WeatherUriCodec.Parsed parsed = mCache.get(uri);
+            if (parsed == null) {
+                parsed = WeatherUriCodec.parse(uri, BASE);
+                mCache.put(uri, parsed);
+            }
+            blackhole.consume(parsed.locationSetting);
+            blackhole.consume(parsed.hasDate() ? parsed.date : parsed.startDate);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void dispatchWithSegments(Blackhole blackhole) {
+        for (String uriString : mUris) {
+            URI uri = URI.create(uriString);
+            List<String> segments = getPathSegments(uri);
+            // The matcher walks the segments, then the provider asks for them again
+            blackhole.consume(segments.size() == 3);
+            blackhole.consume(getPathSegments(uri).get(1));
+            if (segments.size() == 3) {
+                blackhole.consume(Long.parseLong(getPathSegments(uri).get(2)));
+            } else {
+                blackhole.consume(getStartDate(uri));
+            }
+        }
+    }
+
+    private static List<String> getPathSegments(URI uri) {
+        String path = uri.getPath();
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private static long getStartDate(URI uri) {
+        for (String parameter : uri.getQuery().split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).equals(
+                    WeatherUriCodec.PARAM_START_DATE)) {
+                return Long.parseLong(parameter.substring(equals + 1));
+            }
+        }
+        return 0;
+    }
+}
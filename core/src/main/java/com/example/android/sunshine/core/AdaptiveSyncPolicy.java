@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Decides how often to sync the forecast.  Instead of a fixed period the interval follows how
+ * much the forecast has been changing between syncs (its volatility), the time of day, whether
+ * the network is metered and how many syncs in a row have failed.
+ */
+public final class AdaptiveSyncPolicy {
+
+    // All durations in seconds, like the sync framework's
+    public static final int BASE_INTERVAL = 60 * 180;
+    public static final int MIN_INTERVAL = 60 * 30;
+    public static final int MAX_INTERVAL = 60 * 60 * 12;
+
+    // Intervals are rounded to this so tiny adjustments don't reschedule the sync
+    static final int GRANULARITY = 60 * 15;
+
+    // Weight of the newest sample in the volatility average
+    static final double VOLATILITY_ALPHA = 0.3;
+    // Below this fraction of changed days the forecast is considered quiet...
+    static final double QUIET_VOLATILITY = 0.1;
+    // ...and above this one, changing
+    static final double VOLATILE_VOLATILITY = 0.4;
+
+    // Local hours during which nobody is likely to look at the forecast
+    static final int NIGHT_START_HOUR = 0;
+    static final int NIGHT_END_HOUR = 6;
+
+    /**
+     * Folds the fraction of forecast days that changed in the latest sync into the running
+     * volatility.
+     * @param volatility the previous value, or a negative number if there is none yet
+     * @param changedFraction changed days divided by compared days, between 0 and 1
+     */
+    public static double updateVolatility(double volatility, double changedFraction) {
+        if (volatility < 0) {
+            return changedFraction;
+        }
+        return VOLATILITY_ALPHA * changedFraction + (1 - VOLATILITY_ALPHA) * volatility;
+    }
+
+    /**
+     * @param volatility running volatility from {@link #updateVolatility}, negative if unknown
+     * @param consecutiveFailures syncs that failed since the last successful one
+     * @param hourOfDay local hour, 0-23
+     * @param metered whether the active network is metered
+     */
+    public static Decision decide(double volatility, int consecutiveFailures, int hourOfDay,
+                                  boolean metered) {
+        if (consecutiveFailures > 0) {
+            // Retry soon after the first failure, then back off exponentially
+            long interval = (long) MIN_INTERVAL << Math.min(consecutiveFailures - 1, 16);
+            return new Decision(clamp(interval), "backoff after " + consecutiveFailures
+                    + " failure" + (consecutiveFailures == 1 ? "" : "s"));
+        }
+
+        double interval = BASE_INTERVAL;
+        StringBuilder reason = new StringBuilder();
+        if (volatility < 0) {
+            reason.append("no history");
+        } else if (volatility < QUIET_VOLATILITY) {
+            interval *= 2;
+            reason.append("quiet forecast");
+        } else if (volatility > VOLATILE_VOLATILITY) {
+            interval /= 2;
+            reason.append("changing forecast");
+        } else {
+            reason.append("steady forecast");
+        }
+        if (hourOfDay >= NIGHT_START_HOUR && hourOfDay < NIGHT_END_HOUR) {
+            interval *= 2;
+            reason.append(", night");
+        }
+        if (metered) {
+            interval *= 1.5;
+            reason.append(", metered");
+        }
+        return new Decision(clamp((long) interval), reason.toString());
+    }
+
+    private static int clamp(long interval) {
+        long rounded = (interval + GRANULARITY / 2) / GRANULARITY * GRANULARITY;
+        return (int) Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, rounded));
+    }
+
+    /**
+     * A sync period and the reason it was chosen.
+     */
+    public static final class Decision {
+        public final int intervalSeconds;
+        public final int flexSeconds;
+        public final String reason;
+
+        Decision(int intervalSeconds, String reason) {
+            this.intervalSeconds = intervalSeconds;
+            // Same ratio as the old fixed SYNC_FLEXTIME
+            this.flexSeconds = intervalSeconds / 3;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "every " + intervalSeconds / 60 + " min (flex " + flexSeconds / 60 + " min): "
+                    + reason;
+        }
+    }
+
+    private AdaptiveSyncPolicy() { }
+}
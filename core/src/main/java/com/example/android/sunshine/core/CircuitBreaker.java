@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Stops fetching from an upstream that is known to be down.
+ *
+ * After failureThreshold failures in a row the breaker opens and every request is refused for
+ * openMillis.  Then a single trial request is let through (half open): its success closes the
+ * breaker, its failure opens it again.
+ */
+public class CircuitBreaker {
+
+    public static final int STATE_CLOSED = 0;
+    public static final int STATE_OPEN = 1;
+    public static final int STATE_HALF_OPEN = 2;
+
+    /**
+     * Source of monotonic time in milliseconds.
+     */
+    public interface Clock {
+        long now();
+    }
+
+    public static final Clock NANO_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final Clock mClock;
+
+    private int mState = STATE_CLOSED;
+    private int mConsecutiveFailures;
+    private long mOpenedAt;
+    private boolean mTrialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openMillis, Clock clock) {
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mClock = clock;
+    }
+
+    /**
+     * @return whether a request may be made now.  Every allowed request must be followed by
+     * one of the record methods.
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case STATE_CLOSED:
+                return true;
+            case STATE_OPEN:
+                if (mClock.now() - mOpenedAt < mOpenMillis) {
+                    return false;
+                }
+                mState = STATE_HALF_OPEN;
+                mTrialInFlight = true;
+                return true;
+            default:
+                if (mTrialInFlight) {
+                    return false;
+                }
+                mTrialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        mState = STATE_CLOSED;
+        mConsecutiveFailures = 0;
+        mTrialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        mConsecutiveFailures++;
+        mTrialInFlight = false;
+        if (mState == STATE_HALF_OPEN || mConsecutiveFailures >= mFailureThreshold) {
+            mState = STATE_OPEN;
+            mOpenedAt = mClock.now();
+        }
+    }
+
+    /**
+     * For requests that ended without telling anything about the upstream, e.g when cancelled.
+     */
+    public synchronized void recordIgnored() {
+        mTrialInFlight = false;
+    }
+
+    public synchronized int getState() {
+        return mState;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return mConsecutiveFailures;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.TimeZone;
+
+/**
+ * The day arithmetic of {@link SunshineDateUtils} for one timezone, with the results of the
+ * expensive part remembered.  Returns exactly what SunshineDateUtils returns.
+ *
+ * Day boundaries are computed once per day with SunshineDateUtils and kept in a small table.
+ * Within a day whose offset doesn't change, normalizing a date is then a division and a
+ * range check: the Julian day is guessed with the offset of the last date that missed, and
+ * the guess is checked against the boundaries of that day.  Days that contain an offset
+ * change, or that the Time semantics round oddly (before the epoch), always take the slow
+ * path.  This relies on no zone changing its offset twice within one day, which none in the
+ * tz database does.
+ *
+ * The default instance is bound to the timezone that was the default when it was created;
+ * call {@link #invalidateDefault()} when the default changes.
+ *
+ * Safe for use from any thread: the table only holds immutable entries, and a stale read
+ * only costs a trip through the slow path.
+ */
+public final class DayNormalizer {
+
+    // Number of days remembered; a power of two so a day's slot is a mask away
+    private static final int TABLE_SIZE = 64;
+
+    private static volatile DayNormalizer sDefault;
+
+    private static final class Day {
+        final int julianDay;
+        final long start;
+        // Whether every date in the 24 hours from start is known to normalize to start
+        final boolean uniform;
+
+        Day(int julianDay, long start, boolean uniform) {
+            this.julianDay = julianDay;
+            this.start = start;
+            this.uniform = uniform;
+        }
+    }
+
+    private final TimeZone mTimeZone;
+    private final Day[] mDays = new Day[TABLE_SIZE];
+    // Offset, in whole seconds, of the last date that went through the slow path
+    private volatile long mGmtOffsetSeconds;
+
+    public DayNormalizer(TimeZone tz) {
+        mTimeZone = tz;
+        mGmtOffsetSeconds = SunshineDateUtils.getGmtOffsetSeconds(tz,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the normalizer for the default timezone.
+     */
+    public static DayNormalizer getDefault() {
+        DayNormalizer normalizer = sDefault;
+        if (normalizer == null) {
+            normalizer = new DayNormalizer(TimeZone.getDefault());
+            sDefault = normalizer;
+        }
+        return normalizer;
+    }
+
+    /**
+     * Drops the default normalizer, so the next {@link #getDefault()} picks up the default
+     * timezone again.
+     */
+    public static void invalidateDefault() {
+        sDefault = null;
+    }
+
+    /**
+     * Returns the timezone of this normalizer.  It is shared: don't change it.
+     */
+    public TimeZone getTimeZone() {
+        return mTimeZone;
+    }
+
+    /**
+     * Same as {@link SunshineDateUtils#normalizeDate(long, TimeZone)}.
+     */
+    public long normalizeDate(long date) {
+        int julianDay = SunshineDateUtils.getJulianDay(date, mGmtOffsetSeconds);
+        Day day = mDays[julianDay & (TABLE_SIZE - 1)];
+        if (day != null && day.julianDay == julianDay && day.uniform
+                && date >= day.start && date - day.start < SunshineDateUtils.DAY_IN_MILLIS) {
+            return day.start;
+        }
+        return getDay(getJulianDay(date)).start;
+    }
+
+    /**
+     * Same as {@link SunshineDateUtils#getJulianDay(long, long)} with the offset of tz at date.
+     */
+    public int getJulianDay(long date) {
+        long gmtOffsetSeconds = SunshineDateUtils.getGmtOffsetSeconds(mTimeZone, date);
+        mGmtOffsetSeconds = gmtOffsetSeconds;
+        return SunshineDateUtils.getJulianDay(date, gmtOffsetSeconds);
+    }
+
+    /**
+     * Same as {@link SunshineDateUtils#getStartOfJulianDay(int, TimeZone)}.
+     */
+    public long getStartOfJulianDay(int julianDay) {
+        return getDay(julianDay).start;
+    }
+
+    private Day getDay(int julianDay) {
+        int slot = julianDay & (TABLE_SIZE - 1);
+        Day day = mDays[slot];
+        if (day != null && day.julianDay == julianDay) {
+            return day;
+        }
+
+        long start = SunshineDateUtils.getStartOfJulianDay(julianDay, mTimeZone);
+        // The 24 hours from start all normalize to start when start is local midnight and
+        // the offset doesn't change in between: their local times are then all within the
+        // day.  Before the epoch getJulianDay rounds towards zero, so those days are left out.
+        long localMidnight = (julianDay - SunshineDateUtils.EPOCH_JULIAN_DAY)
+                * SunshineDateUtils.DAY_IN_MILLIS;
+        long offsetMillis = SunshineDateUtils.getGmtOffsetSeconds(mTimeZone, start) * 1000;
+        boolean uniform = localMidnight >= 0
+                && start + offsetMillis == localMidnight
+                && SunshineDateUtils.getGmtOffsetSeconds(mTimeZone,
+                        start + SunshineDateUtils.DAY_IN_MILLIS - 1) * 1000 == offsetMillis;
+        day = new Day(julianDay, start, uniform);
+        mDays[slot] = day;
+        return day;
+    }
+}
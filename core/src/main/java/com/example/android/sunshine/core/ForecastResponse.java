@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of parsing an OpenWeatherMap daily forecast response.  When {@link #status} is
+ * anything other than {@link #STATUS_OK} only the status is meaningful.
+ */
+public final class ForecastResponse {
+
+    public static final int STATUS_OK = 0;
+    // The API answered with "cod": 404, i.e. it doesn't know the location
+    public static final int STATUS_LOCATION_NOT_FOUND = 1;
+    // The API answered with any other error code
+    public static final int STATUS_SERVER_ERROR = 2;
+
+    public final int status;
+    public final String cityName;
+    public final double cityLatitude;
+    public final double cityLongitude;
+    public final List<DailyForecast> days;
+
+    ForecastResponse(int status, String cityName, double cityLatitude, double cityLongitude,
+                     List<DailyForecast> days) {
+        this.status = status;
+        this.cityName = cityName;
+        this.cityLatitude = cityLatitude;
+        this.cityLongitude = cityLongitude;
+        this.days = days;
+    }
+
+    static ForecastResponse error(int status) {
+        return new ForecastResponse(status, null, 0, 0, Collections.<DailyForecast>emptyList());
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, column by column copy of a location's forecast, one row per day in date
+ * order.  Each column is a primitive array, and the descriptions are interned, so a snapshot
+ * takes a fraction of the memory of a cursor window holding the same rows, and can be read by
+ * any number of threads at once.
+ *
+ * Units are those of the weather table: Celsius, km/h, hPa and meteorological degrees.
+ */
+public final class ForecastSnapshot {
+
+    public static final ForecastSnapshot EMPTY = new Builder(0).build();
+
+    // OpenWeatherMap describes the weather with a few dozen phrases; the pool stops growing
+    // well past that, in case a server starts sending something else
+    private static final int MAX_POOLED_DESCRIPTIONS = 256;
+    private static final ConcurrentHashMap<String, String> sDescriptions =
+            new ConcurrentHashMap<String, String>();
+
+    // Bumped whenever the layout written by writeTo changes
+    private static final int FORMAT_VERSION = 1;
+
+    // Rough sizes on a heap with 4 byte references
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int STRING_HEADER_BYTES = 24;
+
+    private final int mCount;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mDescriptions;
+    private final double[] mHighs;
+    private final double[] mLows;
+    private final double[] mHumidities;
+    private final double[] mPressures;
+    private final double[] mWindSpeeds;
+    private final double[] mWindDirections;
+
+    private ForecastSnapshot(Builder builder) {
+        mCount = builder.mCount;
+        mIds = Arrays.copyOf(builder.mIds, mCount);
+        mDates = Arrays.copyOf(builder.mDates, mCount);
+        mWeatherIds = Arrays.copyOf(builder.mWeatherIds, mCount);
+        mDescriptions = Arrays.copyOf(builder.mDescriptions, mCount);
+        mHighs = Arrays.copyOf(builder.mHighs, mCount);
+        mLows = Arrays.copyOf(builder.mLows, mCount);
+        mHumidities = Arrays.copyOf(builder.mHumidities, mCount);
+        mPressures = Arrays.copyOf(builder.mPressures, mCount);
+        mWindSpeeds = Arrays.copyOf(builder.mWindSpeeds, mCount);
+        mWindDirections = Arrays.copyOf(builder.mWindDirections, mCount);
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getId(int row) {
+        return mIds[check(row)];
+    }
+
+    public long getDate(int row) {
+        return mDates[check(row)];
+    }
+
+    public int getWeatherId(int row) {
+        return mWeatherIds[check(row)];
+    }
+
+    public String getDescription(int row) {
+        return mDescriptions[check(row)];
+    }
+
+    public double getHigh(int row) {
+        return mHighs[check(row)];
+    }
+
+    public double getLow(int row) {
+        return mLows[check(row)];
+    }
+
+    public double getHumidity(int row) {
+        return mHumidities[check(row)];
+    }
+
+    public double getPressure(int row) {
+        return mPressures[check(row)];
+    }
+
+    public double getWindSpeed(int row) {
+        return mWindSpeeds[check(row)];
+    }
+
+    public double getWindDirection(int row) {
+        return mWindDirections[check(row)];
+    }
+
+    /**
+     * Returns the row of a normalized date, -1 if the snapshot has no row for it.
+     */
+    public int indexOfDate(long date) {
+        int row = Arrays.binarySearch(mDates, 0, mCount, date);
+        return row >= 0 ? row : -1;
+    }
+
+    /**
+     * Returns roughly how many bytes of heap the snapshot holds, counting each distinct
+     * description once.  The pooled descriptions are shared with every other snapshot.
+     */
+    public long getSizeInBytes() {
+        long bytes = 10 * ARRAY_HEADER_BYTES + mCount * (2 * 8 + 4 + 4 + 6 * 8);
+        Set<String> counted = Collections.newSetFromMap(new IdentityHashMap<String, Boolean>());
+        for (String description : mDescriptions) {
+            if (description != null && counted.add(description)) {
+                bytes += STRING_HEADER_BYTES + ARRAY_HEADER_BYTES + 2 * description.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the first maxRows rows, in a form {@link #readFrom} reads back.
+     */
+    public void writeTo(DataOutput out, int maxRows) throws IOException {
+        int count = Math.min(mCount, Math.max(maxRows, 0));
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(count);
+        for (int row = 0; row < count; row++) {
+            out.writeLong(mIds[row]);
+            out.writeLong(mDates[row]);
+            out.writeInt(mWeatherIds[row]);
+            out.writeBoolean(mDescriptions[row] != null);
+            if (mDescriptions[row] != null) {
+                out.writeUTF(mDescriptions[row]);
+            }
+            out.writeDouble(mHighs[row]);
+            out.writeDouble(mLows[row]);
+            out.writeDouble(mHumidities[row]);
+            out.writeDouble(mPressures[row]);
+            out.writeDouble(mWindSpeeds[row]);
+            out.writeDouble(mWindDirections[row]);
+        }
+    }
+
+    /**
+     * Reads back the rows written by {@link #writeTo} from minDate on.
+     * @throws IOException if the input is truncated or from another version of the format
+     */
+    public static ForecastSnapshot readFrom(DataInput in, long minDate) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unknown snapshot format " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Bad row count " + count);
+        }
+        Builder builder = new Builder(Math.min(count, 64));
+        for (int row = 0; row < count; row++) {
+            long id = in.readLong();
+            long date = in.readLong();
+            int weatherId = in.readInt();
+            String description = in.readBoolean() ? in.readUTF() : null;
+            double high = in.readDouble();
+            double low = in.readDouble();
+            double humidity = in.readDouble();
+            double pressure = in.readDouble();
+            double windSpeed = in.readDouble();
+            double windDirection = in.readDouble();
+            if (date >= minDate) {
+                try {
+                    builder.add(id, date, weatherId, description, high, low, humidity, pressure,
+                            windSpeed, windDirection);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Rows out of date order", e);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private int check(int row) {
+        if (row < 0 || row >= mCount) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + mCount);
+        }
+        return row;
+    }
+
+    static String intern(String description) {
+        if (description == null) {
+            return null;
+        }
+        String pooled = sDescriptions.get(description);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (sDescriptions.size() >= MAX_POOLED_DESCRIPTIONS) {
+            return description;
+        }
+        pooled = sDescriptions.putIfAbsent(description, description);
+        return pooled != null ? pooled : description;
+    }
+
+    /**
+     * Collects the rows of a snapshot.  Rows have to be added in increasing date order.
+     */
+    public static final class Builder {
+        private int mCount;
+        private long[] mIds;
+        private long[] mDates;
+        private int[] mWeatherIds;
+        private String[] mDescriptions;
+        private double[] mHighs;
+        private double[] mLows;
+        private double[] mHumidities;
+        private double[] mPressures;
+        private double[] mWindSpeeds;
+        private double[] mWindDirections;
+
+        public Builder(int capacity) {
+            allocate(Math.max(capacity, 0));
+        }
+
+        public Builder add(long id, long date, int weatherId, String description, double high,
+                           double low, double humidity, double pressure, double windSpeed,
+                           double windDirection) {
+            if (mCount > 0 && date <= mDates[mCount - 1]) {
+                throw new IllegalArgumentException("Rows must be added in date order");
+            }
+            if (mCount == mIds.length) {
+                allocate(Math.max(2 * mCount, 16));
+            }
+            mIds[mCount] = id;
+            mDates[mCount] = date;
+            mWeatherIds[mCount] = weatherId;
+            mDescriptions[mCount] = intern(description);
+            mHighs[mCount] = high;
+            mLows[mCount] = low;
+            mHumidities[mCount] = humidity;
+            mPressures[mCount] = pressure;
+            mWindSpeeds[mCount] = windSpeed;
+            mWindDirections[mCount] = windDirection;
+            mCount++;
+            return this;
+        }
+
+        public ForecastSnapshot build() {
+            return new ForecastSnapshot(this);
+        }
+
+        private void allocate(int capacity) {
+            mIds = mIds == null ? new long[capacity] : Arrays.copyOf(mIds, capacity);
+            mDates = mDates == null ? new long[capacity] : Arrays.copyOf(mDates, capacity);
+            mWeatherIds = mWeatherIds == null ? new int[capacity]
+                    : Arrays.copyOf(mWeatherIds, capacity);
+            mDescriptions = mDescriptions == null ? new String[capacity]
+                    : Arrays.copyOf(mDescriptions, capacity);
+            mHighs = mHighs == null ? new double[capacity] : Arrays.copyOf(mHighs, capacity);
+            mLows = mLows == null ? new double[capacity] : Arrays.copyOf(mLows, capacity);
+            mHumidities = mHumidities == null ? new double[capacity]
+                    : Arrays.copyOf(mHumidities, capacity);
+            mPressures = mPressures == null ? new double[capacity]
+                    : Arrays.copyOf(mPressures, capacity);
+            mWindSpeeds = mWindSpeeds == null ? new double[capacity]
+                    : Arrays.copyOf(mWindSpeeds, capacity);
+            mWindDirections = mWindDirections == null ? new double[capacity]
+                    : Arrays.copyOf(mWindDirections, capacity);
+        }
+    }
+}
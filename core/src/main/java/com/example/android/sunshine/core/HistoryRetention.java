@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * How long the weather history keeps each tier: daily rows older than dailyDays are rolled up
+ * into weeks, weekly rows older than weeklyWeeks into months, and monthly rows older than
+ * monthlyMonths are dropped.
+ */
+public final class HistoryRetention {
+
+    // Three months of days, two years of weeks, ten years of months
+    public static final HistoryRetention DEFAULT = new HistoryRetention(90, 104, 120);
+
+    public final int dailyDays;
+    public final int weeklyWeeks;
+    public final int monthlyMonths;
+
+    public HistoryRetention(int dailyDays, int weeklyWeeks, int monthlyMonths) {
+        if (dailyDays < 1 || weeklyWeeks < 1 || monthlyMonths < 1) {
+            throw new IllegalArgumentException("Every tier must be kept for at least one period");
+        }
+        this.dailyDays = dailyDays;
+        this.weeklyWeeks = weeklyWeeks;
+        this.monthlyMonths = monthlyMonths;
+    }
+
+    /**
+     * Returns the instant before which rows of the given tier have outlived it.  Cutoffs fall
+     * on bucket boundaries of the tier, so a bucket is never split.
+     */
+    public long getCutoff(int tier, long nowMillis, TimeZone tz) {
+        switch (tier) {
+            case WeatherHistory.TIER_DAILY: {
+                int today = SunshineDateUtils.getJulianDay(nowMillis,
+                        SunshineDateUtils.getGmtOffsetSeconds(tz, nowMillis));
+                return SunshineDateUtils.getStartOfJulianDay(today - dailyDays, tz);
+            }
+            case WeatherHistory.TIER_WEEKLY: {
+                long thisWeek = WeatherHistory.getBucketStart(
+                        WeatherHistory.TIER_WEEKLY, nowMillis, tz);
+                int julianDay = SunshineDateUtils.getJulianDay(thisWeek,
+                        SunshineDateUtils.getGmtOffsetSeconds(tz, thisWeek));
+                return SunshineDateUtils.getStartOfJulianDay(julianDay - 7 * weeklyWeeks, tz);
+            }
+            case WeatherHistory.TIER_MONTHLY: {
+                Calendar calendar = new GregorianCalendar(tz);
+                calendar.setTimeInMillis(WeatherHistory.getBucketStart(
+                        WeatherHistory.TIER_MONTHLY, nowMillis, tz));
+                calendar.add(Calendar.MONTH, -monthlyMonths);
+                return calendar.getTimeInMillis();
+            }
+            default:
+                throw new IllegalArgumentException("Unknown tier: " + tier);
+        }
+    }
+}
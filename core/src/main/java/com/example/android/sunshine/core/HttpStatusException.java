@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Thrown for an HTTP response whose status isn't 200 OK.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mStatusCode;
+
+    public HttpStatusException(int statusCode) {
+        super("HTTP " + statusCode);
+        mStatusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Server errors, timeouts and throttling may go away on their own; other client errors
+     * won't.
+     */
+    public boolean isRetryable() {
+        return mStatusCode >= HttpURLConnection.HTTP_INTERNAL_ERROR
+                || mStatusCode == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+                || mStatusCode == 429;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Arrays;
+
+/**
+ * Decides which pages of a long list to have loaded, given the rows on screen: the visible
+ * pages, then prefetchPages more ahead in the direction the list last scrolled, then one
+ * behind so turning around doesn't land on an empty page.  Pages more than keepPages away from
+ * the visible ones can be dropped.
+ *
+ * Not thread safe; it follows the list on the main thread.
+ */
+public final class PageWindow {
+
+    private final int mPageSize;
+    private final int mPrefetchPages;
+    private final int mKeepPages;
+
+    private int mFirstVisible;
+    private int mLastVisible;
+    private boolean mForward = true;
+
+    public PageWindow(int pageSize, int prefetchPages, int keepPages) {
+        if (pageSize < 1 || prefetchPages < 0 || keepPages < Math.max(prefetchPages, 1)) {
+            throw new IllegalArgumentException("Pages would be dropped as soon as they load");
+        }
+        mPageSize = pageSize;
+        mPrefetchPages = prefetchPages;
+        mKeepPages = keepPages;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getPage(int position) {
+        return position / mPageSize;
+    }
+
+    public int getPageStart(int page) {
+        return page * mPageSize;
+    }
+
+    /**
+     * Returns the number of rows of page in a list of itemCount rows.
+     */
+    public int getPageRows(int page, int itemCount) {
+        return Math.max(0, Math.min(mPageSize, itemCount - getPageStart(page)));
+    }
+
+    /**
+     * Moves the window to the rows first to last (inclusive) of a list of itemCount rows.
+     *
+     * @return the pages to have loaded, in the order to load them
+     */
+    public int[] onVisibleRangeChanged(int first, int last, int itemCount) {
+        if (first < mFirstVisible) {
+            mForward = false;
+        } else if (first > mFirstVisible) {
+            mForward = true;
+        }
+        mFirstVisible = first;
+        mLastVisible = Math.max(first, last);
+
+        int pageCount = (itemCount + mPageSize - 1) / mPageSize;
+        int firstPage = getPage(mFirstVisible);
+        int lastPage = getPage(mLastVisible);
+        int[] pages = new int[lastPage - firstPage + 2 + mPrefetchPages];
+        int count = 0;
+        for (int page = firstPage; page <= lastPage; page++) {
+            count = add(pages, count, page, pageCount);
+        }
+        for (int i = 1; i <= mPrefetchPages; i++) {
+            count = add(pages, count, mForward ? lastPage + i : firstPage - i, pageCount);
+        }
+        count = add(pages, count, mForward ? firstPage - 1 : lastPage + 1, pageCount);
+        return Arrays.copyOf(pages, count);
+    }
+
+    /**
+     * Returns whether page is close enough to the visible rows to keep.
+     */
+    public boolean isKept(int page) {
+        return page >= getPage(mFirstVisible) - mKeepPages
+                && page <= getPage(mLastVisible) + mKeepPages;
+    }
+
+    private static int add(int[] pages, int count, int page, int pageCount) {
+        if (page >= 0 && page < pageCount) {
+            pages[count++] = page;
+        }
+        return count;
+    }
+}
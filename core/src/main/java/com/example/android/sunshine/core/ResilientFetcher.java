@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+/**
+ * Runs a fetch under a {@link RetryPolicy} and a {@link CircuitBreaker}.  Transport errors and
+ * retryable HTTP statuses are retried with backoff within the policy's budget; anything else is
+ * thrown straight away.  While the breaker is open no attempt is made and a
+ * {@link CircuitOpenException} is thrown.
+ *
+ * An {@link InterruptedIOException} other than a timeout means the fetch was cancelled; it is
+ * neither retried nor held against the upstream.
+ */
+public class ResilientFetcher {
+
+    /**
+     * One try at fetching; called once per attempt.
+     */
+    public interface Attempt<T> {
+        T run() throws IOException;
+    }
+
+    public interface Sleeper {
+        void sleep(long millis) throws InterruptedIOException;
+    }
+
+    public interface Listener {
+        void onRetry(int failedAttempt, long delayMillis, IOException cause);
+
+        void onShortCircuit();
+    }
+
+    public static final Sleeper THREAD_SLEEPER = new Sleeper() {
+        @Override
+        public void sleep(long millis) throws InterruptedIOException {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted during backoff");
+            }
+        }
+    };
+
+    private final RetryPolicy mPolicy;
+    private final CircuitBreaker mBreaker;
+    private final Sleeper mSleeper;
+    private final Random mRandom;
+    private Listener mListener;
+
+    public ResilientFetcher(RetryPolicy policy, CircuitBreaker breaker, Sleeper sleeper,
+                            Random random) {
+        mPolicy = policy;
+        mBreaker = breaker;
+        mSleeper = sleeper;
+        mRandom = random;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return mBreaker;
+    }
+
+    public <T> T execute(Attempt<T> attempt) throws IOException {
+        long budgetLeft = mPolicy.budgetMillis;
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            if (!mBreaker.allowRequest()) {
+                if (mListener != null) mListener.onShortCircuit();
+                throw new CircuitOpenException();
+            }
+            try {
+                T result = attempt.run();
+                mBreaker.recordSuccess();
+                return result;
+            } catch (IOException e) {
+                if (isCancellation(e)) {
+                    mBreaker.recordIgnored();
+                    throw e;
+                }
+                if (e instanceof HttpStatusException && !((HttpStatusException) e).isRetryable()) {
+                    // The upstream answered, so it isn't down
+                    mBreaker.recordSuccess();
+                    throw e;
+                }
+                mBreaker.recordFailure();
+                if (attemptNumber >= mPolicy.maxAttempts) {
+                    throw e;
+                }
+                long delay = mPolicy.getDelayMillis(attemptNumber - 1, mRandom);
+                if (delay > budgetLeft) {
+                    throw e;
+                }
+                budgetLeft -= delay;
+                if (mListener != null) mListener.onRetry(attemptNumber, delay, e);
+                mSleeper.sleep(delay);
+            }
+        }
+    }
+
+    private static boolean isCancellation(IOException e) {
+        return e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException);
+    }
+}
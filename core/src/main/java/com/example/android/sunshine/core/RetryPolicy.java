@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Random;
+
+/**
+ * How often and how patiently a fetch is retried: exponential backoff with full jitter, bounded
+ * both by a number of attempts and by the total time spent waiting between them.
+ */
+public final class RetryPolicy {
+
+    // Three attempts, waiting up to 1s then up to 2s, never more than 30s in total
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 1000, 10000, 30000);
+
+    public final int maxAttempts;
+    public final long baseDelayMillis;
+    public final long maxDelayMillis;
+    // Total backoff allowed for one fetch; a retry that would exceed it isn't made
+    public final long budgetMillis;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                       long budgetMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * Returns the wait before retry number retry (0 for the first retry): uniformly distributed
+     * between 0 and min(maxDelay, baseDelay * 2^retry), so clients that failed together don't
+     * retry together.
+     */
+    public long getDelayMillis(int retry, Random random) {
+        long ceiling = baseDelayMillis << Math.min(retry, 30);
+        if (ceiling <= 0 || ceiling > maxDelayMillis) {
+            ceiling = maxDelayMillis;
+        }
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Julian day helpers with the same semantics as the ones on android.text.format.Time, so the
+ * dates stored in the database don't change no matter which side computes them.
+ */
+public final class SunshineDateUtils {
+
+    public static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    // The Julian day of January 1, 1970 (same value as Time.EPOCH_JULIAN_DAY)
+    public static final int EPOCH_JULIAN_DAY = 2440588;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Computes the Julian day number for a point in time in a particular timezone offset.
+     * Matches Time.getJulianDay(millis, gmtoff).
+     *
+     * @param millis the time in UTC milliseconds
+     * @param gmtoffSeconds the offset from UTC of the timezone in seconds
+     * @return the Julian day
+     */
+    public static int getJulianDay(long millis, long gmtoffSeconds) {
+        long offsetMillis = gmtoffSeconds * 1000;
+        long julianDay = (millis + offsetMillis) / DAY_IN_MILLIS;
+        return (int) julianDay + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * Returns the offset from UTC, in seconds, of a timezone at a given instant.  This is what
+     * Time.gmtoff holds after Time.set(millis).
+     */
+    public static long getGmtOffsetSeconds(TimeZone tz, long millis) {
+        return tz.getOffset(millis) / 1000;
+    }
+
+    /**
+     * Returns the Julian day that contains "now" in the default timezone.
+     */
+    public static int getCurrentJulianDay() {
+        long now = System.currentTimeMillis();
+        return getJulianDay(now, getGmtOffsetSeconds(TimeZone.getDefault(), now));
+    }
+
+    /**
+     * Returns midnight (local time in tz) at the start of a Julian day.  Matches
+     * Time.setJulianDay(julianDay) on a Time constructed for tz.
+     */
+    public static long getStartOfJulianDay(int julianDay, TimeZone tz) {
+        Calendar utc = new GregorianCalendar(UTC);
+        utc.setTimeInMillis((julianDay - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS);
+
+        Calendar local = new GregorianCalendar(tz);
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH),
+                utc.get(Calendar.DAY_OF_MONTH));
+        return local.getTimeInMillis();
+    }
+
+    /**
+     * Normalizes a date to the start of its day in the default timezone.  This is the value
+     * every weather row is keyed on.
+     */
+    public static long normalizeDate(long date) {
+        return normalizeDate(date, TimeZone.getDefault());
+    }
+
+    public static long normalizeDate(long date, TimeZone tz) {
+        int julianDay = getJulianDay(date, getGmtOffsetSeconds(tz, date));
+        return getStartOfJulianDay(julianDay, tz);
+    }
+
+    private SunshineDateUtils() { }
+}
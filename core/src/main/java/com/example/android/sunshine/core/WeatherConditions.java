@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+/**
+ * Maps OpenWeatherMap condition codes onto the handful of artwork groups Sunshine draws.
+ * The app and the watch face turn a group into their own drawable resources.
+ */
+public final class WeatherConditions {
+
+    public static final int CONDITION_UNKNOWN = -1;
+    public static final int CONDITION_STORM = 0;
+    public static final int CONDITION_LIGHT_RAIN = 1;
+    public static final int CONDITION_RAIN = 2;
+    public static final int CONDITION_SNOW = 3;
+    public static final int CONDITION_FOG = 4;
+    public static final int CONDITION_CLEAR = 5;
+    public static final int CONDITION_LIGHT_CLOUDS = 6;
+    public static final int CONDITION_CLOUDS = 7;
+
+    // Number of known conditions, for sizing lookup tables indexed by condition
+    public static final int CONDITION_COUNT = 8;
+
+    // Indexed by condition; these are the names used by the art pack URLs
+    private static final String[] ART_NAMES = {
+            "storm",
+            "light_rain",
+            "rain",
+            "snow",
+            "fog",
+            "clear",
+            "light_clouds",
+            "clouds"
+    };
+
+    /**
+     * Returns the artwork group for a weather condition id returned by the OpenWeatherMap call.
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the CONDITION_ constants, CONDITION_UNKNOWN if no relation is found.
+     */
+    public static int getCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return CONDITION_STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return CONDITION_LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return CONDITION_RAIN;
+        } else if (weatherId == 511) {
+            return CONDITION_SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return CONDITION_RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return CONDITION_SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return CONDITION_FOG;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return CONDITION_STORM;
+        } else if (weatherId == 800) {
+            return CONDITION_CLEAR;
+        } else if (weatherId == 801) {
+            return CONDITION_LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CONDITION_CLOUDS;
+        }
+        return CONDITION_UNKNOWN;
+    }
+
+    /**
+     * Returns the art pack name ("storm", "light_rain", ...) for a weather condition id.
+     * @param weatherId from OpenWeatherMap API response
+     * @return the art name, null if no relation is found.
+     */
+    public static String getArtName(int weatherId) {
+        int condition = getCondition(weatherId);
+        return condition == CONDITION_UNKNOWN ? null : ART_NAMES[condition];
+    }
+
+    /**
+     * Returns the art pack name of a condition, for walking every image of a pack.
+     * @param condition one of the CONDITION_ constants other than CONDITION_UNKNOWN
+     */
+    public static String getArtNameForCondition(int condition) {
+        return ART_NAMES[condition];
+    }
+
+    /**
+     * Helper method to provide the correct image according to the weather condition id returned
+     * by the OpenWeatherMap call.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return A string URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrlForWeatherCondition(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId == 511) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+        } else if (weatherId == 800) {
+            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+        } else if (weatherId == 801) {
+            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+        }
+        return null;
+    }
+
+    private WeatherConditions() { }
+}
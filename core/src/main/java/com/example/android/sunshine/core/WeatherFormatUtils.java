@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * Unit conversions and the locale-independent part of the strings Sunshine shows for a
+ * forecast.  The localized labels and format patterns are passed in by the caller, which
+ * reads them from its resources.
+ */
+public final class WeatherFormatUtils {
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    /**
+     * Data is stored in Celsius.  If the user prefers to see Fahrenheit, convert the value.
+     */
+    public static double toDisplayTemperature(double temperature, boolean isMetric) {
+        return isMetric ? temperature : (temperature * 1.8) + 32;
+    }
+
+    /**
+     * Formats a temperature with a format such as "%1.0f\u00B0".
+     */
+    public static String formatTemperature(String format, double temperature, boolean isMetric) {
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        return String.format(format, toDisplayTemperature(temperature, isMetric));
+    }
+
+    /**
+     * Wind speed is stored in km/h; imperial users see mph.
+     */
+    public static float toDisplayWindSpeed(float windSpeed, boolean isMetric) {
+        return isMetric ? windSpeed : KMH_TO_MPH * windSpeed;
+    }
+
+    /**
+     * From wind direction in degrees, determine compass direction as a string (e.g NW)
+     */
+    public static String getWindDirection(float degrees) {
+        // You know what's fun, writing really long if/else statements with tons of possible
+        // conditions.  Seriously, try it!
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return direction;
+    }
+
+    /**
+     * Returns how many days dateInMillis lies after "now", counting in local days.
+     * 0 is today, 1 is tomorrow, negative values are in the past.
+     */
+    public static int getDaysFromToday(long dateInMillis, long nowMillis, TimeZone tz) {
+        // Both days are counted with the offset in effect now, as Time.setToNow() used to
+        long gmtoff = SunshineDateUtils.getGmtOffsetSeconds(tz, nowMillis);
+        return SunshineDateUtils.getJulianDay(dateInMillis, gmtoff)
+                - SunshineDateUtils.getJulianDay(nowMillis, gmtoff);
+    }
+
+    /**
+     * The day string for forecast uses the following logic:
+     * For today: "Today, June 8"
+     * For tomorrow:  "Tomorrow"
+     * For the next 5 days: "Wednesday" (just the day name)
+     * For all days after that: "Mon Jun 8"
+     *
+     * @param today localized "Today"
+     * @param tomorrow localized "Tomorrow"
+     * @param fullFriendlyDateFormat format taking the day name and the month day,
+     *                               e.g "%1$s, %2$s"
+     */
+    public static String getFriendlyDayString(long dateInMillis, long nowMillis, TimeZone tz,
+                                              boolean displayLongToday, String today,
+                                              String tomorrow, String fullFriendlyDateFormat) {
+        int daysFromToday = getDaysFromToday(dateInMillis, nowMillis, tz);
+
+        // If the date we're building the String for is today's date, the format
+        // is "Today, June 24"
+        if (displayLongToday && daysFromToday == 0) {
+            return String.format(fullFriendlyDateFormat, today,
+                    getFormattedMonthDay(dateInMillis));
+        } else if (daysFromToday < 7) {
+            // If the input date is less than a week in the future, just return the day name.
+            return getDayName(daysFromToday, dateInMillis, today, tomorrow);
+        } else {
+            // Otherwise, use the form "Mon Jun 3"
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * Given a day, returns just the name to use for that day.
+     * E.g "today", "tomorrow", "wednesday".
+     */
+    public static String getDayName(int daysFromToday, long dateInMillis, String today,
+                                    String tomorrow) {
+        if (daysFromToday == 0) {
+            return today;
+        } else if (daysFromToday == 1) {
+            return tomorrow;
+        } else {
+            // Otherwise, the format is just the day of the week (e.g "Wednesday".
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    /**
+     * Converts a date to the format "Month day", e.g "June 24".
+     */
+    public static String getFormattedMonthDay(long dateInMillis) {
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+
+    private WeatherFormatUtils() { }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * The tiers of the weather history archive and how days are downsampled into them.  Past
+ * forecast days are archived one row per day, then rolled up into one row per week and
+ * finally one row per month as they age, see HistoryRetention.
+ */
+public final class WeatherHistory {
+
+    public static final int TIER_DAILY = 0;
+    public static final int TIER_WEEKLY = 1;
+    public static final int TIER_MONTHLY = 2;
+
+    /**
+     * Returns the start of the bucket of the given tier that contains date, in local time in
+     * tz: the start of the day, of the week (weeks start on Monday) or of the month.
+     */
+    public static long getBucketStart(int tier, long date, TimeZone tz) {
+        switch (tier) {
+            case TIER_DAILY:
+                return SunshineDateUtils.normalizeDate(date, tz);
+            case TIER_WEEKLY: {
+                int julianDay = SunshineDateUtils.getJulianDay(date,
+                        SunshineDateUtils.getGmtOffsetSeconds(tz, date));
+                // Julian day 0 was a Monday
+                return SunshineDateUtils.getStartOfJulianDay(julianDay - julianDay % 7, tz);
+            }
+            case TIER_MONTHLY: {
+                Calendar calendar = new GregorianCalendar(tz);
+                calendar.setTimeInMillis(date);
+                int year = calendar.get(Calendar.YEAR);
+                int month = calendar.get(Calendar.MONTH);
+                calendar.clear();
+                calendar.set(year, month, 1);
+                return calendar.getTimeInMillis();
+            }
+            default:
+                throw new IllegalArgumentException("Unknown tier: " + tier);
+        }
+    }
+
+    /**
+     * Accumulates archived rows, each standing for one or more days, into a single row of a
+     * coarser tier.  Temperatures keep their extremes, the other readings are averaged over
+     * the days and the condition is the one that covered the most days.
+     */
+    public static final class Rollup {
+        private int mDays;
+        private double mMinTemp = Double.POSITIVE_INFINITY;
+        private double mMaxTemp = Double.NEGATIVE_INFINITY;
+        private double mHumiditySum;
+        private double mPressureSum;
+        private double mWindSpeedSum;
+        // Wind directions are averaged as unit vectors so that 350 and 10 make 0, not 180
+        private double mDirectionX;
+        private double mDirectionY;
+        private final Map<Integer, Integer> mDaysByWeatherId =
+                new LinkedHashMap<Integer, Integer>();
+
+        /**
+         * Adds a row covering days days.
+         */
+        public void add(int weatherId, double minTemp, double maxTemp, double humidity,
+                        double pressure, double windSpeed, double degrees, int days) {
+            mDays += days;
+            mMinTemp = Math.min(mMinTemp, minTemp);
+            mMaxTemp = Math.max(mMaxTemp, maxTemp);
+            mHumiditySum += humidity * days;
+            mPressureSum += pressure * days;
+            mWindSpeedSum += windSpeed * days;
+            mDirectionX += Math.cos(Math.toRadians(degrees)) * days;
+            mDirectionY += Math.sin(Math.toRadians(degrees)) * days;
+            Integer weatherDays = mDaysByWeatherId.get(weatherId);
+            mDaysByWeatherId.put(weatherId, weatherDays == null ? days : weatherDays + days);
+        }
+
+        public int getDays() {
+            return mDays;
+        }
+
+        public double getMinTemp() {
+            return mMinTemp;
+        }
+
+        public double getMaxTemp() {
+            return mMaxTemp;
+        }
+
+        public double getHumidity() {
+            return mDays == 0 ? 0 : mHumiditySum / mDays;
+        }
+
+        public double getPressure() {
+            return mDays == 0 ? 0 : mPressureSum / mDays;
+        }
+
+        public double getWindSpeed() {
+            return mDays == 0 ? 0 : mWindSpeedSum / mDays;
+        }
+
+        /**
+         * Returns the mean wind direction in meteorological degrees, between 0 and 360.
+         */
+        public double getDegrees() {
+            double degrees = Math.toDegrees(Math.atan2(mDirectionY, mDirectionX));
+            return degrees < 0 ? degrees + 360 : degrees;
+        }
+
+        /**
+         * Returns the weather id that covered the most days; ties go to the one added first.
+         */
+        public int getWeatherId() {
+            int weatherId = 0;
+            int mostDays = 0;
+            for (Map.Entry<Integer, Integer> entry : mDaysByWeatherId.entrySet()) {
+                if (entry.getValue() > mostDays) {
+                    weatherId = entry.getKey();
+                    mostDays = entry.getValue();
+                }
+            }
+            return weatherId;
+        }
+    }
+
+    private WeatherHistory() { }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds and parses the per-location weather uris, "&lt;base&gt;/&lt;setting&gt;" optionally
+ * followed by "/&lt;date&gt;" or "?date=&lt;start date&gt;", working on the uri string directly
+ * instead of going through a Uri.Builder or a list of path segments.
+ *
+ * The strings built here are the ones Uri.Builder builds, so either side can build a uri and
+ * the other parse it.  {@link #parse} only accepts uris of exactly these shapes and returns
+ * null for anything else; callers fall back to the general purpose parser then.
+ */
+public final class WeatherUriCodec {
+
+    // Name of the start date query parameter (the weather table's date column)
+    public static final String PARAM_START_DATE = "date";
+
+    // Value of Parsed.date when the uri has no date segment
+    public static final long NO_DATE = -1;
+
+    // Longest run of digits that always fits in a long
+    private static final int MAX_DIGITS = 18;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    public static final class Parsed {
+        public final String locationSetting;
+        // The day of a "<base>/<setting>/<date>" uri, NO_DATE if there's none
+        public final long date;
+        // The start date query parameter, 0 if there's none
+        public final long startDate;
+
+        Parsed(String locationSetting, long date, long startDate) {
+            this.locationSetting = locationSetting;
+            this.date = date;
+            this.startDate = startDate;
+        }
+
+        public boolean hasDate() {
+            return date != NO_DATE;
+        }
+    }
+
+    public static String buildWeatherLocation(String base, String locationSetting) {
+        return base + '/' + encode(locationSetting);
+    }
+
+    public static String buildWeatherLocationWithDate(String base, String locationSetting,
+                                                      long date) {
+        return base + '/' + encode(locationSetting) + '/' + date;
+    }
+
+    public static String buildWeatherLocationWithStartDate(String base, String locationSetting,
+                                                           long startDate) {
+        return base + '/' + encode(locationSetting) + '?' + PARAM_START_DATE + '=' + startDate;
+    }
+
+    /**
+     * Parses a uri built by one of the build methods with the same base.
+     *
+     * @return the parts of the uri, null if it doesn't have one of the shapes above
+     */
+    public static Parsed parse(String uri, String base) {
+        int length = uri.length();
+        int start = base.length() + 1;
+        if (length <= start || !uri.startsWith(base) || uri.charAt(start - 1) != '/') {
+            return null;
+        }
+
+        int end = start;
+        while (end < length && !isDelimiter(uri.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        String locationSetting = decode(uri, start, end);
+        if (locationSetting == null) {
+            return null;
+        }
+
+        long date = NO_DATE;
+        if (end < length && uri.charAt(end) == '/') {
+            int dateStart = end + 1;
+            end = dateStart;
+            while (end < length && !isDelimiter(uri.charAt(end))) {
+                end++;
+            }
+            // Only digits, like the "#" of the provider's UriMatcher
+            date = parseDigits(uri, dateStart, end);
+            if (date == NO_DATE) {
+                return null;
+            }
+        }
+
+        long startDate = 0;
+        if (end < length) {
+            if (uri.charAt(end) != '?' || uri.indexOf('#', end) >= 0) {
+                return null;
+            }
+            startDate = parseStartDate(uri, end + 1);
+            if (startDate == NO_DATE) {
+                return null;
+            }
+        }
+        return new Parsed(locationSetting, date, startDate);
+    }
+
+    /**
+     * Percent-encodes a path segment the way Uri.encode does: letters, digits and "_-!.~'()*"
+     * are kept, everything else is written as UTF-8 bytes.
+     */
+    public static String encode(String segment) {
+        int length = segment.length();
+        int plain = 0;
+        while (plain < length && isUnreserved(segment.charAt(plain))) {
+            plain++;
+        }
+        if (plain == length) {
+            return segment;
+        }
+
+        StringBuilder encoded = new StringBuilder(length + 16);
+        encoded.append(segment, 0, plain);
+        int i = plain;
+        while (i < length) {
+            char c = segment.charAt(i);
+            if (isUnreserved(c)) {
+                encoded.append(c);
+                i++;
+                continue;
+            }
+            int runEnd = i + 1;
+            while (runEnd < length && !isUnreserved(segment.charAt(runEnd))) {
+                runEnd++;
+            }
+            byte[] bytes = segment.substring(i, runEnd).getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                encoded.append('%').append(HEX_DIGITS[(b >> 4) & 0xf])
+                        .append(HEX_DIGITS[b & 0xf]);
+            }
+            i = runEnd;
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decodes the percent-encoded characters between start and end.
+     *
+     * @return the decoded text, null if it isn't valid percent-encoded UTF-8
+     */
+    static String decode(String s, int start, int end) {
+        int percent = s.indexOf('%', start);
+        if (percent < 0 || percent >= end) {
+            return s.substring(start, end);
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate(end - start);
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= end) {
+                    return null;
+                }
+                int high = Character.digit(s.charAt(i + 1), 16);
+                int low = Character.digit(s.charAt(i + 2), 16);
+                if (high < 0 || low < 0) {
+                    return null;
+                }
+                bytes.put((byte) ((high << 4) | low));
+                i += 2;
+            } else if (c < 0x80) {
+                bytes.put((byte) c);
+            } else {
+                // Uri strings are ASCII once encoded
+                return null;
+            }
+        }
+        bytes.flip();
+        try {
+            CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes);
+            return chars.toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    // Returns the start date parameter of the query starting at start, 0 if it has none and
+    // NO_DATE if it isn't a plain number
+    private static long parseStartDate(String uri, int start) {
+        int length = uri.length();
+        int paramStart = start;
+        while (paramStart <= length) {
+            int paramEnd = uri.indexOf('&', paramStart);
+            if (paramEnd < 0) {
+                paramEnd = length;
+            }
+            int nameEnd = paramStart + PARAM_START_DATE.length();
+            if (nameEnd <= paramEnd
+                    && uri.regionMatches(paramStart, PARAM_START_DATE, 0, PARAM_START_DATE.length())
+                    && (nameEnd == paramEnd || uri.charAt(nameEnd) == '=')) {
+                if (nameEnd + 1 >= paramEnd) {
+                    return 0;
+                }
+                return parseDigits(uri, nameEnd + 1, paramEnd);
+            }
+            paramStart = paramEnd + 1;
+        }
+        return 0;
+    }
+
+    // Returns the number between start and end, NO_DATE if it isn't one or might overflow
+    private static long parseDigits(String s, int start, int end) {
+        if (start >= end || end - start > MAX_DIGITS) {
+            return NO_DATE;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return NO_DATE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == '/' || c == '?' || c == '#';
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '!' || c == '.' || c == '~' || c == '\''
+                || c == '(' || c == ')' || c == '*';
+    }
+
+    private WeatherUriCodec() { }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSyncPolicyTest {
+
+    private static final int NOON = 12;
+    private static final int NIGHT = 3;
+
+    @Test
+    public void noHistoryKeepsTheBaseInterval() {
+        AdaptiveSyncPolicy.Decision decision = AdaptiveSyncPolicy.decide(-1, 0, NOON, false);
+        assertEquals(AdaptiveSyncPolicy.BASE_INTERVAL, decision.intervalSeconds);
+        assertEquals(AdaptiveSyncPolicy.BASE_INTERVAL / 3, decision.flexSeconds);
+    }
+
+    @Test
+    public void quietForecastsSyncLessOften() {
+        int quiet = AdaptiveSyncPolicy.decide(0.0, 0, NOON, false).intervalSeconds;
+        int steady = AdaptiveSyncPolicy.decide(0.2, 0, NOON, false).intervalSeconds;
+        int changing = AdaptiveSyncPolicy.decide(0.8, 0, NOON, false).intervalSeconds;
+        assertTrue(quiet > steady);
+        assertTrue(steady > changing);
+    }
+
+    @Test
+    public void nightAndMeteredStretchTheInterval() {
+        int day = AdaptiveSyncPolicy.decide(0.2, 0, NOON, false).intervalSeconds;
+        assertTrue(AdaptiveSyncPolicy.decide(0.2, 0, NIGHT, false).intervalSeconds > day);
+        assertTrue(AdaptiveSyncPolicy.decide(0.2, 0, NOON, true).intervalSeconds > day);
+    }
+
+    @Test
+    public void failuresBackOffExponentiallyUpToTheMaximum() {
+        int previous = 0;
+        for (int failures = 1; failures <= 5; failures++) {
+            int interval = AdaptiveSyncPolicy.decide(0.2, failures, NOON, false).intervalSeconds;
+            assertTrue(interval >= previous);
+            previous = interval;
+        }
+        assertEquals(AdaptiveSyncPolicy.MIN_INTERVAL,
+                AdaptiveSyncPolicy.decide(0.2, 1, NOON, false).intervalSeconds);
+        assertEquals(AdaptiveSyncPolicy.MAX_INTERVAL,
+                AdaptiveSyncPolicy.decide(0.2, 100, NOON, false).intervalSeconds);
+    }
+
+    @Test
+    public void intervalsStayWithinBoundsAndOnTheGrid() {
+        for (int hour = 0; hour < 24; hour++) {
+            for (double volatility = -1; volatility <= 1; volatility += 0.05) {
+                int interval = AdaptiveSyncPolicy.decide(volatility, 0, hour, true).intervalSeconds;
+                assertTrue(interval >= AdaptiveSyncPolicy.MIN_INTERVAL);
+                assertTrue(interval <= AdaptiveSyncPolicy.MAX_INTERVAL);
+                assertEquals(0, interval % AdaptiveSyncPolicy.GRANULARITY);
+            }
+        }
+    }
+
+    @Test
+    public void volatilityIsAMovingAverage() {
+        assertEquals(0.5, AdaptiveSyncPolicy.updateVolatility(-1, 0.5), 0);
+        double volatility = 1;
+        for (int i = 0; i < 20; i++) {
+            volatility = AdaptiveSyncPolicy.updateVolatility(volatility, 0);
+        }
+        assertTrue(volatility < AdaptiveSyncPolicy.QUIET_VOLATILITY);
+    }
+}
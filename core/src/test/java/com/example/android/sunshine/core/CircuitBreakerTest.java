@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private long mNow;
+
+    private final CircuitBreaker mBreaker = new CircuitBreaker(3, 1000, new CircuitBreaker.Clock() {
+        @Override
+        public long now() {
+            return mNow;
+        }
+    });
+
+    @Test
+    public void opensAfterThresholdConsecutiveFailures() {
+        mBreaker.recordFailure();
+        mBreaker.recordFailure();
+        mBreaker.recordSuccess();
+        mBreaker.recordFailure();
+        mBreaker.recordFailure();
+        assertEquals(CircuitBreaker.STATE_CLOSED, mBreaker.getState());
+        mBreaker.recordFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, mBreaker.getState());
+        assertFalse(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void halfOpenLetsOneTrialThrough() {
+        open();
+        mNow += 1000;
+        assertTrue(mBreaker.allowRequest());
+        assertEquals(CircuitBreaker.STATE_HALF_OPEN, mBreaker.getState());
+        assertFalse(mBreaker.allowRequest());
+
+        mBreaker.recordSuccess();
+        assertEquals(CircuitBreaker.STATE_CLOSED, mBreaker.getState());
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialReopens() {
+        open();
+        mNow += 1000;
+        assertTrue(mBreaker.allowRequest());
+        mBreaker.recordFailure();
+        assertEquals(CircuitBreaker.STATE_OPEN, mBreaker.getState());
+        mNow += 999;
+        assertFalse(mBreaker.allowRequest());
+        mNow += 1;
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    @Test
+    public void ignoredTrialAllowsAnotherOne() {
+        open();
+        mNow += 1000;
+        assertTrue(mBreaker.allowRequest());
+        mBreaker.recordIgnored();
+        assertTrue(mBreaker.allowRequest());
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            mBreaker.recordFailure();
+        }
+    }
+}
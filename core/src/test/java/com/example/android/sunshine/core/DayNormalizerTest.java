@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class DayNormalizerTest {
+
+    private static final long HOUR_IN_MILLIS = 60 * 60 * 1000;
+    // 1900-01-01 and 2100-01-01 UTC
+    private static final long MIN_DATE = -2208988800000L;
+    private static final long MAX_DATE = 4102444800000L;
+
+    @Test
+    public void matchesSunshineDateUtilsInEveryZone() {
+        Random random = new Random(42);
+        for (String id : TimeZone.getAvailableIDs()) {
+            TimeZone tz = TimeZone.getTimeZone(id);
+            DayNormalizer normalizer = new DayNormalizer(tz);
+            for (int i = 0; i < 20; i++) {
+                // A random day, then dates close to it so the remembered days get used
+                long base = MIN_DATE + (long) (random.nextDouble() * (MAX_DATE - MIN_DATE));
+                for (int j = 0; j < 10; j++) {
+                    long date = base + (long) (random.nextGaussian() * 3
+                            * SunshineDateUtils.DAY_IN_MILLIS);
+                    assertSameDay(tz, normalizer, date);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesSunshineDateUtilsAroundOffsetChanges() {
+        Random random = new Random(7);
+        for (String id : TimeZone.getAvailableIDs()) {
+            TimeZone tz = TimeZone.getTimeZone(id);
+            DayNormalizer normalizer = new DayNormalizer(tz);
+            // Every offset change of a few years, found a day at a time, then every half
+            // hour around it
+            long year = 365 * SunshineDateUtils.DAY_IN_MILLIS;
+            long start = 1262304000000L + random.nextInt(10) * year;
+            for (long day = start; day < start + 3 * year; day += SunshineDateUtils.DAY_IN_MILLIS) {
+                if (tz.getOffset(day) == tz.getOffset(day + SunshineDateUtils.DAY_IN_MILLIS)) {
+                    continue;
+                }
+                for (long date = day - SunshineDateUtils.DAY_IN_MILLIS;
+                     date < day + 3 * SunshineDateUtils.DAY_IN_MILLIS; date += HOUR_IN_MILLIS / 2) {
+                    assertSameDay(tz, normalizer, date);
+                    assertSameDay(tz, normalizer, date + random.nextInt((int) HOUR_IN_MILLIS));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchesSunshineDateUtilsAroundTheEpoch() {
+        TimeZone tz = TimeZone.getTimeZone("America/Los_Angeles");
+        DayNormalizer normalizer = new DayNormalizer(tz);
+        for (long date = -3 * SunshineDateUtils.DAY_IN_MILLIS;
+             date < 3 * SunshineDateUtils.DAY_IN_MILLIS; date += HOUR_IN_MILLIS / 4) {
+            assertSameDay(tz, normalizer, date);
+        }
+    }
+
+    @Test
+    public void invalidateDefaultPicksUpTheNewDefault() {
+        TimeZone original = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+            DayNormalizer.invalidateDefault();
+            DayNormalizer normalizer = DayNormalizer.getDefault();
+            assertEquals("Asia/Tokyo", normalizer.getTimeZone().getID());
+            assertSame(normalizer, DayNormalizer.getDefault());
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            DayNormalizer.invalidateDefault();
+            assertEquals("America/New_York", DayNormalizer.getDefault().getTimeZone().getID());
+        } finally {
+            TimeZone.setDefault(original);
+            DayNormalizer.invalidateDefault();
+        }
+    }
+
+    private static void assertSameDay(TimeZone tz, DayNormalizer normalizer, long date) {
+        String message = tz.getID() + " " + date;
+        assertEquals(message, SunshineDateUtils.normalizeDate(date, tz),
+                normalizer.normalizeDate(date));
+        int julianDay = SunshineDateUtils.getJulianDay(date,
+                SunshineDateUtils.getGmtOffsetSeconds(tz, date));
+        assertEquals(message, julianDay, normalizer.getJulianDay(date));
+        assertEquals(message, SunshineDateUtils.getStartOfJulianDay(julianDay + 1, tz),
+                normalizer.getStartOfJulianDay(julianDay + 1));
+    }
+}
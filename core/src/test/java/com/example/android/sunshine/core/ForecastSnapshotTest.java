@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ForecastSnapshotTest {
+
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Light Rain"};
+
+    @Test
+    public void keepsEveryColumn() {
+        ForecastSnapshot snapshot = new ForecastSnapshot.Builder(1)
+                .add(7, 1000, 800, "Clear", 21.5, 12.25, 64, 1013.5, 9.5, 270)
+                .add(8, 2000, 500, "Rain", 18, 11, 90, 1008, 20, 180)
+                .build();
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(8, snapshot.getId(1));
+        assertEquals(2000, snapshot.getDate(1));
+        assertEquals(500, snapshot.getWeatherId(1));
+        assertEquals("Rain", snapshot.getDescription(1));
+        assertEquals(21.5, snapshot.getHigh(0), 0);
+        assertEquals(12.25, snapshot.getLow(0), 0);
+        assertEquals(64, snapshot.getHumidity(0), 0);
+        assertEquals(1013.5, snapshot.getPressure(0), 0);
+        assertEquals(9.5, snapshot.getWindSpeed(0), 0);
+        assertEquals(270, snapshot.getWindDirection(0), 0);
+    }
+
+    @Test
+    public void findsRowsByDate() {
+        ForecastSnapshot snapshot = buildDays(14);
+        assertEquals(0, snapshot.indexOfDate(day(0)));
+        assertEquals(13, snapshot.indexOfDate(day(13)));
+        assertEquals(-1, snapshot.indexOfDate(day(14)));
+        assertEquals(-1, snapshot.indexOfDate(day(3) + 1));
+        assertEquals(-1, ForecastSnapshot.EMPTY.indexOfDate(day(0)));
+    }
+
+    @Test
+    public void internsDescriptions() {
+        ForecastSnapshot first = buildDays(8);
+        ForecastSnapshot second = buildDays(8);
+        assertSame(first.getDescription(0), second.getDescription(4));
+        assertSame(first.getDescription(0),
+                ForecastSnapshot.intern(new String("Clear".toCharArray())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRowsOutOfDateOrder() {
+        new ForecastSnapshot.Builder(2)
+                .add(1, day(1), 800, "Clear", 0, 0, 0, 0, 0, 0)
+                .add(2, day(0), 800, "Clear", 0, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void readsBackWhatItWrote() throws IOException {
+        ForecastSnapshot snapshot = buildDays(20);
+        ForecastSnapshot read = ForecastSnapshot.readFrom(
+                new DataInputStream(new ByteArrayInputStream(write(snapshot, 14))), day(3));
+
+        assertEquals(11, read.getCount());
+        for (int row = 0; row < read.getCount(); row++) {
+            assertEquals(snapshot.getId(row + 3), read.getId(row));
+            assertEquals(snapshot.getDate(row + 3), read.getDate(row));
+            assertEquals(snapshot.getWeatherId(row + 3), read.getWeatherId(row));
+            assertSame(snapshot.getDescription(row + 3), read.getDescription(row));
+            assertEquals(snapshot.getHigh(row + 3), read.getHigh(row), 0);
+            assertEquals(snapshot.getWindDirection(row + 3), read.getWindDirection(row), 0);
+        }
+    }
+
+    @Test
+    public void keepsMissingDescriptions() throws IOException {
+        ForecastSnapshot snapshot = new ForecastSnapshot.Builder(1)
+                .add(1, day(0), 800, null, 0, 0, 0, 0, 0, 0)
+                .build();
+        ForecastSnapshot read = ForecastSnapshot.readFrom(
+                new DataInputStream(new ByteArrayInputStream(write(snapshot, 1))), 0);
+        assertEquals(1, read.getCount());
+        assertEquals(null, read.getDescription(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedInput() throws IOException {
+        byte[] bytes = write(buildDays(5), 5);
+        ForecastSnapshot.readFrom(new DataInputStream(
+                new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsRowsPastTheEnd() {
+        buildDays(3).getHigh(3);
+    }
+
+    /*
+     * The cursors the UI used to hold each copied the rows into a CursorWindow.  With the
+     * columns the detail screen reads, a snapshot is less than two thirds of the bytes a window
+     * fills, and one snapshot now stands in for a window per screen and widget.
+     */
+    @Test
+    public void isSmallerThanACursorWindow() {
+        for (int days : new int[]{14, 90, 365}) {
+            ForecastSnapshot snapshot = buildDays(days);
+            long windowBytes = cursorWindowBytes(snapshot);
+            assertTrue(days + " days: " + snapshot.getSizeInBytes() + " vs " + windowBytes,
+                    snapshot.getSizeInBytes() * 3 < windowBytes * 2);
+        }
+    }
+
+    // Bytes a CursorWindow fills with these rows: a header, a chunk of row slots per 100 rows,
+    // a 12 byte field slot per cell and each string, NUL terminated, in a 4 byte aligned block
+    private static long cursorWindowBytes(ForecastSnapshot snapshot) {
+        final int columns = 10;
+        int rows = snapshot.getCount();
+        long bytes = 16 + ((rows + 99) / 100) * (100 * 4 + 4);
+        for (int row = 0; row < rows; row++) {
+            bytes += columns * 12;
+            int length = snapshot.getDescription(row).getBytes(StandardCharsets.UTF_8).length + 1;
+            bytes += (length + 3) & ~3;
+        }
+        return bytes;
+    }
+
+    private static byte[] write(ForecastSnapshot snapshot, int maxRows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        snapshot.writeTo(new DataOutputStream(bytes), maxRows);
+        return bytes.toByteArray();
+    }
+
+    private static ForecastSnapshot buildDays(int days) {
+        ForecastSnapshot.Builder builder = new ForecastSnapshot.Builder(days);
+        for (int i = 0; i < days; i++) {
+            // New String instances, the way each cursor read returns them
+            String description = new String(DESCRIPTIONS[i % DESCRIPTIONS.length].toCharArray());
+            builder.add(i + 1, day(i), 800, description, 20 + i % 5, 10 + i % 3, 60, 1010, 8,
+                    45 * (i % 8));
+        }
+        return builder.build();
+    }
+
+    private static long day(int i) {
+        return 1419033600000L + i * SunshineDateUtils.DAY_IN_MILLIS;
+    }
+}
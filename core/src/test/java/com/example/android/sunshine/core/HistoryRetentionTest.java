@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static com.example.android.sunshine.core.SunshineDateUtilsTest.localTime;
+import static org.junit.Assert.assertEquals;
+
+public class HistoryRetentionTest {
+
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+
+    // Wednesday March 16th, 2016, a few days after the spring-forward change
+    private static final long NOW = localTime(LOS_ANGELES, 2016, Calendar.MARCH, 16, 9, 30);
+
+    private final HistoryRetention mRetention = new HistoryRetention(10, 2, 3);
+
+    @Test
+    public void dailyCutoffIsMidnightDailyDaysAgo() {
+        assertEquals(localTime(LOS_ANGELES, 2016, Calendar.MARCH, 6, 0, 0),
+                mRetention.getCutoff(WeatherHistory.TIER_DAILY, NOW, LOS_ANGELES));
+    }
+
+    @Test
+    public void weeklyCutoffIsAWeekStart() {
+        // This week started on Monday the 14th; two full weeks before that
+        assertEquals(localTime(LOS_ANGELES, 2016, Calendar.FEBRUARY, 29, 0, 0),
+                mRetention.getCutoff(WeatherHistory.TIER_WEEKLY, NOW, LOS_ANGELES));
+    }
+
+    @Test
+    public void monthlyCutoffIsAMonthStart() {
+        assertEquals(localTime(LOS_ANGELES, 2015, Calendar.DECEMBER, 1, 0, 0),
+                mRetention.getCutoff(WeatherHistory.TIER_MONTHLY, NOW, LOS_ANGELES));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyTiers() {
+        new HistoryRetention(0, 1, 1);
+    }
+}
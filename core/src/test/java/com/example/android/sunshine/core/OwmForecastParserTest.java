@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class OwmForecastParserTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final int START_DAY = SunshineDateUtils.EPOCH_JULIAN_DAY + 16424;
+
+    private static final String TWO_DAYS = "{\"city\":{\"id\":5375480,\"name\":\"Mountain View\","
+            + "\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},\"country\":\"US\"},"
+            + "\"cod\":\"200\",\"message\":0.0126,\"cnt\":2,\"list\":["
+            + "{\"dt\":1419105600,\"temp\":{\"day\":14.04,\"min\":8.54,\"max\":14.04},"
+            + "\"pressure\":1012.08,\"humidity\":87,"
+            + "\"weather\":[{\"id\":501,\"main\":\"Rain\",\"description\":\"moderate rain\"}],"
+            + "\"speed\":4.31,\"deg\":173,\"clouds\":92},"
+            + "{\"dt\":1419192000,\"temp\":{\"day\":12.01,\"min\":7.2,\"max\":13.5},"
+            + "\"pressure\":1015.5,\"humidity\":70,"
+            + "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"sky is clear\"}],"
+            + "\"speed\":1.5,\"deg\":20,\"clouds\":0}]}";
+
+    @Test
+    public void parsesCityAndDays() throws JSONException {
+        ForecastResponse response = OwmForecastParser.parse(TWO_DAYS, START_DAY, UTC);
+
+        assertEquals(ForecastResponse.STATUS_OK, response.status);
+        assertEquals("Mountain View", response.cityName);
+        assertEquals(37.386051, response.cityLatitude, 0);
+        assertEquals(-122.083847, response.cityLongitude, 0);
+        assertEquals(2, response.days.size());
+
+        DailyForecast first = response.days.get(0);
+        assertEquals(16424 * SunshineDateUtils.DAY_IN_MILLIS, first.date);
+        assertEquals(1012.08, first.pressure, 0);
+        assertEquals(87, first.humidity);
+        assertEquals(4.31, first.windSpeed, 0);
+        assertEquals(173, first.windDirection, 0);
+        assertEquals(14.04, first.high, 0);
+        assertEquals(8.54, first.low, 0);
+        assertEquals("Rain", first.description);
+        assertEquals(501, first.weatherId);
+
+        // Days are numbered consecutively from the start day, whatever "dt" says
+        assertEquals(16425 * SunshineDateUtils.DAY_IN_MILLIS, response.days.get(1).date);
+        assertEquals(800, response.days.get(1).weatherId);
+    }
+
+    @Test
+    public void reportsUnknownLocation() throws JSONException {
+        ForecastResponse response = OwmForecastParser.parse(
+                "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}", START_DAY, UTC);
+        assertEquals(ForecastResponse.STATUS_LOCATION_NOT_FOUND, response.status);
+        assertEquals(0, response.days.size());
+    }
+
+    @Test
+    public void reportsServerError() throws JSONException {
+        ForecastResponse response = OwmForecastParser.parse(
+                "{\"cod\":500,\"message\":\"Internal error\"}", START_DAY, UTC);
+        assertEquals(ForecastResponse.STATUS_SERVER_ERROR, response.status);
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectsMalformedJson() throws JSONException {
+        OwmForecastParser.parse("{\"city\":", START_DAY, UTC);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PageWindowTest {
+
+    private final PageWindow mWindow = new PageWindow(10, 2, 3);
+
+    @Test
+    public void loadsTheFirstPagesOfANewList() {
+        assertArrayEquals(new int[]{0, 1, 2}, mWindow.onVisibleRangeChanged(0, 6, 100));
+    }
+
+    @Test
+    public void prefetchesAheadOfTheScroll() {
+        mWindow.onVisibleRangeChanged(0, 6, 100);
+        // Visible pages first, then ahead, then one behind
+        assertArrayEquals(new int[]{3, 4, 5, 6, 2}, mWindow.onVisibleRangeChanged(35, 48, 100));
+    }
+
+    @Test
+    public void prefetchesBehindWhenScrollingBack() {
+        mWindow.onVisibleRangeChanged(55, 62, 100);
+        assertArrayEquals(new int[]{4, 5, 3, 2, 6}, mWindow.onVisibleRangeChanged(45, 52, 100));
+        // Standing still keeps the last direction
+        assertArrayEquals(new int[]{4, 5, 3, 2, 6}, mWindow.onVisibleRangeChanged(45, 52, 100));
+    }
+
+    @Test
+    public void staysInsideTheList() {
+        mWindow.onVisibleRangeChanged(0, 6, 25);
+        assertArrayEquals(new int[]{2, 1}, mWindow.onVisibleRangeChanged(20, 24, 25));
+        assertArrayEquals(new int[]{}, mWindow.onVisibleRangeChanged(0, -1, 0));
+    }
+
+    @Test
+    public void dropsPagesFarFromTheVisibleOnes() {
+        mWindow.onVisibleRangeChanged(50, 59, 200);
+        assertFalse(mWindow.isKept(1));
+        assertTrue(mWindow.isKept(2));
+        assertTrue(mWindow.isKept(8));
+        assertFalse(mWindow.isKept(9));
+    }
+
+    @Test
+    public void countsTheRowsOfEachPage() {
+        assertEquals(10, mWindow.getPageRows(1, 25));
+        assertEquals(5, mWindow.getPageRows(2, 25));
+        assertEquals(0, mWindow.getPageRows(3, 25));
+        assertEquals(20, mWindow.getPageStart(mWindow.getPage(27)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeepingLessThanItPrefetches() {
+        new PageWindow(10, 3, 2);
+    }
+}
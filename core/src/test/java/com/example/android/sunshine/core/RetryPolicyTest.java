@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void delaysAreJitteredBelowAnExponentialCeiling() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 10000);
+        Random random = new Random(42);
+        for (int retry = 0; retry < 10; retry++) {
+            long ceiling = Math.min(1000, 100L << retry);
+            long max = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = policy.getDelayMillis(retry, random);
+                assertTrue(delay >= 0 && delay <= ceiling);
+                max = Math.max(max, delay);
+            }
+            // With full jitter the whole range gets used
+            assertTrue(max > ceiling * 9 / 10);
+        }
+    }
+
+    @Test
+    public void largeRetryCountsDontOverflow() {
+        RetryPolicy policy = new RetryPolicy(100, 1000, 5000, 10000);
+        long delay = policy.getDelayMillis(99, new Random(1));
+        assertTrue(delay >= 0 && delay <= 5000);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class SunshineDateUtilsTest {
+
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+    private static final TimeZone TOKYO = TimeZone.getTimeZone("Asia/Tokyo");
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @Test
+    public void julianDayOfEpochIsEpochJulianDay() {
+        assertEquals(SunshineDateUtils.EPOCH_JULIAN_DAY, SunshineDateUtils.getJulianDay(0, 0));
+        // 1970-01-01 01:00 in UTC+1 is still the first day...
+        assertEquals(SunshineDateUtils.EPOCH_JULIAN_DAY, SunshineDateUtils.getJulianDay(0, 3600));
+        // ...but 23:00 UTC is already the second one there
+        assertEquals(SunshineDateUtils.EPOCH_JULIAN_DAY + 1,
+                SunshineDateUtils.getJulianDay(23 * 3600 * 1000L, 3600));
+    }
+
+    @Test
+    public void normalizeDateReturnsLocalMidnight() {
+        // December 20th, 2014 15:30 in Los Angeles
+        long date = localTime(LOS_ANGELES, 2014, Calendar.DECEMBER, 20, 15, 30);
+        assertEquals(localTime(LOS_ANGELES, 2014, Calendar.DECEMBER, 20, 0, 0),
+                SunshineDateUtils.normalizeDate(date, LOS_ANGELES));
+
+        // The same instant is already December 21st in Tokyo
+        assertEquals(localTime(TOKYO, 2014, Calendar.DECEMBER, 21, 0, 0),
+                SunshineDateUtils.normalizeDate(date, TOKYO));
+    }
+
+    @Test
+    public void normalizeDateIsIdempotent() {
+        long date = localTime(LOS_ANGELES, 2016, Calendar.MARCH, 13, 12, 0);
+        long normalized = SunshineDateUtils.normalizeDate(date, LOS_ANGELES);
+        assertEquals(normalized, SunshineDateUtils.normalizeDate(normalized, LOS_ANGELES));
+    }
+
+    @Test
+    public void startOfJulianDayAcrossDaylightSavingChange() {
+        // 2016-03-13 is the spring-forward day in Los Angeles: 23 hours long
+        long march13 = localTime(LOS_ANGELES, 2016, Calendar.MARCH, 13, 0, 0);
+        int julianDay = SunshineDateUtils.getJulianDay(march13,
+                SunshineDateUtils.getGmtOffsetSeconds(LOS_ANGELES, march13));
+        assertEquals(march13, SunshineDateUtils.getStartOfJulianDay(julianDay, LOS_ANGELES));
+        assertEquals(march13 + 23 * 3600 * 1000L,
+                SunshineDateUtils.getStartOfJulianDay(julianDay + 1, LOS_ANGELES));
+    }
+
+    @Test
+    public void startOfJulianDayInUtcIsMultipleOfADay() {
+        assertEquals(0, SunshineDateUtils.getStartOfJulianDay(
+                SunshineDateUtils.EPOCH_JULIAN_DAY, UTC));
+        assertEquals(10 * SunshineDateUtils.DAY_IN_MILLIS, SunshineDateUtils.getStartOfJulianDay(
+                SunshineDateUtils.EPOCH_JULIAN_DAY + 10, UTC));
+    }
+
+    static long localTime(TimeZone tz, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = new GregorianCalendar(tz);
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class WeatherConditionsTest {
+
+    @Test
+    public void mapsConditionCodeRanges() {
+        assertEquals(WeatherConditions.CONDITION_STORM, WeatherConditions.getCondition(200));
+        assertEquals(WeatherConditions.CONDITION_STORM, WeatherConditions.getCondition(232));
+        assertEquals(WeatherConditions.CONDITION_LIGHT_RAIN, WeatherConditions.getCondition(321));
+        assertEquals(WeatherConditions.CONDITION_RAIN, WeatherConditions.getCondition(500));
+        assertEquals(WeatherConditions.CONDITION_SNOW, WeatherConditions.getCondition(511));
+        assertEquals(WeatherConditions.CONDITION_RAIN, WeatherConditions.getCondition(531));
+        assertEquals(WeatherConditions.CONDITION_SNOW, WeatherConditions.getCondition(622));
+        assertEquals(WeatherConditions.CONDITION_FOG, WeatherConditions.getCondition(701));
+        assertEquals(WeatherConditions.CONDITION_CLEAR, WeatherConditions.getCondition(800));
+        assertEquals(WeatherConditions.CONDITION_LIGHT_CLOUDS, WeatherConditions.getCondition(801));
+        assertEquals(WeatherConditions.CONDITION_CLOUDS, WeatherConditions.getCondition(804));
+    }
+
+    @Test
+    public void keepsHistoricalOverlapBehavior() {
+        // 761 falls in the fog range before the storm check is reached; 781 does not
+        assertEquals(WeatherConditions.CONDITION_FOG, WeatherConditions.getCondition(761));
+        assertEquals(WeatherConditions.CONDITION_STORM, WeatherConditions.getCondition(781));
+    }
+
+    @Test
+    public void unknownCodes() {
+        assertEquals(WeatherConditions.CONDITION_UNKNOWN, WeatherConditions.getCondition(0));
+        assertEquals(WeatherConditions.CONDITION_UNKNOWN, WeatherConditions.getCondition(900));
+        assertNull(WeatherConditions.getArtName(900));
+        assertNull(WeatherConditions.getImageUrlForWeatherCondition(900));
+    }
+
+    @Test
+    public void artNames() {
+        assertEquals("storm", WeatherConditions.getArtName(211));
+        assertEquals("light_rain", WeatherConditions.getArtName(300));
+        assertEquals("clouds", WeatherConditions.getArtName(803));
+    }
+
+    @Test
+    public void artNamesByCondition() {
+        for (int condition = 0; condition < WeatherConditions.CONDITION_COUNT; condition++) {
+            assertNotNull(WeatherConditions.getArtNameForCondition(condition));
+        }
+        assertEquals(WeatherConditions.getArtName(500),
+                WeatherConditions.getArtNameForCondition(WeatherConditions.CONDITION_RAIN));
+    }
+}
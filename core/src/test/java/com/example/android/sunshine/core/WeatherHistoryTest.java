@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static com.example.android.sunshine.core.SunshineDateUtilsTest.localTime;
+import static org.junit.Assert.assertEquals;
+
+public class WeatherHistoryTest {
+
+    private static final TimeZone LOS_ANGELES = TimeZone.getTimeZone("America/Los_Angeles");
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void weeksStartOnMonday() {
+        // Sunday December 21st, 2014 belongs to the week of Monday the 15th...
+        long sunday = localTime(LOS_ANGELES, 2014, Calendar.DECEMBER, 21, 18, 0);
+        assertEquals(localTime(LOS_ANGELES, 2014, Calendar.DECEMBER, 15, 0, 0),
+                WeatherHistory.getBucketStart(WeatherHistory.TIER_WEEKLY, sunday, LOS_ANGELES));
+        // ...and Monday the 22nd starts the next one
+        long monday = localTime(LOS_ANGELES, 2014, Calendar.DECEMBER, 22, 0, 0);
+        assertEquals(monday,
+                WeatherHistory.getBucketStart(WeatherHistory.TIER_WEEKLY, monday, LOS_ANGELES));
+    }
+
+    @Test
+    public void monthsStartOnTheFirst() {
+        long date = localTime(LOS_ANGELES, 2016, Calendar.MARCH, 31, 23, 0);
+        assertEquals(localTime(LOS_ANGELES, 2016, Calendar.MARCH, 1, 0, 0),
+                WeatherHistory.getBucketStart(WeatherHistory.TIER_MONTHLY, date, LOS_ANGELES));
+    }
+
+    @Test
+    public void dailyBucketIsTheNormalizedDate() {
+        long date = localTime(LOS_ANGELES, 2016, Calendar.MARCH, 13, 12, 0);
+        assertEquals(SunshineDateUtils.normalizeDate(date, LOS_ANGELES),
+                WeatherHistory.getBucketStart(WeatherHistory.TIER_DAILY, date, LOS_ANGELES));
+    }
+
+    @Test
+    public void rollupKeepsExtremesAndAveragesByDays() {
+        WeatherHistory.Rollup rollup = new WeatherHistory.Rollup();
+        rollup.add(800, 10, 20, 50, 1000, 4, 90, 1);
+        // An already rolled up week counts for its seven days
+        rollup.add(500, 5, 15, 90, 1010, 8, 90, 7);
+
+        assertEquals(8, rollup.getDays());
+        assertEquals(5, rollup.getMinTemp(), DELTA);
+        assertEquals(20, rollup.getMaxTemp(), DELTA);
+        assertEquals((50 + 7 * 90) / 8.0, rollup.getHumidity(), DELTA);
+        assertEquals((1000 + 7 * 1010) / 8.0, rollup.getPressure(), DELTA);
+        assertEquals((4 + 7 * 8) / 8.0, rollup.getWindSpeed(), DELTA);
+        assertEquals(500, rollup.getWeatherId());
+    }
+
+    @Test
+    public void rollupAveragesWindDirectionAroundNorth() {
+        WeatherHistory.Rollup rollup = new WeatherHistory.Rollup();
+        rollup.add(800, 0, 0, 0, 0, 0, 350, 1);
+        rollup.add(800, 0, 0, 0, 0, 0, 30, 1);
+        assertEquals(10, rollup.getDegrees(), 1e-6);
+    }
+
+    @Test
+    public void rollupConditionTieGoesToFirstAdded() {
+        WeatherHistory.Rollup rollup = new WeatherHistory.Rollup();
+        rollup.add(801, 0, 0, 0, 0, 0, 0, 2);
+        rollup.add(600, 0, 0, 0, 0, 0, 0, 2);
+        assertEquals(801, rollup.getWeatherId());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherUriCodecTest {
+
+    private static final String BASE = "content://com.example.android.sunshine.app/weather";
+
+    @Test
+    public void encodesLikeUriEncode() {
+        String plain = "94043";
+        assertSame(plain, WeatherUriCodec.encode(plain));
+        assertEquals("a-z_A.Z~0!9'(*)", WeatherUriCodec.encode("a-z_A.Z~0!9'(*)"));
+        assertEquals("London%2Cuk", WeatherUriCodec.encode("London,uk"));
+        assertEquals("San%20Jos%C3%A9%2FCA", WeatherUriCodec.encode("San Jos\u00e9/CA"));
+        assertEquals("%E2%98%83%20x", WeatherUriCodec.encode("\u2603 x"));
+    }
+
+    @Test
+    public void buildsTheUriBuilderStrings() {
+        assertEquals(BASE + "/London%2Cuk",
+                WeatherUriCodec.buildWeatherLocation(BASE, "London,uk"));
+        assertEquals(BASE + "/94043/1419033600000",
+                WeatherUriCodec.buildWeatherLocationWithDate(BASE, "94043", 1419033600000L));
+        assertEquals(BASE + "/94043?date=1419033600000",
+                WeatherUriCodec.buildWeatherLocationWithStartDate(BASE, "94043", 1419033600000L));
+    }
+
+    @Test
+    public void parsesWhatItBuilds() {
+        String[] settings = {"94043", "London,uk", "San Jos\u00e9/CA", "100% sure?", "a&b=c#d"};
+        for (String setting : settings) {
+            WeatherUriCodec.Parsed parsed = WeatherUriCodec.parse(
+                    WeatherUriCodec.buildWeatherLocation(BASE, setting), BASE);
+            assertEquals(setting, parsed.locationSetting);
+            assertFalse(parsed.hasDate());
+            assertEquals(0, parsed.startDate);
+
+            parsed = WeatherUriCodec.parse(
+                    WeatherUriCodec.buildWeatherLocationWithDate(BASE, setting, 1419033600000L),
+                    BASE);
+            assertEquals(setting, parsed.locationSetting);
+            assertTrue(parsed.hasDate());
+            assertEquals(1419033600000L, parsed.date);
+
+            parsed = WeatherUriCodec.parse(WeatherUriCodec.buildWeatherLocationWithStartDate(
+                    BASE, setting, 1419033600000L), BASE);
+            assertEquals(setting, parsed.locationSetting);
+            assertFalse(parsed.hasDate());
+            assertEquals(1419033600000L, parsed.startDate);
+        }
+    }
+
+    @Test
+    public void parsesQueryParameters() {
+        assertEquals(42, WeatherUriCodec.parse(BASE + "/94043?units=metric&date=42", BASE)
+                .startDate);
+        assertEquals(42, WeatherUriCodec.parse(BASE + "/94043?date=42&date=7", BASE).startDate);
+        assertEquals(0, WeatherUriCodec.parse(BASE + "/94043?date=", BASE).startDate);
+        assertEquals(0, WeatherUriCodec.parse(BASE + "/94043?dates=42", BASE).startDate);
+        assertEquals(0, WeatherUriCodec.parse(BASE + "/94043?", BASE).startDate);
+    }
+
+    @Test
+    public void rejectsOtherShapes() {
+        assertNull(WeatherUriCodec.parse(BASE, BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "s/94043", BASE));
+        assertNull(WeatherUriCodec.parse("content://other/weather/94043", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "//94043", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043/", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043/today", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043/-5", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043/1/2", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043/12345678901234567890", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043#top", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043?date=4x", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94043?date=42#top", BASE));
+    }
+
+    @Test
+    public void rejectsBadEscapes() {
+        assertNull(WeatherUriCodec.parse(BASE + "/94%", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94%4", BASE));
+        assertNull(WeatherUriCodec.parse(BASE + "/94%zz", BASE));
+        // A lone continuation byte isn't UTF-8
+        assertNull(WeatherUriCodec.parse(BASE + "/94%A9", BASE));
+        assertEquals("94%", WeatherUriCodec.parse(BASE + "/94%25", BASE).locationSetting);
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.loadtest;
+
+import com.example.android.sunshine.benchmark.SyntheticForecasts;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local HTTP server answering /data/2.5/forecast/daily the way api.openweathermap.org does.
+ * Latency, payload size, transfer encoding and failures are configurable while it runs.
+ *
+ * Forecasts are generated from the q parameter, so the same location always gets the same
+ * forecast.  Failures are either injected at random with {@link #setFailureRate} or queued one
+ * request at a time with {@link #enqueueFailure}; queued failures are served first.
+ */
+public class OwmStubServer implements Closeable {
+
+    public static final String FORECAST_PATH = "/data/2.5/forecast/daily";
+
+    public static final int FAILURE_NONE = 0;
+    // HTTP 404, as a misconfigured proxy or a moved endpoint would return
+    public static final int FAILURE_HTTP_NOT_FOUND = 1;
+    public static final int FAILURE_HTTP_SERVER_ERROR = 2;
+    public static final int FAILURE_HTTP_UNAVAILABLE = 3;
+    // A 200 whose body is cut short in the middle of the JSON
+    public static final int FAILURE_MALFORMED_JSON = 4;
+    public static final int FAILURE_EMPTY_BODY = 5;
+    // What OWM actually answers for an unknown city: a 200 carrying "cod":"404"
+    public static final int FAILURE_CITY_NOT_FOUND = 6;
+    // The connection is closed after half of the body was sent
+    public static final int FAILURE_DISCONNECT = 7;
+
+    public static final int FAILURE_COUNT = 8;
+
+    private static final String[] FAILURE_NAMES = {
+            "none",
+            "http_404",
+            "http_500",
+            "http_503",
+            "malformed_json",
+            "empty_body",
+            "city_not_found",
+            "disconnect"
+    };
+
+    private static final int DEFAULT_DAYS = 14;
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+
+    private volatile int mMinLatencyMillis;
+    private volatile int mMaxLatencyMillis;
+    private volatile int mPaddingBytes;
+    private volatile boolean mChunked;
+    private volatile boolean mGzip;
+    private volatile int mFailureMode = FAILURE_NONE;
+    private volatile double mFailureRate;
+
+    private final ConcurrentLinkedQueue<Integer> mQueuedFailures =
+            new ConcurrentLinkedQueue<Integer>();
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final AtomicIntegerArray mServed = new AtomicIntegerArray(FAILURE_COUNT);
+
+    /**
+     * Creates a server on a free port of the loopback interface.  Call {@link #start()} to
+     * begin serving.
+     */
+    public OwmStubServer() throws IOException {
+        this(0);
+    }
+
+    public OwmStubServer(int port) throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                0);
+        mServer.createContext(FORECAST_PATH, new ForecastHandler());
+        // Latency is simulated by sleeping, so every request needs its own thread
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+    }
+
+    public void start() {
+        mServer.start();
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * @return the base URL to use in place of http://api.openweathermap.org
+     */
+    public String getBaseUrl() {
+        return "http://" + mServer.getAddress().getHostString() + ":"
+                + mServer.getAddress().getPort();
+    }
+
+    /**
+     * Every response is delayed by a uniformly distributed time between min and max.
+     */
+    public void setLatency(int minMillis, int maxMillis) {
+        mMinLatencyMillis = minMillis;
+        mMaxLatencyMillis = Math.max(minMillis, maxMillis);
+    }
+
+    /**
+     * Adds an unparsed field of the given size to each forecast, to simulate larger payloads.
+     */
+    public void setPaddingBytes(int paddingBytes) {
+        mPaddingBytes = paddingBytes;
+    }
+
+    public void setChunked(boolean chunked) {
+        mChunked = chunked;
+    }
+
+    /**
+     * Compress responses for clients that send "Accept-Encoding: gzip".
+     */
+    public void setGzip(boolean gzip) {
+        mGzip = gzip;
+    }
+
+    /**
+     * Fails the given fraction of requests with failureMode.
+     */
+    public void setFailureRate(int failureMode, double rate) {
+        mFailureMode = failureMode;
+        mFailureRate = rate;
+    }
+
+    /**
+     * Serves failureMode for the next request that doesn't already have a queued failure.
+     */
+    public void enqueueFailure(int failureMode) {
+        mQueuedFailures.add(failureMode);
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return how many responses were served with failureMode (FAILURE_NONE for successes)
+     */
+    public int getServedCount(int failureMode) {
+        return mServed.get(failureMode);
+    }
+
+    public void resetCounters() {
+        mRequestCount.set(0);
+        for (int i = 0; i < FAILURE_COUNT; i++) {
+            mServed.set(i, 0);
+        }
+    }
+
+    public static String getFailureName(int failureMode) {
+        return FAILURE_NAMES[failureMode];
+    }
+
+    /**
+     * Looks a failure mode up by the name used in reports, e.g "http_503".
+     */
+    public static int parseFailureMode(String name) {
+        int mode = Arrays.asList(FAILURE_NAMES).indexOf(name);
+        if (mode < 0) {
+            throw new IllegalArgumentException("Unknown failure mode: " + name);
+        }
+        return mode;
+    }
+
+    private int nextFailure() {
+        Integer queued = mQueuedFailures.poll();
+        if (queued != null) {
+            return queued;
+        }
+        double rate = mFailureRate;
+        if (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate) {
+            return mFailureMode;
+        }
+        return FAILURE_NONE;
+    }
+
+    /**
+     * Generates the forecast for the q and cnt parameters of a request.
+     */
+    private String buildForecast(String rawQuery) throws IOException {
+        String city = "Mountain View";
+        int days = DEFAULT_DAYS;
+        if (rawQuery != null) {
+            for (String param : rawQuery.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq < 0) continue;
+                String value = URLDecoder.decode(param.substring(eq + 1), "UTF-8");
+                switch (param.substring(0, eq)) {
+                    case "q":
+                        city = value;
+                        break;
+                    case "cnt":
+                        days = Integer.parseInt(value);
+                        break;
+                }
+            }
+        }
+        String forecast = SyntheticForecasts.forecastJson(city, days, new Random(city.hashCode()));
+
+        int paddingBytes = mPaddingBytes;
+        if (paddingBytes > 0) {
+            char[] padding = new char[paddingBytes];
+            Arrays.fill(padding, 'x');
+            forecast = forecast.substring(0, forecast.length() - 1)
+                    + ",\"padding\":\"" + new String(padding) + "\"}";
+        }
+        return forecast;
+    }
+
+    private class ForecastHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mRequestCount.incrementAndGet();
+            int failure = nextFailure();
+            mServed.incrementAndGet(failure);
+            try {
+                respond(exchange, failure);
+            } catch (IOException e) {
+                if (failure == FAILURE_DISCONNECT) {
+                    // Closing the exchange would finish the body.  Letting the exception out
+                    // of the handler makes the server drop the connection instead.
+                    throw e;
+                }
+                // The client went away
+            }
+            exchange.close();
+        }
+
+        private void respond(HttpExchange exchange, int failure) throws IOException {
+            sleepLatency();
+
+            switch (failure) {
+                case FAILURE_HTTP_NOT_FOUND:
+                    sendStatus(exchange, HttpURLConnection.HTTP_NOT_FOUND);
+                    return;
+                case FAILURE_HTTP_SERVER_ERROR:
+                    sendStatus(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR);
+                    return;
+                case FAILURE_HTTP_UNAVAILABLE:
+                    sendStatus(exchange, HttpURLConnection.HTTP_UNAVAILABLE);
+                    return;
+                case FAILURE_EMPTY_BODY:
+                    sendBody(exchange, new byte[0]);
+                    return;
+                case FAILURE_CITY_NOT_FOUND:
+                    sendBody(exchange, "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"
+                            .getBytes(StandardCharsets.UTF_8));
+                    return;
+                default:
+                    break;
+            }
+
+            String forecast = buildForecast(exchange.getRequestURI().getRawQuery());
+            if (failure == FAILURE_MALFORMED_JSON) {
+                forecast = forecast.substring(0, forecast.length() / 2);
+            }
+            byte[] body = forecast.getBytes(StandardCharsets.UTF_8);
+            if (failure == FAILURE_DISCONNECT) {
+                sendHalf(exchange, body);
+                throw new IOException("Disconnected on purpose");
+            }
+            sendBody(exchange, body);
+        }
+
+        private void sleepLatency() {
+            int min = mMinLatencyMillis;
+            int max = mMaxLatencyMillis;
+            if (max <= 0) return;
+            try {
+                Thread.sleep(min + ThreadLocalRandom.current().nextInt(max - min + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void sendStatus(HttpExchange exchange, int code) throws IOException {
+            exchange.sendResponseHeaders(code, -1);
+        }
+
+        private void sendBody(HttpExchange exchange, byte[] body) throws IOException {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")
+                    && body.length > 0) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4);
+                GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                gzip.write(body);
+                gzip.close();
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+            if (body.length == 0) {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+                return;
+            }
+            // A response length of 0 selects chunked transfer encoding
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, mChunked ? 0 : body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+
+        /**
+         * Sends half of a chunked body.  The caller then drops the connection before the final
+         * chunk, so the client sees a premature end of stream.  A short fixed-length body
+         * wouldn't do: the desktop HttpURLConnection reports it as a normal end of stream.
+         */
+        private void sendHalf(HttpExchange exchange, byte[] body) throws IOException {
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body, 0, body.length / 2);
+            out.flush();
+        }
+    }
+}
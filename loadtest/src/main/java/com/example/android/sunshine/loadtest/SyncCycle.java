@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.loadtest;
+
+import com.example.android.sunshine.benchmark.JdbcWeatherStore;
+import com.example.android.sunshine.core.DayNormalizer;
+import com.example.android.sunshine.core.ForecastResponse;
+import com.example.android.sunshine.core.HistoryRetention;
+import com.example.android.sunshine.core.HttpStatusException;
+import com.example.android.sunshine.core.OwmForecastParser;
+import com.example.android.sunshine.core.ResilientFetcher;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.sql.SQLException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One fetch/parse/store cycle, done the way SunshineSyncAdapter.onPerformSync does it, ending in
+ * the location status the adapter would have stored.  Keep the two in step.
+ */
+public class SyncCycle {
+
+    // Same values as SunshineSyncAdapter.LocationStatus
+    public static final int LOCATION_STATUS_OK = 0;
+    public static final int LOCATION_STATUS_SERVER_DOWN = 1;
+    public static final int LOCATION_STATUS_SERVER_INVALID = 2;
+    public static final int LOCATION_STATUS_UNKNOWN = 3;
+    public static final int LOCATION_STATUS_INVALID = 4;
+
+    public static final int LOCATION_STATUS_COUNT = 5;
+
+    private static final String[] STATUS_NAMES = {
+            "status_ok",
+            "status_server_down",
+            "status_server_invalid",
+            "status_unknown",
+            "status_invalid"
+    };
+
+    private static final int NUM_DAYS = 14;
+
+    private final String mBaseUrl;
+    private final JdbcWeatherStore mStore;
+    private final ResilientFetcher mFetcher;
+
+    /**
+     * @param baseUrl scheme, host and port of the forecast server
+     * @param store where forecasts are written
+     */
+    public SyncCycle(String baseUrl, JdbcWeatherStore store) {
+        this(baseUrl, store, null);
+    }
+
+    /**
+     * @param fetcher retries and short-circuits downloads like the sync adapter does, or null
+     *                for a single attempt
+     */
+    public SyncCycle(String baseUrl, JdbcWeatherStore store, ResilientFetcher fetcher) {
+        mBaseUrl = baseUrl;
+        mStore = store;
+        mFetcher = fetcher;
+    }
+
+    public static String getStatusName(int locationStatus) {
+        return STATUS_NAMES[locationStatus];
+    }
+
+    /**
+     * Fetches, parses and stores the forecast for a location.
+     * @return one of the LOCATION_STATUS_ constants
+     */
+    public int run(String locationSetting) throws SQLException {
+        String forecastJsonStr;
+        try {
+            final URL url = new URL(mBaseUrl + OwmStubServer.FORECAST_PATH
+                    + "?q=" + URLEncoder.encode(locationSetting, "UTF-8")
+                    + "&mode=json&units=metric&cnt=" + NUM_DAYS + "&APPID=loadtest");
+            if (mFetcher == null) {
+                forecastJsonStr = download(url);
+            } else {
+                forecastJsonStr = mFetcher.execute(new ResilientFetcher.Attempt<String>() {
+                    @Override
+                    public String run() throws IOException {
+                        return download(url);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            return LOCATION_STATUS_SERVER_DOWN;
+        }
+        if (forecastJsonStr.isEmpty()) {
+            return LOCATION_STATUS_SERVER_DOWN;
+        }
+        try {
+            return store(forecastJsonStr, locationSetting);
+        } catch (JSONException e) {
+            return LOCATION_STATUS_SERVER_INVALID;
+        }
+    }
+
+    private static String download(URL url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        BufferedReader reader = null;
+        try {
+            urlConnection.setRequestMethod("GET");
+            // Android's HttpURLConnection asks for and unwraps gzip transparently; the desktop
+            // one doesn't, so do it by hand to keep the traffic the same.
+            urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+            urlConnection.connect();
+            int statusCode = urlConnection.getResponseCode();
+            if (statusCode != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(statusCode);
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if ("gzip".equals(urlConnection.getContentEncoding())) {
+                inputStream = new GZIPInputStream(inputStream);
+            }
+            reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+            StringBuilder buffer = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                buffer.append(line).append('\n');
+            }
+            return buffer.toString();
+        } finally {
+            urlConnection.disconnect();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // Already reported through the status
+                }
+            }
+        }
+    }
+
+    private int store(String forecastJsonStr, String locationSetting)
+            throws JSONException, SQLException {
+        DayNormalizer dayNormalizer = DayNormalizer.getDefault();
+        int julianStartDay = dayNormalizer.getJulianDay(System.currentTimeMillis());
+        ForecastResponse forecast =
+                OwmForecastParser.parse(forecastJsonStr, julianStartDay, dayNormalizer);
+        switch (forecast.status) {
+            case ForecastResponse.STATUS_OK:
+                break;
+            case ForecastResponse.STATUS_LOCATION_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
+
+        long locationId = mStore.addLocation(locationSetting, forecast.cityName,
+                forecast.cityLatitude, forecast.cityLongitude);
+        if (!forecast.days.isEmpty()) {
+            mStore.bulkInsert(locationId, forecast.days);
+            mStore.archiveOlderThan(dayNormalizer.getStartOfJulianDay(julianStartDay - 1),
+                    HistoryRetention.DEFAULT, System.currentTimeMillis(),
+                    dayNormalizer.getTimeZone());
+        }
+        return LOCATION_STATUS_OK;
+    }
+
+    /**
+     * The status SunshineSyncAdapter ends up with when the server answers with failureMode.
+     */
+    public static int expectedStatus(int failureMode) {
+        switch (failureMode) {
+            case OwmStubServer.FAILURE_NONE:
+                return LOCATION_STATUS_OK;
+            case OwmStubServer.FAILURE_MALFORMED_JSON:
+                return LOCATION_STATUS_SERVER_INVALID;
+            case OwmStubServer.FAILURE_CITY_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                // HTTP errors surface as IOExceptions, same as dropped connections and
+                // empty bodies
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.loadtest;
+
+import com.example.android.sunshine.benchmark.JdbcWeatherStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Runs many sync cycles against an {@link OwmStubServer} and reports throughput, latency
+ * percentiles and the location statuses the cycles ended with.
+ *
+ * Options, all in --name=value form:
+ * <pre>
+ *   --cycles=5000          number of fetch/parse/store cycles
+ *   --threads=8            concurrent syncs
+ *   --locations=100        distinct location settings, synced round robin
+ *   --latency=MIN-MAX      server latency in milliseconds
+ *   --padding=BYTES        extra bytes in each forecast
+ *   --gzip --chunked       transfer options of the server
+ *   --failure=NAME         failure to inject, e.g http_503 (see OwmStubServer)
+ *   --failure-rate=0.05    fraction of requests that fail
+ *   --url=http://host:port use a running server instead of starting one
+ * </pre>
+ *
+ * With the embedded server the driver first walks a scripted sequence of failures and checks
+ * each LocationStatus transition, then checks that the load run ended with exactly one failed
+ * cycle per injected failure.  It exits with status 1 when a check fails.
+ */
+public class SyncLoadDriver {
+
+    // Each failure is followed by a success, so every status is entered from OK and left to OK
+    private static final int[] TRANSITION_SCRIPT = {
+            OwmStubServer.FAILURE_NONE,
+            OwmStubServer.FAILURE_HTTP_UNAVAILABLE,
+            OwmStubServer.FAILURE_NONE,
+            OwmStubServer.FAILURE_MALFORMED_JSON,
+            OwmStubServer.FAILURE_NONE,
+            OwmStubServer.FAILURE_CITY_NOT_FOUND,
+            OwmStubServer.FAILURE_NONE,
+            OwmStubServer.FAILURE_HTTP_NOT_FOUND,
+            OwmStubServer.FAILURE_HTTP_SERVER_ERROR,
+            OwmStubServer.FAILURE_DISCONNECT,
+            OwmStubServer.FAILURE_EMPTY_BODY,
+            OwmStubServer.FAILURE_NONE
+    };
+
+    private final PrintStream mOut;
+    private int mFailedChecks;
+
+    SyncLoadDriver(PrintStream out) {
+        mOut = out;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        SyncLoadDriver driver = new SyncLoadDriver(System.out);
+        int failedChecks = driver.run(options);
+        System.exit(failedChecks == 0 ? 0 : 1);
+    }
+
+    /**
+     * @return the number of failed checks
+     */
+    int run(Map<String, String> options) throws IOException, SQLException, InterruptedException {
+        int cycles = intOption(options, "cycles", 5000);
+        int threads = intOption(options, "threads", 8);
+        int locations = intOption(options, "locations", 100);
+
+        OwmStubServer server = null;
+        String baseUrl = options.get("url");
+        if (baseUrl == null) {
+            server = new OwmStubServer();
+            server.start();
+            baseUrl = server.getBaseUrl();
+        }
+
+        File databaseFile = File.createTempFile("loadtest", ".db");
+        JdbcWeatherStore store = new JdbcWeatherStore(databaseFile);
+        try {
+            SyncCycle cycle = new SyncCycle(baseUrl, store);
+            if (server != null) {
+                // Verified before configuring, random failures would make the script
+                // unpredictable
+                verifyTransitions(server, cycle);
+                configure(server, options);
+                server.resetCounters();
+            }
+            runLoad(server, cycle, cycles, threads, locations);
+        } finally {
+            store.close();
+            databaseFile.delete();
+            if (server != null) {
+                server.close();
+            }
+        }
+        mOut.println(mFailedChecks == 0 ? "All checks passed" : mFailedChecks + " checks FAILED");
+        return mFailedChecks;
+    }
+
+    private static void configure(OwmStubServer server, Map<String, String> options) {
+        String latency = options.get("latency");
+        if (latency != null) {
+            String[] range = latency.split("-");
+            int min = Integer.parseInt(range[0]);
+            server.setLatency(min, range.length > 1 ? Integer.parseInt(range[1]) : min);
+        }
+        server.setPaddingBytes(intOption(options, "padding", 0));
+        server.setGzip(options.containsKey("gzip"));
+        server.setChunked(options.containsKey("chunked"));
+        if (options.containsKey("failure")) {
+            double rate = Double.parseDouble(options.containsKey("failure-rate")
+                    ? options.get("failure-rate") : "0.05");
+            server.setFailureRate(OwmStubServer.parseFailureMode(options.get("failure")), rate);
+        }
+    }
+
+    /**
+     * Runs the transition script against one location and checks every status on the way.
+     */
+    void verifyTransitions(OwmStubServer server, SyncCycle cycle) throws SQLException {
+        mOut.println("LocationStatus transitions:");
+        int previous = SyncCycle.LOCATION_STATUS_UNKNOWN;
+        for (int failure : TRANSITION_SCRIPT) {
+            server.enqueueFailure(failure);
+            int status = cycle.run("transitions");
+            int expected = SyncCycle.expectedStatus(failure);
+            mOut.printf("  %-16s %s -> %s%n", OwmStubServer.getFailureName(failure),
+                    SyncCycle.getStatusName(previous), SyncCycle.getStatusName(status));
+            check(status == expected, "expected " + SyncCycle.getStatusName(expected));
+            previous = status;
+        }
+    }
+
+    private void runLoad(final OwmStubServer server, final SyncCycle cycle, final int cycles,
+                         int threads, final int locations) throws InterruptedException {
+        final long[] latencies = new long[cycles];
+        final AtomicInteger nextCycle = new AtomicInteger();
+        final AtomicIntegerArray statusCounts =
+                new AtomicIntegerArray(SyncCycle.LOCATION_STATUS_COUNT);
+        final AtomicInteger errors = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int i;
+                    while ((i = nextCycle.getAndIncrement()) < cycles) {
+                        long cycleStart = System.nanoTime();
+                        try {
+                            statusCounts.incrementAndGet(cycle.run("location" + (i % locations)));
+                        } catch (SQLException e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - cycleStart;
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        mOut.printf("%d cycles on %d threads in %.2f s: %.1f cycles/s%n", cycles, threads,
+                elapsed / 1e9, cycles / (elapsed / 1e9));
+        mOut.printf("latency ms: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), percentile(latencies, 99.9),
+                latencies[cycles - 1] / 1e6);
+        for (int s = 0; s < SyncCycle.LOCATION_STATUS_COUNT; s++) {
+            mOut.println("  " + SyncCycle.getStatusName(s) + "=" + statusCounts.get(s));
+        }
+        check(errors.get() == 0, errors.get() + " cycles failed to write to the database");
+
+        if (server != null) {
+            // Every injected failure should have produced exactly one cycle with its status
+            int[] expected = new int[SyncCycle.LOCATION_STATUS_COUNT];
+            for (int f = 0; f < OwmStubServer.FAILURE_COUNT; f++) {
+                expected[SyncCycle.expectedStatus(f)] += server.getServedCount(f);
+            }
+            for (int s = 0; s < SyncCycle.LOCATION_STATUS_COUNT; s++) {
+                check(statusCounts.get(s) == expected[s], SyncCycle.getStatusName(s)
+                        + ": " + statusCounts.get(s) + " cycles, " + expected[s] + " expected");
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private void check(boolean ok, String message) {
+        if (!ok) {
+            mFailedChecks++;
+            mOut.println("  CHECK FAILED: " + message);
+        }
+    }
+
+    int getFailedChecks() {
+        return mFailedChecks;
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
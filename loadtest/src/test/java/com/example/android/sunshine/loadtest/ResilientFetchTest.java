@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.loadtest;
+
+import com.example.android.sunshine.benchmark.JdbcWeatherStore;
+import com.example.android.sunshine.core.CircuitBreaker;
+import com.example.android.sunshine.core.ResilientFetcher;
+import com.example.android.sunshine.core.RetryPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Injects failures with the stand-in server and checks what the retrying fetch makes of them.
+ * Backoff delays are recorded rather than slept.
+ */
+public class ResilientFetchTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long OPEN_MILLIS = 60000;
+
+    private OwmStubServer mServer;
+    private File mDatabaseFile;
+    private JdbcWeatherStore mStore;
+    private CircuitBreaker mBreaker;
+    private SyncCycle mCycle;
+
+    private long mNow;
+    private final List<Long> mDelays = new ArrayList<Long>();
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new OwmStubServer();
+        mServer.start();
+        mDatabaseFile = File.createTempFile("resilientfetch", ".db");
+        mStore = new JdbcWeatherStore(mDatabaseFile);
+
+        mBreaker = new CircuitBreaker(FAILURE_THRESHOLD, OPEN_MILLIS, new CircuitBreaker.Clock() {
+            @Override
+            public long now() {
+                return mNow;
+            }
+        });
+        ResilientFetcher fetcher = new ResilientFetcher(
+                new RetryPolicy(MAX_ATTEMPTS, 1000, 10000, 30000), mBreaker,
+                new ResilientFetcher.Sleeper() {
+                    @Override
+                    public void sleep(long millis) {
+                        mDelays.add(millis);
+                        mNow += millis;
+                    }
+                }, new Random(42));
+        mCycle = new SyncCycle(mServer.getBaseUrl(), mStore, fetcher);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        mDatabaseFile.delete();
+        mServer.close();
+    }
+
+    @Test
+    public void transientFailuresAreRetried() throws Exception {
+        mServer.enqueueFailure(OwmStubServer.FAILURE_HTTP_UNAVAILABLE);
+        mServer.enqueueFailure(OwmStubServer.FAILURE_DISCONNECT);
+        assertEquals(SyncCycle.LOCATION_STATUS_OK, mCycle.run("94043"));
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(2, mDelays.size());
+        assertTrue(mDelays.get(0) <= 1000);
+        assertTrue(mDelays.get(1) <= 2000);
+        assertEquals(CircuitBreaker.STATE_CLOSED, mBreaker.getState());
+    }
+
+    @Test
+    public void retriesStopAtTheAttemptLimit() throws Exception {
+        for (int i = 0; i < MAX_ATTEMPTS + 1; i++) {
+            mServer.enqueueFailure(OwmStubServer.FAILURE_HTTP_SERVER_ERROR);
+        }
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_DOWN, mCycle.run("94043"));
+        assertEquals(MAX_ATTEMPTS, mServer.getRequestCount());
+    }
+
+    @Test
+    public void clientErrorsAndBadPayloadsAreNotRetried() throws Exception {
+        mServer.enqueueFailure(OwmStubServer.FAILURE_HTTP_NOT_FOUND);
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_DOWN, mCycle.run("94043"));
+        mServer.enqueueFailure(OwmStubServer.FAILURE_MALFORMED_JSON);
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_INVALID, mCycle.run("94043"));
+        mServer.enqueueFailure(OwmStubServer.FAILURE_CITY_NOT_FOUND);
+        assertEquals(SyncCycle.LOCATION_STATUS_INVALID, mCycle.run("94043"));
+        assertEquals(3, mServer.getRequestCount());
+        assertTrue(mDelays.isEmpty());
+    }
+
+    @Test
+    public void breakerShortCircuitsADownUpstream() throws Exception {
+        mServer.setFailureRate(OwmStubServer.FAILURE_HTTP_UNAVAILABLE, 1);
+        // Two syncs of three attempts reach the threshold of five failures during the second
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_DOWN, mCycle.run("94043"));
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_DOWN, mCycle.run("94043"));
+        assertEquals(CircuitBreaker.STATE_OPEN, mBreaker.getState());
+        assertEquals(FAILURE_THRESHOLD, mServer.getRequestCount());
+
+        // While open, syncs fail without touching the network
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_DOWN, mCycle.run("94043"));
+        assertEquals(FAILURE_THRESHOLD, mServer.getRequestCount());
+
+        // Once the open period is over a single trial goes through and closes the breaker
+        mServer.setFailureRate(OwmStubServer.FAILURE_NONE, 0);
+        mNow += OPEN_MILLIS;
+        assertEquals(SyncCycle.LOCATION_STATUS_OK, mCycle.run("94043"));
+        assertEquals(FAILURE_THRESHOLD + 1, mServer.getRequestCount());
+        assertEquals(CircuitBreaker.STATE_CLOSED, mBreaker.getState());
+    }
+
+    @Test
+    public void failedTrialReopensTheBreaker() throws Exception {
+        mServer.setFailureRate(OwmStubServer.FAILURE_DISCONNECT, 1);
+        mCycle.run("94043");
+        mCycle.run("94043");
+        assertEquals(CircuitBreaker.STATE_OPEN, mBreaker.getState());
+
+        mNow += OPEN_MILLIS;
+        int requests = mServer.getRequestCount();
+        assertEquals(SyncCycle.LOCATION_STATUS_SERVER_DOWN, mCycle.run("94043"));
+        // Only the trial was made, no retries behind it
+        assertEquals(requests + 1, mServer.getRequestCount());
+        assertEquals(CircuitBreaker.STATE_OPEN, mBreaker.getState());
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.loadtest;
+
+import com.example.android.sunshine.benchmark.JdbcWeatherStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class SyncCycleTest {
+
+    private OwmStubServer mServer;
+    private File mDatabaseFile;
+    private JdbcWeatherStore mStore;
+    private SyncCycle mCycle;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new OwmStubServer();
+        mServer.start();
+        mDatabaseFile = File.createTempFile("synccycle", ".db");
+        mStore = new JdbcWeatherStore(mDatabaseFile);
+        mCycle = new SyncCycle(mServer.getBaseUrl(), mStore);
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        mDatabaseFile.delete();
+        mServer.close();
+    }
+
+    @Test
+    public void storesForecast() throws Exception {
+        assertEquals(SyncCycle.LOCATION_STATUS_OK, mCycle.run("94043"));
+        long locationId = mStore.addLocation("94043", "", 0, 0);
+        assertEquals(14, mStore.countWeatherRows(locationId));
+    }
+
+    @Test
+    public void gzipChunkedAndPaddedResponses() throws Exception {
+        mServer.setGzip(true);
+        mServer.setChunked(true);
+        mServer.setPaddingBytes(64 * 1024);
+        assertEquals(SyncCycle.LOCATION_STATUS_OK, mCycle.run("94043"));
+        long locationId = mStore.addLocation("94043", "", 0, 0);
+        assertEquals(14, mStore.countWeatherRows(locationId));
+    }
+
+    @Test
+    public void failuresMapToLocationStatus() throws Exception {
+        for (int failure = 0; failure < OwmStubServer.FAILURE_COUNT; failure++) {
+            mServer.enqueueFailure(failure);
+            assertEquals(OwmStubServer.getFailureName(failure),
+                    SyncCycle.expectedStatus(failure), mCycle.run("94043"));
+        }
+        assertEquals(OwmStubServer.FAILURE_COUNT, mServer.getRequestCount());
+    }
+
+    @Test
+    public void driverTransitionScriptPasses() throws Exception {
+        SyncLoadDriver driver = new SyncLoadDriver(new PrintStream(new ByteArrayOutputStream()));
+        driver.verifyTransitions(mServer, mCycle);
+        assertEquals(0, driver.getFailedChecks());
+    }
+}